@@ -19,18 +19,25 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
 import com.intellij.rt.execution.junit.ComparisonDetailsExtractor;
 import com.intellij.rt.execution.junit.ComparisonFailureData;
+import com.intellij.rt.execution.junit.ComparisonPayloads;
 import com.intellij.rt.execution.junit.DeafStream;
 import com.intellij.rt.execution.junit.FileComparisonFailure;
 import com.intellij.rt.execution.junit.IDEAJUnitListener;
 import com.intellij.rt.execution.junit.IdeaTestRunner;
 import com.intellij.rt.execution.junit.MapSerializerUtil;
+import com.intellij.rt.execution.junit.PhaseTimings;
+import com.intellij.rt.execution.junit.TestDurations;
+import com.intellij.rt.execution.junit.TestEventsWriter;
+import com.intellij.rt.execution.junit.TestNodeIds;
+import com.intellij.rt.execution.junit.TestResourceUsage;
+import com.intellij.rt.execution.junit.TraceEncoder;
 import junit.framework.AssertionFailedError;
 import junit.framework.ComparisonFailure;
 import junit.framework.Test;
@@ -44,6 +51,7 @@ import junit.textui.TestRunner;
 public class JUnit3IdeaTestRunner extends TestRunner implements IdeaTestRunner {
     private SMTestListener myTestsListener;
     private ArrayList myListeners;
+    private Test mySuite;
 
     public JUnit3IdeaTestRunner() {
         super(DeafStream.DEAF_PRINT_STREAM);
@@ -56,14 +64,17 @@ public class JUnit3IdeaTestRunner extends TestRunner implements IdeaTestRunner {
     }
 
     @Override
-    public int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree) {
+    public int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree, boolean repeated) {
         setPrinter(new MockResultPrinter());
         try {
-            Test suite = TestRunnerUtil.getTestSuite(this, args);
-            if (suite == null) {
+            // repeated runs of the same tests execute the suite built on the first run
+            if (!repeated || mySuite == null) {
+                mySuite = TestRunnerUtil.getTestSuite(this, args);
+            }
+            if (mySuite == null) {
                 return -1;
             }
-            return doRun(suite).wasSuccessful() ? 0 : -1;
+            return doRun(mySuite).wasSuccessful() ? 0 : -1;
         }
         catch (Exception e) {
             e.printStackTrace(System.err);
@@ -174,8 +185,13 @@ public class JUnit3IdeaTestRunner extends TestRunner implements IdeaTestRunner {
     }
 
     private static class SMTestListener implements TestListener {
+        private final TestEventsWriter myWriter = TestEventsWriter.create(System.out);
+        private final TestNodeIds myIds = new TestNodeIds();
         private String myClassName;
+        private String mySuiteId = TestNodeIds.getRootId();
+        private String myTestId;
         private long myCurrentTestStart;
+        private TestResourceUsage myCurrentTestUsage;
 
         @Override
         public void addError(Test test, Throwable e) {
@@ -183,12 +199,12 @@ public class JUnit3IdeaTestRunner extends TestRunner implements IdeaTestRunner {
         }
 
         private void testFailure(Throwable failure, String messageName, String methodName) {
-            Map attrs = new HashMap();
+            Map attrs = new LinkedHashMap();
             attrs.put("name", methodName);
-            long duration = System.currentTimeMillis() - myCurrentTestStart;
-            if (duration > 0) {
-                attrs.put("duration", Long.toString(duration));
-            }
+            attrs.put("id", myTestId);
+            attrs.put("nodeId", myTestId);
+            attrs.put("parentNodeId", mySuiteId);
+            PhaseTimings.putDuration(attrs, System.nanoTime() - myCurrentTestStart);
             try {
                 String trace = getTrace(failure);
                 ComparisonFailureData notification = null;
@@ -205,7 +221,7 @@ public class JUnit3IdeaTestRunner extends TestRunner implements IdeaTestRunner {
                         ComparisonDetailsExtractor.getActual(failure)
                     );
                 }
-                ComparisonFailureData.registerSMAttributes(notification, trace, failure.getMessage(), attrs, failure);
+                ComparisonFailureData.registerSMAttributes(ComparisonPayloads.spillIfLarge(notification), trace, failure.getMessage(), attrs, failure);
             }
             catch (Throwable e) {
                 StringWriter stringWriter = new StringWriter();
@@ -214,15 +230,12 @@ public class JUnit3IdeaTestRunner extends TestRunner implements IdeaTestRunner {
                 ComparisonFailureData.registerSMAttributes(null, stringWriter.toString(), e.getMessage(), attrs, e);
             }
             finally {
-                System.out.println("\n" + MapSerializerUtil.asString(messageName, attrs));
+                myWriter.message(messageName, attrs);
             }
         }
 
         public String getTrace(Throwable failure) {
-            StringWriter stringWriter = new StringWriter();
-            PrintWriter writer = new PrintWriter(stringWriter);
-            failure.printStackTrace(writer);
-            return stringWriter.toString();
+            return TraceEncoder.getTrace(failure);
         }
 
         private static String getMethodName(Test test) {
@@ -246,38 +259,53 @@ public class JUnit3IdeaTestRunner extends TestRunner implements IdeaTestRunner {
 
         @Override
         public void endTest(Test test) {
-            long duration = System.currentTimeMillis() - myCurrentTestStart;
-            System.out.println("\n##teamcity[testFinished name=\'" + escapeName(getMethodName(test)) +
-                (duration > 0 ? "\' duration=\'" + Long.toString(duration) : "") + "\']");
+            long duration = System.nanoTime() - myCurrentTestStart;
+            myWriter.message("testFinished", TestResourceUsage.finish(myCurrentTestUsage, new String[]{
+                "name", getMethodName(test),
+                "nodeId", myTestId,
+                "parentNodeId", mySuiteId,
+                "duration", Long.toString(duration / 1000000),
+                PhaseTimings.DURATION_NANOS, Long.toString(duration)
+            }));
+            myCurrentTestUsage = null;
+            TestDurations.record(myClassName, duration / 1000000);
         }
 
         @Override
         public void startTest(Test test) {
-            myCurrentTestStart = System.currentTimeMillis();
+            myCurrentTestStart = System.nanoTime();
             String className = getClassName(test);
             if (className != null && !className.equals(myClassName)) {
                 finishSuite();
                 myClassName = className;
-                System.out.println(
-                    "##teamcity[testSuiteStarted name =\'" + escapeName(myClassName) +
-                        "\' locationHint=\'java:suite://" + escapeName(className) + "\']"
+                mySuiteId = myIds.next();
+                myWriter.message(
+                    "testSuiteStarted",
+                    "name", myClassName,
+                    "nodeId", mySuiteId,
+                    "parentNodeId", TestNodeIds.getRootId(),
+                    "locationHint", "java:suite://" + className
                 );
             }
             String methodName = getMethodName(test);
-            System.out.println(
-                "##teamcity[testStarted name=\'" + escapeName(methodName) +
-                    "\' locationHint=\'java:test://" + escapeName(className + "." + methodName) + "\']"
+            myTestId = myIds.next();
+            myWriter.message(
+                "testStarted",
+                "name", methodName,
+                "nodeId", myTestId,
+                "parentNodeId", mySuiteId,
+                "locationHint", "java:test://" + className + "." + methodName
             );
+            myCurrentTestUsage = TestResourceUsage.start();
         }
 
         protected void finishSuite() {
             if (myClassName != null) {
-                System.out.println("##teamcity[testSuiteFinished name=\'" + escapeName(myClassName) + "\']");
+                myWriter.message("testSuiteFinished", "name", myClassName, "nodeId", mySuiteId, "parentNodeId", TestNodeIds.getRootId());
+                myClassName = null;
+                mySuiteId = TestNodeIds.getRootId();
             }
-        }
-
-        private static String escapeName(String str) {
-            return MapSerializerUtil.escapeStr(str, MapSerializerUtil.STD_ESCAPER);
+            myWriter.flush();
         }
     }
 }
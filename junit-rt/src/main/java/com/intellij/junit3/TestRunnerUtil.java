@@ -16,8 +16,6 @@
 package com.intellij.junit3;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -31,6 +29,7 @@ import junit.framework.TestCase;
 import junit.framework.TestResult;
 import junit.framework.TestSuite;
 import junit.runner.BaseTestRunner;
+import com.intellij.rt.execution.junit.TestListFiles;
 
 public class TestRunnerUtil {
     /**
@@ -51,8 +50,7 @@ public class TestRunnerUtil {
                 String[] classNames;
                 String suiteName;
                 try {
-                    BufferedReader reader =
-                        new BufferedReader(new InputStreamReader(new FileInputStream(suiteClassName.substring(1)), "UTF-8"));
+                    BufferedReader reader = TestListFiles.openReader(suiteClassName.substring(1));
                     Vector vector;
                     try {
                         suiteName = reader.readLine();
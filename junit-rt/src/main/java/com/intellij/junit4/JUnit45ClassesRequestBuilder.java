@@ -36,7 +36,7 @@ public class JUnit45ClassesRequestBuilder {
     public static Request getClassesRequest(String suiteName, Class[] classes) {
         try {
             return Request.runner(new IdeaSuite(
-                new org.junit.internal.builders.AllDefaultPossibilitiesBuilder(true),
+                PhaseTimingRunner.createBuilder(true),
                 classes,
                 suiteName
             ));
@@ -56,7 +56,7 @@ public class JUnit46ClassesRequestBuilder {
                 }
             }
             else {
-                AllDefaultPossibilitiesBuilder builder = new AllDefaultPossibilitiesBuilder(canUseSuiteMethod);
+                AllDefaultPossibilitiesBuilder builder = PhaseTimingRunner.createBuilder(canUseSuiteMethod);
                 try {
                     Class.forName("org.junit.experimental.categories.Categories");
                     suite = new IdeaSuite48(builder, classes, suiteName, category);
@@ -90,7 +90,7 @@ public class JUnit46ClassesRequestBuilder {
                 nonSuiteClasses.add(aClass);
             }
         }
-        runners.addAll(new AllDefaultPossibilitiesBuilder(false).runners(
+        runners.addAll(PhaseTimingRunner.createBuilder(false).runners(
             null,
             (Class[])nonSuiteClasses.toArray(new Class[nonSuiteClasses.size()])
         ));
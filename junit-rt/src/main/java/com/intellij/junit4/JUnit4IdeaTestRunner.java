@@ -19,21 +19,25 @@ import com.intellij.rt.execution.junit.ComparisonFailureData;
 import com.intellij.rt.execution.junit.IDEAJUnitListener;
 import com.intellij.rt.execution.junit.IDEAJUnitListenerEx;
 import com.intellij.rt.execution.junit.IdeaTestRunner;
+import com.intellij.rt.execution.junit.StressRun;
 import org.junit.internal.requests.ClassRequest;
 import org.junit.internal.requests.FilterRequest;
 import org.junit.runner.*;
 import org.junit.runner.manipulation.Filter;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
 /** @noinspection UnusedDeclaration*/
-public class JUnit4IdeaTestRunner implements IdeaTestRunner {
+public class JUnit4IdeaTestRunner implements IdeaTestRunner, StressRun.Target {
     private JUnit4TestListener myTestsListener;
     private ArrayList myListeners;
+    private Runner myRunner;
+    private Description myDescription;
 
     @Override
     public void createListeners(ArrayList listeners, int count) {
@@ -42,18 +46,24 @@ public class JUnit4IdeaTestRunner implements IdeaTestRunner {
     }
 
     @Override
-    public int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree) {
+    public int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree, boolean repeated) {
         try {
-            Request request = JUnit4TestRunnerUtil.buildRequest(args, name, sendTree);
-            if (request == null) {
-                return -2;
-            }
+            // repeated runs of the same tests execute the runner built on the first run
+            if (!repeated || myRunner == null) {
+                Request request = JUnit4TestRunnerUtil.buildRequest(args, name, sendTree);
+                if (request == null) {
+                    return -2;
+                }
 
-            Runner testRunner = request.getRunner();
-            Description description = getDescription(request, testRunner);
-            if (description == null) {
-                return -2;
+                myRunner = request.getRunner();
+                myDescription = getDescription(request, myRunner);
+                if (myDescription == null) {
+                    myRunner = null;
+                    return -2;
+                }
             }
+            Runner testRunner = myRunner;
+            Description description = myDescription;
 
             if (sendTree) {
                 do {
@@ -77,6 +87,41 @@ public class JUnit4IdeaTestRunner implements IdeaTestRunner {
         }
     }
 
+    /**
+     * Every thread runs its own runner, which creates new test instances for every invocation
+     */
+    @Override
+    public StressRun.Invocation createInvocation(String[] args, String name) {
+        Request request = JUnit4TestRunnerUtil.buildRequest(args, name, false);
+        if (request == null) {
+            throw new IllegalArgumentException("Nothing found to run");
+        }
+        final Runner testRunner = request.getRunner();
+        return new StressRun.Invocation() {
+            @Override
+            public void invoke(final StressRun.Listener listener) {
+                RunNotifier notifier = new RunNotifier();
+                notifier.addListener(new RunListener() {
+                    @Override
+                    public void testStarted(Description description) {
+                        listener.testStarted();
+                    }
+
+                    @Override
+                    public void testFailure(Failure failure) {
+                        listener.testFailed(failure.getException());
+                    }
+
+                    @Override
+                    public void testFinished(Description description) {
+                        listener.testFinished();
+                    }
+                });
+                testRunner.run(notifier);
+            }
+        };
+    }
+
     private static Description getDescription(Request request, Runner testRunner) throws NoSuchFieldException, IllegalAccessException {
         Description description = testRunner.getDescription();
         if (description == null) {
@@ -17,7 +17,16 @@
 package com.intellij.junit4;
 
 import com.intellij.rt.execution.junit.ComparisonFailureData;
+import com.intellij.rt.execution.junit.ComparisonPayloads;
+import com.intellij.rt.execution.junit.IdeaTestRunner;
 import com.intellij.rt.execution.junit.MapSerializerUtil;
+import com.intellij.rt.execution.junit.PhaseTimings;
+import com.intellij.rt.execution.junit.TestDurations;
+import com.intellij.rt.execution.junit.TestEventsWriter;
+import com.intellij.rt.execution.junit.TestNodeIds;
+import com.intellij.rt.execution.junit.TestResourceUsage;
+import com.intellij.rt.execution.junit.TextTestEventsWriter;
+import com.intellij.rt.execution.junit.TraceEncoder;
 import org.junit.Ignore;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
@@ -27,40 +36,66 @@ import org.junit.runner.notification.RunListener;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.annotation.Annotation;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reports the run as a tree of nodes with ids, so events of the tests running in parallel (e.g. with <code>ParallelComputer</code>)
+ * are sent from the threads running the tests as they happen.
+ * <p>
+ * Nodes of the tree sent before the run are taken by the tests in order of their start; tests missing from the tree get new nodes
+ * under the suite of their class. A suite is started before its first test and finished after the last of its tests from the tree,
+ * suites which are not complete are finished with the run.
+ * <p>
+ * Runs may have millions of tests, so the state kept per test is small and dropped once the test is finished:
+ * a node holds its id as a number, its class name is shared by the tests of the class and its location is built when sent.
+ */
 public class JUnit4TestListener extends RunListener {
     public static final String EMPTY_SUITE_NAME = "junit.framework.TestSuite$1";
     public static final String EMPTY_SUITE_WARNING = "warning";
     public static final String CLASS_CONFIGURATION = "Class Configuration";
 
-    private List<Description> myStartedSuites = new ArrayList<>();
-    private Map<Description, List<List<Description>>> myParents = new HashMap<>();
-    private Map<Description, String> myMethodNames = new HashMap<>();
-    private final PrintStream myPrintStream;
+    private final TestEventsWriter myWriter;
+    private final TestNodeIds myIds = new TestNodeIds();
     private String myRootName;
-    private long myCurrentTestStart;
+    /**
+     * Number of the trees sent: the tree is sent once per iteration of the repeated run
+     */
+    private int myTreeCount;
+    private volatile int myRunCount;
 
-    private Description myCurrentTest;
-    private Map<Description, TestEvent> myWaitingQueue = new LinkedHashMap<>();
+    /**
+     * First node of every test of the trees sent, guarded by itself
+     */
+    private final Map<Description, TestNode> myTreeTests = new HashMap<>();
+    private final Map<Description, Queue<SuiteNode>> myTreeSuites = new ConcurrentHashMap<>();
+    private final Map<String, SuiteNode> myClassSuites = new ConcurrentHashMap<>();
+    private final Map<Description, TestNode> myRunningTests = new ConcurrentHashMap<>();
+    private final Deque<SuiteNode> myStartedSuites = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger myFinishedCount = new AtomicInteger();
+    private final Map<Description, String> myMethodNames = new ConcurrentHashMap<>();
+    private final Map<String, String> myClassNames = new ConcurrentHashMap<>();
 
 
     public JUnit4TestListener() {
-        this(System.out);
+        this(TestEventsWriter.create(System.out));
     }
 
     public JUnit4TestListener(PrintStream printStream) {
-        myPrintStream = printStream;
-        myPrintStream.println("##teamcity[enteredTheMatrix]");
+        this(new TextTestEventsWriter(printStream));
     }
 
-    private static String escapeName(String str) {
-        return MapSerializerUtil.escapeStr(str, MapSerializerUtil.STD_ESCAPER);
+    public JUnit4TestListener(TestEventsWriter writer) {
+        myWriter = writer;
+        myWriter.message("enteredTheMatrix");
     }
 
     @Override
     public void testRunStarted(Description description) throws Exception {
+        myRunCount++;
         if (myRootName != null && !myRootName.startsWith("[")) {
             int lastPointIdx = myRootName.lastIndexOf('.');
             String name = myRootName;
@@ -70,12 +105,7 @@ public class JUnit4TestListener extends RunListener {
                 comment = myRootName.substring(0, lastPointIdx);
             }
 
-            myPrintStream.println(
-                "##teamcity[rootName name = \'" + escapeName(name) +
-                    (comment != null ? ("\' comment = \'" + escapeName(comment)) : "") + "\'" +
-                    " location = \'java:suite://" + escapeName(myRootName) +
-                    "\']"
-            );
+            myWriter.message("rootName", "name", name, "comment", comment, "location", "java:suite://" + myRootName);
             myRootName = getShortName(myRootName);
         }
     }
@@ -83,135 +113,192 @@ public class JUnit4TestListener extends RunListener {
     @Override
     public void testRunFinished(Result result) {
         try {
-            dumpQueue(true);
+            for (Iterator<SuiteNode> iterator = myStartedSuites.descendingIterator(); iterator.hasNext(); ) {
+                finishSuite(iterator.next());
+            }
         }
         finally {
-            for (int i = myStartedSuites.size() - 1; i >= 0; i--) {
-                Object parent = JUnit4ReflectionUtil.getClassName(myStartedSuites.get(i));
-                myPrintStream.println("\n##teamcity[testSuiteFinished name=\'" + escapeName(getShortName((String)parent)) + "\']");
-            }
             myStartedSuites.clear();
+            myClassSuites.clear();
+            myRunningTests.clear();
+            myFinishedCount.set(0);
+            myMethodNames.clear();
+            for (Iterator<Queue<SuiteNode>> suitesIterator = myTreeSuites.values().iterator(); suitesIterator.hasNext(); ) {
+                Queue<SuiteNode> suites = suitesIterator.next();
+                for (Iterator<SuiteNode> iterator = suites.iterator(); iterator.hasNext(); ) {
+                    if (iterator.next().myTree <= myRunCount) {
+                        iterator.remove();
+                    }
+                }
+                if (suites.isEmpty()) {
+                    suitesIterator.remove();
+                }
+            }
+            myWriter.flush();
         }
     }
 
     @Override
     public void testStarted(Description description) {
-        testStarted(description, null);
-    }
-
-    private void testStarted(Description description, String methodName) {
-        List<List<Description>> parents = myParents.get(description);
-        if (myCurrentTest != null && (parents == null || parents.isEmpty() || !(parents.get(0)).contains(myCurrentTest))) {
-            if (!myWaitingQueue.containsKey(description)) {
-                myWaitingQueue.put(description, new TestEvent());
+        TestNode test = takeTreeNode(description);
+        if (test == null) {
+            String methodName = getFullMethodName(description);
+            if (methodName == null) {
                 return;
             }
+            String classFQN = JUnit4ReflectionUtil.getClassName(description);
+            test = new TestNode(myIds.nextNumber(), getClassSuite(classFQN), methodName, getSharedClassName(classFQN), 0);
         }
 
-        myCurrentTest = description;
-
-        String classFQN = JUnit4ReflectionUtil.getClassName(description);
-
-        List<Description> parentsHierarchy = parents != null && !parents.isEmpty()
-            ? parents.remove(0)
-            : Collections.singletonList(Description.createSuiteDescription(classFQN, new Annotation[0]));
+        startSuite(test.myParent);
+        myWriter.message("testStarted", test.attributes("locationHint", test.getLocationHint()));
+        test.myStart = currentTime();
+        test.myUsage = TestResourceUsage.start();
+        myRunningTests.put(description, test);
+    }
 
-        if (methodName == null) {
-            methodName = getFullMethodName(description, parentsHierarchy.isEmpty() ? null
-                : parentsHierarchy.get(parentsHierarchy.size() - 1));
-            if (methodName == null) {
-                return;
+    /**
+     * @return node of the tree sent for the current iteration, nodes left from the previous iterations are dropped
+     */
+    private TestNode takeTreeNode(Description description) {
+        synchronized (myTreeTests) {
+            TestNode node = myTreeTests.get(description);
+            if (node == null) {
+                return null;
+            }
+            TestNode last = node.myLast;
+            while (node != null && node.myTree < myRunCount) {
+                node = node.myNext;
+            }
+            TestNode taken = null;
+            if (node != null && node.myTree == myRunCount) {
+                taken = node;
+                node = node.myNext;
+                taken.myNext = null;
+            }
+            if (node == null) {
+                myTreeTests.remove(description);
             }
+            else {
+                node.myLast = last;
+                myTreeTests.put(description, node);
+            }
+            return taken;
         }
+    }
 
-        int idx = 0;
-        Description currentClass;
-        Description currentParent;
-        while (idx < myStartedSuites.size() && idx < parentsHierarchy.size()) {
-            currentClass = myStartedSuites.get(idx);
-            currentParent = parentsHierarchy.get(parentsHierarchy.size() - 1 - idx);
-            if (isHierarchyDifferent(parents, currentClass, currentParent)) {
-                break;
+    private void addTreeNode(Description description, TestNode test) {
+        synchronized (myTreeTests) {
+            TestNode first = myTreeTests.get(description);
+            if (first == null) {
+                myTreeTests.put(description, test);
+                test.myLast = test;
             }
-            idx++;
-        }
-
-        for (int i = myStartedSuites.size() - 1; i >= idx; i--) {
-            currentClass = myStartedSuites.remove(i);
-            myPrintStream.println(
-                "\n##teamcity[testSuiteFinished name=\'" +
-                    escapeName(getShortName(JUnit4ReflectionUtil.getClassName(currentClass))) + "\']"
-            );
-        }
-
-        for (int i = idx; i < parentsHierarchy.size(); i++) {
-            Description descriptionFromHistory = parentsHierarchy.get(parentsHierarchy.size() - 1 - i);
-            String fqName = JUnit4ReflectionUtil.getClassName(descriptionFromHistory);
-            String className = getShortName(fqName);
-            if (!className.equals(myRootName)) {
-                myPrintStream.println(
-                    "\n##teamcity[testSuiteStarted name=\'" + escapeName(className) + "\'" +
-                        (parents == null ? getClassLocation(fqName) : "") + "]"
-                );
-                myStartedSuites.add(descriptionFromHistory);
+            else {
+                first.myLast.myNext = test;
+                first.myLast = test;
             }
         }
-
-        myPrintStream.println("\n##teamcity[testStarted name=\'" + escapeName(methodName) + "\' " +
-            getTestMethodLocation(methodName, classFQN) + "]");
-        myCurrentTestStart = currentTime();
     }
 
-    private static String getClassLocation(String fqName) {
-        return " locationHint=\'java:suite://" + escapeName(fqName) + "\'";
+    private String getSharedClassName(String className) {
+        if (className == null) {
+            return null;
+        }
+        String shared = myClassNames.putIfAbsent(className, className);
+        return shared != null ? shared : className;
     }
 
-    private static boolean isHierarchyDifferent(List parents, Description currentClass, Description currentParent) {
-        if (parents == null) {
-            return !currentClass.equals(currentParent);
+    /**
+     * @return suite for the tests of the class missing from the tree, <code>null</code> for the root class
+     */
+    private SuiteNode getClassSuite(String classFQN) {
+        String className = getShortName(classFQN);
+        if (className == null || className.equals(myRootName)) {
+            return null;
         }
-        else {
-            return System.identityHashCode(currentClass) != System.identityHashCode(currentParent);
+        SuiteNode suite = myClassSuites.get(classFQN);
+        if (suite == null) {
+            SuiteNode newSuite = new SuiteNode(myIds.nextNumber(), null, className, classFQN, getClassLocation(classFQN), 0, false);
+            suite = myClassSuites.putIfAbsent(classFQN, newSuite);
+            if (suite == null) {
+                suite = newSuite;
+            }
         }
+        return suite;
     }
 
-    protected long currentTime() {
-        return System.currentTimeMillis();
+    private SuiteNode findSuite(Description description) {
+        Queue<SuiteNode> suites = myTreeSuites.get(description);
+        SuiteNode finished = null;
+        if (suites != null) {
+            for (SuiteNode suite : suites) {
+                if (suite.myTree == myRunCount) {
+                    if (!suite.myFinished) {
+                        return suite;
+                    }
+                    if (finished == null) {
+                        finished = suite;
+                    }
+                }
+            }
+        }
+        return finished != null ? finished : getClassSuite(JUnit4ReflectionUtil.getClassName(description));
     }
 
-    @Override
-    public void testFinished(Description description) {
-        if (startedInParallel(description)) {
-            TestEvent testEvent = myWaitingQueue.get(description);
-            testEvent.setFinished(true);
+    private void startSuite(SuiteNode suite) {
+        if (suite == null || suite.myStarted) {
             return;
         }
-        testFinishedNoDumping(getFullMethodName(description));
+        synchronized (suite) {
+            if (!suite.myStarted) {
+                startSuite(suite.myParent);
+                myWriter.message("testSuiteStarted", suite.attributes("locationHint", suite.myLocationHint));
+                myStartedSuites.add(suite);
+                suite.myStarted = true;
+            }
+        }
+    }
 
-        dumpQueue(false);
+    private void finishSuite(SuiteNode suite) {
+        synchronized (suite) {
+            if (!suite.myStarted || suite.myFinished) {
+                return;
+            }
+            suite.myFinished = true;
+            myWriter.message("testSuiteFinished", suite.attributes(PhaseTimings.takeAttributes(suite.myClassName, -1)));
+        }
+        myStartedSuites.remove(suite);
+    }
+
+    private static String getClassLocation(String fqName) {
+        return "java:suite://" + fqName;
     }
 
     /**
-     * <code>myCurrentTest == null</code> means that initially started test was already finished but no new test were started:
-     * test1 started  | myCurrentTest == test1
-     * test2 started  | myWaitingQueue contains test2
-     * test1 finished | myCurrentTest == null
-     * test2 finished | testEvent from myWaitingQueue is marked as finished. Next dumping would dump test2 started/test2 finished
-     *
-     * <code>myCurrentTest.equals(description)</code> means that finish/failure/ignore event was fired against last started test
-     * if in the previous example test2 finishes before test1, then myCurrentTest != description, testEvent in myWaitingQueue needs to be updated
+     * @return time in nanoseconds, only the differences of the values matter
      */
-    private boolean startedInParallel(Description description) {
-        return myWaitingQueue.containsKey(description) && (myCurrentTest == null || !myCurrentTest.equals(description));
+    protected long currentTime() {
+        return System.nanoTime();
     }
 
-    private void testFinishedNoDumping(String methodName) {
-        if (methodName != null) {
-            long duration = currentTime() - myCurrentTestStart;
-            myPrintStream.println("\n##teamcity[testFinished name=\'" + escapeName(methodName) +
-                (duration > 0 ? "\' duration=\'" + Long.toString(duration) : "") + "\']");
+    @Override
+    public void testFinished(Description description) {
+        TestNode test = myRunningTests.remove(description);
+        myMethodNames.remove(description);
+        if (test == null) {
+            return;
+        }
+        long duration = currentTime() - test.myStart;
+        String[] attributes = TestResourceUsage.finish(test.myUsage, PhaseTimings.takeAttributes(description, duration));
+        myWriter.message("testFinished", test.attributes(attributes));
+        TestDurations.record(JUnit4ReflectionUtil.getClassName(description), duration / 1000000);
+        myFinishedCount.incrementAndGet();
+        for (SuiteNode suite = test.myParent; suite != null; suite = suite.myParent) {
+            if (suite.myCounted && suite.myRemaining.decrementAndGet() == 0) {
+                finishSuite(suite);
+            }
         }
-        myCurrentTest = null;
     }
 
     @Override
@@ -223,12 +310,12 @@ public class JUnit4TestListener extends RunListener {
         boolean isIgnored = MapSerializerUtil.TEST_IGNORED.equals(messageName);
         String methodName = getFullMethodName(description);
         if (methodName == null) { //class setUp/tearDown failed
+            SuiteNode suite = findSuite(description);
+            boolean childrenStarted = suite != null ? suite.myStarted : myFinishedCount.get() > 0;
             if (!isIgnored) {
-                classConfigurationStarted(description);
-                testFailure(failure, description, messageName, CLASS_CONFIGURATION);
-                classConfigurationFinished(description);
+                classConfigurationFailure(failure, description, suite, messageName);
             }
-            if (myStartedSuites.isEmpty() || !description.equals(myStartedSuites.get(myStartedSuites.size() - 1))) {
+            if (!childrenStarted) {
                 for (Description next : description.getChildren()) {
                     testStarted(next);
                     testFailure(isIgnored ? failure : null, next, MapSerializerUtil.TEST_IGNORED);
@@ -237,60 +324,55 @@ public class JUnit4TestListener extends RunListener {
             }
         }
         else {
-            testFailure(failure, description, messageName, methodName);
-        }
-    }
-
-    private void classConfigurationFinished(Description description) {
-        if (startedInParallel(description)) {
-            TestEvent testEvent = myWaitingQueue.get(description);
-            testEvent.setFinished(true);
-            return;
+            TestNode test = myRunningTests.get(description);
+            if (test != null) {
+                testFailure(failure, test, messageName);
+            }
+            else { //reported without start
+                testStarted(description);
+                test = myRunningTests.get(description);
+                if (test != null) {
+                    testFailure(failure, test, messageName);
+                    testFinished(description);
+                }
+            }
         }
-
-        myPrintStream.println("\n##teamcity[testFinished name=\'" + escapeName(CLASS_CONFIGURATION) + "\']");
-        myCurrentTest = null;
     }
 
-    private void classConfigurationStarted(Description description) {
-        if (myCurrentTest != null) {
-            TestEvent value = new TestEvent();
-            value.setMethodName(CLASS_CONFIGURATION);
-            myWaitingQueue.put(description, value);
-            return;
+    /**
+     * Failure of <code>@AfterClass</code> comes when the suite is finished already, it's reported under the closest running suite then.
+     */
+    private void classConfigurationFailure(Failure failure, Description description, SuiteNode suite, String messageName) {
+        while (suite != null && suite.myFinished) {
+            suite = suite.myParent;
         }
-
-        myCurrentTest = description;
-        myPrintStream.println(
-            "\n##teamcity[testStarted name=\'" + escapeName(CLASS_CONFIGURATION) + "\' " +
-                getClassLocation(JUnit4ReflectionUtil.getClassName(description)) + " ]"
-        );
-    }
-
-    private void testFailure(Failure failure, Description description, String messageName, String methodName) {
-        boolean isIgnored = MapSerializerUtil.TEST_IGNORED.equals(messageName);
-        if (startedInParallel(description)) {
-            TestEvent testEvent = myWaitingQueue.get(description);
-            if (testEvent == null) {
-                testEvent = new TestEvent();
-                myWaitingQueue.put(description, testEvent);
+        startSuite(suite);
+        String className = JUnit4ReflectionUtil.getClassName(description);
+        TestNode test = new TestNode(myIds.nextNumber(), suite, CLASS_CONFIGURATION, className, 0) {
+            @Override
+            String getLocationHint() {
+                return getClassLocation(myClassName);
             }
-            testEvent.setIgnored(isIgnored);
-            testEvent.setFailure(failure);
-            return;
-        }
+        };
+        myWriter.message("testStarted", test.attributes("locationHint", test.getLocationHint()));
+        test.myStart = currentTime();
+        testFailure(failure, test, messageName);
+        myWriter.message("testFinished", test.attributes());
+    }
 
+    private void testFailure(Failure failure, TestNode test, String messageName) {
         Map<String, String> attrs = new LinkedHashMap<>();
-        attrs.put("name", methodName);
-        long duration = currentTime() - myCurrentTestStart;
-        if (duration > 0) {
-            attrs.put("duration", Long.toString(duration));
-        }
+        attrs.put("name", test.myName);
+        String id = test.getId();
+        attrs.put("id", id);
+        attrs.put("nodeId", id);
+        attrs.put("parentNodeId", test.getParentId());
+        PhaseTimings.putDuration(attrs, currentTime() - test.myStart);
         try {
             if (failure != null) {
                 String trace = getTrace(failure);
                 Throwable ex = failure.getException();
-                ComparisonFailureData notification = ExpectedPatterns.createExceptionNotification(ex);
+                ComparisonFailureData notification = ComparisonPayloads.spillIfLarge(ExpectedPatterns.createExceptionNotification(ex));
                 ComparisonFailureData.registerSMAttributes(notification, trace, failure.getMessage(), attrs, ex);
             }
         }
@@ -301,12 +383,12 @@ public class JUnit4TestListener extends RunListener {
             ComparisonFailureData.registerSMAttributes(null, stringWriter.toString(), e.getMessage(), attrs, e);
         }
         finally {
-            myPrintStream.println("\n" + MapSerializerUtil.asString(messageName, attrs));
+            myWriter.message(messageName, attrs);
         }
     }
 
     protected String getTrace(Failure failure) {
-        return failure.getTrace();
+        return TraceEncoder.isEnabled() ? TraceEncoder.encode(failure.getException()) : failure.getTrace();
     }
 
     @Override
@@ -335,7 +417,10 @@ public class JUnit4TestListener extends RunListener {
                 methodName = getShortName(description.getDisplayName());
             }
 
-            myMethodNames.put(description, methodName);
+            // names of the tree tests are kept by their nodes, only the ones depending on the parent are needed later
+            if (methodName != null && (parent == null || isParameter(parent))) {
+                myMethodNames.put(description, methodName);
+            }
         }
         return methodName;
     }
@@ -345,17 +430,21 @@ public class JUnit4TestListener extends RunListener {
         String methodName = getFullMethodName(description);
         if (methodName == null) {
             for (Description testDescription : description.getChildren()) {
-                testIgnored(testDescription, getFullMethodName(testDescription));
+                testIgnored(testDescription);
             }
         }
         else {
-            testIgnored(description, methodName);
+            reportIgnored(description);
         }
     }
 
-    private void testIgnored(Description description, String methodName) {
+    private void reportIgnored(Description description) {
         testStarted(description);
-        Map<String, String> attrs = new HashMap<>();
+        TestNode test = myRunningTests.get(description);
+        if (test == null) {
+            return;
+        }
+        Map<String, String> attrs = new LinkedHashMap<>();
         try {
             Ignore ignoredAnnotation = description.getAnnotation(Ignore.class);
             if (ignoredAnnotation != null) {
@@ -368,117 +457,21 @@ public class JUnit4TestListener extends RunListener {
         catch (NoSuchMethodError ignored) {
             //junit < 4.4
         }
-        attrs.put("name", methodName);
+        attrs.put("name", test.myName);
+        String id = test.getId();
+        attrs.put("id", id);
+        attrs.put("nodeId", id);
+        attrs.put("parentNodeId", test.getParentId());
 
-        if (startedInParallel(description)) {
-            TestEvent testEvent = myWaitingQueue.get(description);
-            if (testEvent == null) {
-                testEvent = new TestEvent();
-                myWaitingQueue.put(description, testEvent);
-            }
-            testEvent.setIgnored(true);
-            testEvent.setAttrs(attrs);
-        }
-        else {
-            myPrintStream.println(MapSerializerUtil.asString(MapSerializerUtil.TEST_IGNORED, attrs));
-        }
+        myWriter.message(MapSerializerUtil.TEST_IGNORED, attrs);
         testFinished(description);
     }
 
-    private void dumpQueue(boolean acceptUnfinished) {
-        for (Iterator<Description> iterator = myWaitingQueue.keySet().iterator(); iterator.hasNext(); ) {
-            Description description = iterator.next();
-            TestEvent testEvent = myWaitingQueue.get(description);
-            if (acceptUnfinished || testEvent.isFinished()) {
-                testStarted(description, testEvent.getMethodName());
-
-                iterator.remove();
-
-                Failure failure = testEvent.getFailure();
-                if (testEvent.isIgnored()) {
-                    Map attrs = testEvent.getAttrs();
-                    if (attrs == null) {
-                        testFailure(failure, description, MapSerializerUtil.TEST_IGNORED);
-                    }
-                    else {
-                        myPrintStream.println(MapSerializerUtil.asString(MapSerializerUtil.TEST_IGNORED, attrs));
-                    }
-                }
-                else if (failure != null) {
-                    testFailure(failure);
-                }
-
-                String methodName = testEvent.getMethodName();
-                testFinishedNoDumping(methodName != null ? methodName : getFullMethodName(description));
-            }
-        }
-    }
-
-    private static class TestEvent {
-        private Failure myFailure;
-        private boolean myIgnored;
-        private boolean myFinished;
-        private Map myAttrs;
-        private String myMethodName;
-
-        public Failure getFailure() {
-            return myFailure;
-        }
-
-        public boolean isIgnored() {
-            return myIgnored;
-        }
-
-        public boolean isFinished() {
-            return myFinished;
-        }
-
-        public void setFinished(boolean finished) {
-            myFinished = finished;
-        }
-
-        public void setFailure(Failure failure) {
-            myFailure = failure;
-        }
-
-        public void setIgnored(boolean ignored) {
-            myIgnored = ignored;
-        }
-
-        public void setAttrs(Map attrs) {
-            myAttrs = attrs;
-        }
-
-        public Map getAttrs() {
-            return myAttrs;
-        }
-
-        public void setMethodName(String methodName) {
-            myMethodName = methodName;
-        }
-
-        public String getMethodName() {
-            return myMethodName;
-        }
-    }
-
-    private void sendTree(Description description, Description parent, List<Description> currentParents) {
-        List<Description> pParents = new ArrayList<>(3);
-        pParents.addAll(currentParents);
-        if (parent != null) {
-            String parentClassName = JUnit4ReflectionUtil.getClassName(parent);
-            if (!myRootName.equals(parentClassName)) {
-                pParents.add(0, parent);
-            }
-        }
-
-        List<List<Description>> parents = myParents.get(description);
-        if (parents == null) {
-            parents = new ArrayList<>(1);
-            myParents.put(description, parents);
-        }
-        parents.add(pParents);
-
+    /**
+     * @param lazy whether to create the nodes only, the suites are announced when their first test starts
+     * @return number of the tests sent
+     */
+    private int sendTree(Description description, Description parent, SuiteNode parentSuite, boolean lazy) {
         String className = JUnit4ReflectionUtil.getClassName(description);
         if (description.isTest()) {
             String methodName = getFullMethodName(description, parent, true);
@@ -486,44 +479,57 @@ public class JUnit4TestListener extends RunListener {
                 if (isWarning(methodName, className) && parent != null) {
                     className = JUnit4ReflectionUtil.getClassName(parent);
                 }
-                myPrintStream.println(
-                    "##teamcity[suiteTreeNode name=\'" + escapeName(methodName) + "\' " +
-                        getTestMethodLocation(methodName, className) + "]"
-                );
+                TestNode test = new TestNode(myIds.nextNumber(), parentSuite, methodName, getSharedClassName(className), myTreeCount);
+                addTreeNode(description, test);
+                for (SuiteNode suite = parentSuite; suite != null; suite = suite.myParent) {
+                    suite.myRemaining.incrementAndGet();
+                }
+                if (!lazy) {
+                    myWriter.message("suiteTreeNode", test.attributes("locationHint", test.getLocationHint()));
+                }
+                return 1;
             }
 
-            return;
+            return 0;
         }
 
         List<Description> tests = description.getChildren();
-        boolean pass = false;
-        for (Description nextDescription : tests) {
-            if ((myRootName == null || !myRootName.equals(className)) && !pass) {
-                pass = true;
-                String locationHint = className;
-                if (isParameter(description)) {
-                    String displayName = nextDescription.getDisplayName();
-                    int paramIdx = displayName.indexOf(locationHint);
-                    if (paramIdx > -1) {
-                        locationHint = displayName.substring(paramIdx + locationHint.length());
-                        if (locationHint.startsWith("(") && locationHint.endsWith(")")) {
-                            locationHint = locationHint.substring(1, locationHint.length() - 1) + "." + className;
-                        }
+        SuiteNode suite = parentSuite;
+        if (!tests.isEmpty() && (myRootName == null || !myRootName.equals(className))) {
+            String locationHint = className;
+            if (isParameter(description)) {
+                String displayName = tests.get(0).getDisplayName();
+                int paramIdx = displayName.indexOf(locationHint);
+                if (paramIdx > -1) {
+                    locationHint = displayName.substring(paramIdx + locationHint.length());
+                    if (locationHint.startsWith("(") && locationHint.endsWith(")")) {
+                        locationHint = locationHint.substring(1, locationHint.length() - 1) + "." + className;
                     }
                 }
-                myPrintStream.println(
-                    "##teamcity[suiteTreeStarted name=\'" + escapeName(getShortName(className)) +
-                        "\' locationHint=\'java:suite://" + escapeName(locationHint) + "\']"
-                );
             }
-            sendTree(nextDescription, description, pParents);
+            suite = new SuiteNode(myIds.nextNumber(), parentSuite, getShortName(className), className, getClassLocation(locationHint), myTreeCount, true);
+            addTreeNode(myTreeSuites, description, suite);
+            if (!lazy) {
+                myWriter.message("suiteTreeStarted", suite.attributes("locationHint", suite.myLocationHint));
+            }
         }
-        if (pass) {
-            myPrintStream.println(
-                "##teamcity[suiteTreeEnded name=\'" +
-                    escapeName(getShortName(JUnit4ReflectionUtil.getClassName(description))) + "\']"
-            );
+        int count = 0;
+        for (Description nextDescription : tests) {
+            count += sendTree(nextDescription, description, suite, lazy);
+        }
+        if (suite != parentSuite && !lazy) {
+            myWriter.message("suiteTreeEnded", suite.attributes());
+        }
+        return count;
+    }
+
+    private static <T> void addTreeNode(Map<Description, Queue<T>> nodes, Description description, T node) {
+        Queue<T> queue = nodes.get(description);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<>();
+            nodes.put(description, queue);
         }
+        queue.add(node);
     }
 
     private static boolean isWarning(String methodName, String className) {
@@ -531,7 +537,7 @@ public class JUnit4TestListener extends RunListener {
     }
 
     private static String getTestMethodLocation(String methodName, String className) {
-        return "locationHint=\'java:test://" + escapeName(className + "." + getShortName(methodName)) + "\'";
+        return "java:test://" + className + "." + getShortName(methodName);
     }
 
     private static boolean isParameter(Description description) {
@@ -539,10 +545,21 @@ public class JUnit4TestListener extends RunListener {
         return displayName.startsWith("[") && displayName.endsWith("]");
     }
 
+    /**
+     * Sends the tree of the tests to run or, if {@link IdeaTestRunner#LAZY_TREE_PROPERTY} is set, only their number:
+     * the IDE builds the tree from the messages of the run then.
+     */
     public void sendTree(Description description) {
         myRootName = JUnit4ReflectionUtil.getClassName(description);
-        sendTree(description, null, new ArrayList<>());
-        myPrintStream.println("##teamcity[treeEnded]");
+        myTreeCount++;
+        if (Boolean.getBoolean(IdeaTestRunner.LAZY_TREE_PROPERTY)) {
+            int count = sendTree(description, null, null, true);
+            myWriter.message("testCount", "count", Integer.toString(count));
+        }
+        else {
+            sendTree(description, null, null, false);
+            myWriter.message("treeEnded");
+        }
     }
 
     private static String getShortName(String fqName) {
@@ -563,4 +580,83 @@ public class JUnit4TestListener extends RunListener {
         }
         return fqName;
     }
-}
\ No newline at end of file
+
+    private static class Node {
+        final int myId;
+        final SuiteNode myParent;
+        final String myName;
+        /**
+         * Number of the tree the node was sent in, <code>0</code> for the nodes created during the run
+         */
+        final int myTree;
+
+        Node(int id, SuiteNode parent, String name, int tree) {
+            myId = id;
+            myParent = parent;
+            myName = name;
+            myTree = tree;
+        }
+
+        String getId() {
+            return TestNodeIds.toId(myId);
+        }
+
+        String getParentId() {
+            return myParent != null ? myParent.getId() : TestNodeIds.getRootId();
+        }
+
+        String[] attributes(String... attributes) {
+            String id = getId();
+            String[] result = new String[8 + attributes.length];
+            result[0] = "id";
+            result[1] = id;
+            result[2] = "name";
+            result[3] = myName;
+            result[4] = "nodeId";
+            result[5] = id;
+            result[6] = "parentNodeId";
+            result[7] = getParentId();
+            System.arraycopy(attributes, 0, result, 8, attributes.length);
+            return result;
+        }
+    }
+
+    private static class TestNode extends Node {
+        final String myClassName;
+        volatile long myStart;
+        volatile TestResourceUsage myUsage;
+        /**
+         * Node of the same test in the next tree and the last of them, set for the first node; guarded by the tree tests map
+         */
+        TestNode myNext;
+        TestNode myLast;
+
+        TestNode(int id, SuiteNode parent, String name, String className, int tree) {
+            super(id, parent, name, tree);
+            myClassName = className;
+        }
+
+        String getLocationHint() {
+            return getTestMethodLocation(myName, myClassName);
+        }
+    }
+
+    private static class SuiteNode extends Node {
+        /**
+         * Whether {@link #myRemaining} holds the number of the unfinished tests; tests of the suites created during the run are not known
+         */
+        final boolean myCounted;
+        final String myClassName;
+        final String myLocationHint;
+        final AtomicInteger myRemaining = new AtomicInteger();
+        volatile boolean myStarted;
+        volatile boolean myFinished;
+
+        SuiteNode(int id, SuiteNode parent, String name, String className, String locationHint, int tree, boolean counted) {
+            super(id, parent, name, tree);
+            myClassName = className;
+            myLocationHint = locationHint;
+            myCounted = counted;
+        }
+    }
+}
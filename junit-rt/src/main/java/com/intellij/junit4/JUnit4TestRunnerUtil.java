@@ -16,9 +16,7 @@
 package com.intellij.junit4;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.text.MessageFormat;
@@ -31,6 +29,7 @@ import java.util.Vector;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.junit.internal.requests.ClassRequest;
 import org.junit.runner.Description;
 import org.junit.runner.Request;
 import org.junit.runner.RunWith;
@@ -38,6 +37,8 @@ import org.junit.runner.Runner;
 import org.junit.runner.manipulation.Filter;
 import org.junit.runners.Parameterized;
 import com.intellij.junit3.TestRunnerUtil;
+import com.intellij.rt.execution.junit.PhaseTimings;
+import com.intellij.rt.execution.junit.TestListFiles;
 import junit.framework.TestCase;
 
 public class JUnit4TestRunnerUtil {
@@ -56,8 +57,7 @@ public class JUnit4TestRunnerUtil {
                 // all tests in the package specified
                 try {
                     final Map<String, Set<String>> classMethods = new HashMap<>();
-                    BufferedReader reader =
-                        new BufferedReader(new InputStreamReader(new FileInputStream(suiteClassName.substring(1)), "UTF-8"));
+                    BufferedReader reader = TestListFiles.openReader(suiteClassName.substring(1));
                     try {
                         String packageName = reader.readLine();
                         if (packageName == null) {
@@ -201,7 +201,7 @@ public class JUnit4TestRunnerUtil {
                     catch (NoSuchMethodError e) {
                         return Request.method(clazz, methodName);
                     }
-                    return Request.aClass(clazz).filterWith(new Filter() {
+                    return classRequest(clazz).filterWith(new Filter() {
                         @Override
                         public boolean shouldRun(Description description) {
                             if (description.isTest()
@@ -242,11 +242,31 @@ public class JUnit4TestRunnerUtil {
             catch (ClassNotFoundException e) {
                 //return simple class runner
             }
-            return Request.aClass(clazz);
+            return classRequest(clazz);
         }
         return Request.classes(getArrayOfClasses(result));
     }
 
+    /**
+     * @return request for the class, with {@link PhaseTimingRunner} for a plain JUnit 4 class if {@link PhaseTimings} are enabled
+     */
+    private static Request classRequest(final Class clazz) {
+        if (PhaseTimings.isEnabled()) {
+            try {
+                Class.forName("org.junit.runners.BlockJUnit4ClassRunner"); //no phases for junit4.4 and <
+                return new ClassRequest(clazz) {
+                    @Override
+                    public Runner getRunner() {
+                        return new PhaseTimingRunner.Builder(true).safeRunnerForClass(clazz);
+                    }
+                };
+            }
+            catch (ClassNotFoundException ignored) {
+            }
+        }
+        return Request.aClass(clazz);
+    }
+
     private static Request getParameterizedRequest(
         final String parameterString,
         final String methodName,
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.junit4;
+
+import com.intellij.rt.execution.junit.PhaseTimings;
+import org.junit.internal.builders.AllDefaultPossibilitiesBuilder;
+import org.junit.internal.builders.JUnit4Builder;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+/**
+ * Runner of the classes without <code>@RunWith</code> which marks {@link PhaseTimings} of their tests, keyed by the test description,
+ * and the <code>@BeforeClass</code> setup, keyed by the class name.
+ * <p>
+ * <code>@AfterClass</code> isn't measured: {@link JUnit4TestListener} finishes the suite of the class with its last test, before it runs.
+ */
+class PhaseTimingRunner extends BlockJUnit4ClassRunner {
+    PhaseTimingRunner(Class testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    protected Statement withBeforeClasses(Statement statement) {
+        final Statement befores = super.withBeforeClasses(statement);
+        final String className = getTestClass().getName();
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                PhaseTimings.setupStarted(className);
+                befores.evaluate();
+            }
+        };
+    }
+
+    @Override
+    protected Statement childrenInvoker(RunNotifier notifier) {
+        final Statement children = super.childrenInvoker(notifier);
+        final String className = getTestClass().getName();
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                PhaseTimings.bodyStarted(className);
+                children.evaluate();
+            }
+        };
+    }
+
+    @Override
+    protected Statement withBefores(FrameworkMethod method, Object target, Statement statement) {
+        final Statement befores = super.withBefores(method, target, statement);
+        final Description description = describeChild(method);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                PhaseTimings.setupStarted(description);
+                befores.evaluate();
+            }
+        };
+    }
+
+    @Override
+    protected Statement methodInvoker(FrameworkMethod method, Object test) {
+        final Statement invoker = super.methodInvoker(method, test);
+        final Description description = describeChild(method);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                PhaseTimings.bodyStarted(description);
+                try {
+                    invoker.evaluate();
+                }
+                finally {
+                    PhaseTimings.bodyFinished(description);
+                }
+            }
+        };
+    }
+
+    @Override
+    protected Statement withAfters(FrameworkMethod method, Object target, Statement statement) {
+        final Statement afters = super.withAfters(method, target, statement);
+        final Description description = describeChild(method);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    afters.evaluate();
+                }
+                finally {
+                    PhaseTimings.teardownFinished(description);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return builder with {@link PhaseTimingRunner} for the plain classes if {@link PhaseTimings} are enabled, the JUnit one otherwise
+     */
+    static AllDefaultPossibilitiesBuilder createBuilder(boolean canUseSuiteMethod) {
+        return PhaseTimings.isEnabled() ? new Builder(canUseSuiteMethod) : new AllDefaultPossibilitiesBuilder(canUseSuiteMethod);
+    }
+
+    /**
+     * Builds the runners as JUnit does, but with {@link PhaseTimingRunner} for the classes JUnit would run with {@link BlockJUnit4ClassRunner}
+     */
+    static class Builder extends AllDefaultPossibilitiesBuilder {
+        Builder(boolean canUseSuiteMethod) {
+            super(canUseSuiteMethod);
+        }
+
+        @Override
+        protected JUnit4Builder junit4Builder() {
+            return new JUnit4Builder() {
+                @Override
+                public Runner runnerForClass(Class testClass) throws Throwable {
+                    return new PhaseTimingRunner(testClass);
+                }
+            };
+        }
+    }
+}
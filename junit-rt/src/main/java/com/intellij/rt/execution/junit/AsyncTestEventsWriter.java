@@ -0,0 +1,375 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves console I/O off the test threads: events are put into a bounded ring buffer and a single writer thread
+ * passes them to the delegate in batches, flushing once per batch.
+ * <p>
+ * The test output is captured into the same buffer (<code>System.out</code> and <code>System.err</code> are replaced)
+ * and written by the same thread, to the events channel if it's connected and to the process stdout/stderr otherwise.
+ * Over the channel the output and the events keep their relative order; in the process output the events keep their order
+ * with stdout only, stderr is a separate stream. Single bytes written to the output are added to the last queued output chunk.
+ * When the buffer is full, producers wait for the writer thread.
+ */
+public class AsyncTestEventsWriter extends TestEventsWriter {
+    public static final String ASYNC_EVENTS_PROPERTY = "idea.junit.async.events";
+    public static final String BUFFER_SIZE_PROPERTY = "idea.junit.async.events.buffer";
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    private static final int OUT = 0;
+    private static final int ERR = 1;
+    private static final int MAX_CHUNK_SIZE = 8192;
+
+    private final TestEventsWriter myDelegate;
+    private final OutputStream myOut;
+    private final OutputStream myErr;
+
+    private final ReentrantLock myLock = new ReentrantLock();
+    private final Condition myNotEmpty = myLock.newCondition();
+    private final Condition myNotFull = myLock.newCondition();
+    private final Condition myWritten = myLock.newCondition();
+    private final Object[] myRing;
+    private long myHead;
+    private long myTail;
+    private long myWrittenCount;
+    private volatile boolean myStopped;
+    private Thread myThread;
+    private Thread myShutdownHook;
+
+    private AsyncTestEventsWriter(TestEventsWriter delegate, OutputStream out, OutputStream err, int capacity) {
+        myDelegate = delegate;
+        myOut = out;
+        myErr = err;
+        myRing = new Object[capacity];
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ASYNC_EVENTS_PROPERTY);
+    }
+
+    /**
+     * Redirects <code>System.out</code>/<code>System.err</code> into the buffer and starts the writer thread.
+     *
+     * @param channelWriter writer to the events channel, which gets the output as well, or <code>null</code> to print events as text
+     *                      into the original stdout
+     */
+    public static AsyncTestEventsWriter install(BinaryTestEventsWriter channelWriter) {
+        String encoding = TextTestEventsWriter.getConsoleEncoding();
+        try {
+            TestEventsWriter delegate;
+            OutputStream out;
+            OutputStream err;
+            if (channelWriter != null) {
+                channelWriter.setAutoFlush(false);
+                delegate = channelWriter;
+                out = channelWriter.getOutput(BinaryTestEventsProtocol.STDOUT, encoding);
+                err = channelWriter.getOutput(BinaryTestEventsProtocol.STDERR, encoding);
+            }
+            else {
+                out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+                err = new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 1 << 12);
+                delegate = new TextTestEventsWriter(new PrintStream(out, false, encoding), encoding);
+            }
+
+            AsyncTestEventsWriter writer = new AsyncTestEventsWriter(delegate, out, err, Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE));
+            System.setOut(new PrintStream(writer.new CapturedStream(OUT), false, encoding));
+            System.setErr(new PrintStream(writer.new CapturedStream(ERR), false, encoding));
+            writer.start();
+            return writer;
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void start() {
+        myThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "JUnit events writer");
+        myThread.setDaemon(true);
+        myThread.start();
+        myShutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stop();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(myShutdownHook);
+    }
+
+    @Override
+    public void message(String messageName, String... attributes) {
+        put(new Object[]{messageName, attributes});
+    }
+
+    @Override
+    public void message(String messageName, Map attributes) {
+        put(new Object[]{messageName, attributes});
+    }
+
+    @Override
+    public void text(String text) {
+        put(text);
+    }
+
+    /**
+     * Waits until everything queued so far is written out.
+     */
+    @Override
+    public void flush() {
+        myLock.lock();
+        try {
+            long target = myTail;
+            while (myWrittenCount < target && !myStopped) {
+                myWritten.awaitUninterruptibly();
+            }
+        }
+        finally {
+            myLock.unlock();
+        }
+    }
+
+    /**
+     * Drains the buffer and stops the writer thread; events reported afterwards are written synchronously.
+     * The shutdown hook is removed, so a writer loaded by a class loader of a single run doesn't keep that loader.
+     */
+    public void stop() {
+        if (myShutdownHook != null && Thread.currentThread() != myShutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(myShutdownHook);
+            }
+            catch (IllegalStateException ignored) {
+                // the process is shutting down
+            }
+        }
+        myLock.lock();
+        try {
+            if (myStopped) {
+                return;
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT_MS);
+            long target = myTail;
+            while (myWrittenCount < target) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    break;
+                }
+                try {
+                    myWritten.awaitNanos(left);
+                }
+                catch (InterruptedException e) {
+                    break;
+                }
+            }
+            myStopped = true;
+            myNotEmpty.signalAll();
+            myNotFull.signalAll();
+            myWritten.signalAll();
+        }
+        finally {
+            myLock.unlock();
+        }
+    }
+
+    private void put(Object event) {
+        if (myStopped) {
+            synchronized (myDelegate) {
+                write(event);
+                flushDelegate();
+            }
+            return;
+        }
+        myLock.lock();
+        try {
+            while (myTail - myHead == myRing.length && !myStopped) {
+                myNotFull.awaitUninterruptibly();
+            }
+            if (!myStopped) {
+                myRing[(int)(myTail++ % myRing.length)] = event;
+                myNotEmpty.signal();
+                return;
+            }
+        }
+        finally {
+            myLock.unlock();
+        }
+        put(event);
+    }
+
+    private void writeLoop() {
+        Object[] batch = new Object[myRing.length];
+        while (true) {
+            int size;
+            myLock.lock();
+            try {
+                while (myHead == myTail && !myStopped) {
+                    myNotEmpty.awaitUninterruptibly();
+                }
+                if (myHead == myTail) {
+                    return;
+                }
+                size = (int)(myTail - myHead);
+                for (int i = 0; i < size; i++) {
+                    int idx = (int)(myHead++ % myRing.length);
+                    batch[i] = myRing[idx];
+                    myRing[idx] = null;
+                }
+                myNotFull.signalAll();
+            }
+            finally {
+                myLock.unlock();
+            }
+
+            synchronized (myDelegate) {
+                for (int i = 0; i < size; i++) {
+                    write(batch[i]);
+                    batch[i] = null;
+                }
+                flushDelegate();
+            }
+
+            myLock.lock();
+            try {
+                myWrittenCount += size;
+                myWritten.signalAll();
+            }
+            finally {
+                myLock.unlock();
+            }
+        }
+    }
+
+    private void write(Object event) {
+        try {
+            if (event instanceof String) {
+                myDelegate.text((String)event);
+            }
+            else if (event instanceof OutputChunk) {
+                OutputChunk chunk = (OutputChunk)event;
+                (chunk.myStream == OUT ? myOut : myErr).write(chunk.myBytes, 0, chunk.myLength);
+            }
+            else {
+                Object[] message = (Object[])event;
+                if (message[1] instanceof Map) {
+                    myDelegate.message((String)message[0], (Map)message[1]);
+                }
+                else {
+                    myDelegate.message((String)message[0], (String[])message[1]);
+                }
+            }
+        }
+        catch (IOException ignored) {
+        }
+    }
+
+    private void flushDelegate() {
+        myDelegate.flush();
+        try {
+            myOut.flush();
+            myErr.flush();
+        }
+        catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Appends a byte to the last queued chunk if the writer thread hasn't taken it yet.
+     *
+     * @return <code>false</code> if a new chunk is to be queued
+     */
+    private boolean appendToLastChunk(int stream, int b) {
+        myLock.lock();
+        try {
+            if (myStopped || myTail == myHead) {
+                return false;
+            }
+            Object last = myRing[(int)((myTail - 1) % myRing.length)];
+            return last instanceof OutputChunk && ((OutputChunk)last).append(stream, b);
+        }
+        finally {
+            myLock.unlock();
+        }
+    }
+
+    private static class OutputChunk {
+        private final int myStream;
+        private byte[] myBytes;
+        private int myLength;
+
+        private OutputChunk(int stream, byte[] bytes, int length) {
+            myStream = stream;
+            myBytes = bytes;
+            myLength = length;
+        }
+
+        private boolean append(int stream, int b) {
+            if (stream != myStream || myLength >= MAX_CHUNK_SIZE) {
+                return false;
+            }
+            if (myLength == myBytes.length) {
+                byte[] bytes = new byte[Math.min(Math.max(myLength * 2, 64), MAX_CHUNK_SIZE)];
+                System.arraycopy(myBytes, 0, bytes, 0, myLength);
+                myBytes = bytes;
+            }
+            myBytes[myLength++] = (byte)b;
+            return true;
+        }
+    }
+
+    private class CapturedStream extends OutputStream {
+        private final int myStream;
+
+        private CapturedStream(int stream) {
+            myStream = stream;
+        }
+
+        @Override
+        public void write(int b) {
+            if (!appendToLastChunk(myStream, b)) {
+                byte[] bytes = new byte[64];
+                bytes[0] = (byte)b;
+                put(new OutputChunk(myStream, bytes, 1));
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len > 0) {
+                byte[] bytes = new byte[len];
+                System.arraycopy(b, off, bytes, 0, len);
+                put(new OutputChunk(myStream, bytes, len));
+            }
+        }
+    }
+}
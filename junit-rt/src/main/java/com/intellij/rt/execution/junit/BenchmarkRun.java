@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.util.ArrayList;
+
+/**
+ * {@link RepeatCount#BENCHMARK} mode: the tests are run {@link #WARMUP_PROPERTY} times without being measured, so class loading and
+ * the interpreter don't distort the durations, then they are measured until the coefficient of variation of the last
+ * {@link #WINDOW} iterations falls to {@link #VARIATION_PROPERTY}, or the maximal number of iterations is run.
+ * <p>
+ * Tests are reported by {@link RepeatStatisticsWriter} with the mean of their durations and its confidence interval.
+ */
+public class BenchmarkRun {
+    /**
+     * Number of warm-up iterations, {@link #DEFAULT_WARMUP} by default
+     */
+    public static final String WARMUP_PROPERTY = "idea.junit.benchmark.warmup";
+    /**
+     * Coefficient of variation in percent which the iterations are considered steady at, {@link #DEFAULT_VARIATION} by default
+     */
+    public static final String VARIATION_PROPERTY = "idea.junit.benchmark.variation";
+
+    private static final int DEFAULT_WARMUP = 5;
+    private static final double DEFAULT_VARIATION = 2;
+    private static final int WINDOW = 5;
+
+    private final int myWarmup;
+    private final int myMaxIterations;
+    private final double myVariation;
+    private final long[] myWindow = new long[WINDOW];
+    private RepeatStatisticsWriter myWriter;
+    private int myWarmedUp;
+    private int myMeasured;
+    private double myLastVariation = Double.NaN;
+    private boolean mySteady;
+
+    private BenchmarkRun(int warmup, int maxIterations, double variation) {
+        myWarmup = warmup;
+        myMaxIterations = maxIterations;
+        myVariation = variation;
+    }
+
+    /**
+     * @param maxIterations maximal number of measured iterations
+     */
+    public static BenchmarkRun create(int maxIterations) {
+        int warmup = Integer.getInteger(WARMUP_PROPERTY, DEFAULT_WARMUP).intValue();
+        double variation = DEFAULT_VARIATION;
+        String value = System.getProperty(VARIATION_PROPERTY);
+        if (value != null) {
+            try {
+                variation = Double.parseDouble(value);
+            }
+            catch (NumberFormatException ignored) {
+            }
+        }
+        return new BenchmarkRun(Math.max(0, warmup), Math.max(maxIterations, WINDOW), variation);
+    }
+
+    public int run(IdeaTestRunner testRunner, String[] args, ArrayList listeners, String name) {
+        myWriter = TestEventsWriter.startRepeatStatistics(false);
+        try {
+            return IdeaTestRunner.Repeater.startBenchmark(testRunner, args, listeners, name, this);
+        }
+        finally {
+            TestEventsWriter.stopRepeatStatistics();
+            TestEventsWriter writer = TestEventsWriter.create(System.out);
+            writer.text(getSummary());
+            writer.flush();
+        }
+    }
+
+    /**
+     * @return whether to run one more iteration
+     */
+    boolean next() {
+        if (myWarmedUp < myWarmup) {
+            myWriter.setMeasuring(false);
+            return true;
+        }
+        if (mySteady || myMeasured >= myMaxIterations) {
+            return false;
+        }
+        myWriter.setMeasuring(true);
+        return true;
+    }
+
+    /**
+     * @param duration of the iteration in nanoseconds
+     */
+    void finished(long duration) {
+        if (myWarmedUp < myWarmup) {
+            myWarmedUp++;
+            return;
+        }
+        myWindow[myMeasured % WINDOW] = duration;
+        myMeasured++;
+        if (myMeasured >= WINDOW) {
+            myLastVariation = getVariation(myWindow);
+            mySteady = myLastVariation <= myVariation;
+        }
+    }
+
+    /**
+     * @return coefficient of variation in percent
+     */
+    private static double getVariation(long[] durations) {
+        double mean = 0;
+        for (int i = 0; i < durations.length; i++) {
+            mean += durations[i];
+        }
+        mean /= durations.length;
+        double squares = 0;
+        for (int i = 0; i < durations.length; i++) {
+            squares += (durations[i] - mean) * (durations[i] - mean);
+        }
+        return mean > 0 ? Math.sqrt(squares / (durations.length - 1)) / mean * 100 : 0;
+    }
+
+    private String getSummary() {
+        String summary = "Benchmark: " + myWarmedUp + " warm-up and " + myMeasured + " measured iterations, ";
+        String variation = Double.isNaN(myLastVariation) ? "" : " (" + Math.round(myLastVariation * 100) / 100.0 + "% over the last " + WINDOW + " iterations)";
+        return summary + (mySteady ? "steady" : "not steady") + variation;
+    }
+}
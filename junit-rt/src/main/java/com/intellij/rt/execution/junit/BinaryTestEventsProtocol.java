@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Binary form of the service messages sent over the events channel.
+ * <p>
+ * The stream starts with {@link #MAGIC} and {@link #VERSION}, followed by frames: <code>varint length, opcode, payload</code>.
+ * Message names and attribute names are always referenced through a string table which is shared by both sides:
+ * the first {@link #PREDEFINED_STRINGS} entries are known upfront, further entries are introduced with {@link #OP_DEFINE_STRING}.
+ * Attribute values are either written inline (<code>varint (length &lt;&lt; 1)</code> followed by UTF-8 bytes)
+ * or reference a table entry (<code>varint (index &lt;&lt; 1 | 1)</code>).
+ *
+ * @see BinaryTestEventsWriter
+ * @see BinaryTestEventsReader
+ */
+public class BinaryTestEventsProtocol {
+    public static final int MAGIC = 0x494A5445;
+    public static final int VERSION = 2;
+
+    /**
+     * <code>varint index, varint length, UTF-8 bytes</code>
+     */
+    public static final int OP_DEFINE_STRING = 1;
+    /**
+     * <code>varint name index, varint attribute count, (varint key index, value) * count</code>
+     */
+    public static final int OP_MESSAGE = 2;
+    /**
+     * <code>varint length, UTF-8 bytes</code>: plain line which is not a service message
+     */
+    public static final int OP_TEXT = 3;
+    /**
+     * <code>byte {@link #STDOUT} or {@link #STDERR}, varint length, UTF-8 bytes</code>: output of the tests, which goes over the channel
+     * rather than the process output, so it stays in order with the events
+     */
+    public static final int OP_OUTPUT = 4;
+
+    public static final int STDOUT = 0;
+    public static final int STDERR = 1;
+
+    public static final int MAX_TABLE_SIZE = 1 << 16;
+    public static final int MAX_INTERNED_VALUE_LENGTH = 1024;
+
+    static final String[] PREDEFINED_STRINGS = {
+        "enteredTheMatrix",
+        "rootName",
+        "suiteTreeStarted",
+        "suiteTreeEnded",
+        "suiteTreeNode",
+        "treeEnded",
+        "testCount",
+        "testSuiteStarted",
+        "testSuiteFinished",
+        "testStarted",
+        "testFinished",
+        MapSerializerUtil.TEST_FAILED,
+        MapSerializerUtil.TEST_IGNORED,
+        "testStdOut",
+        "testStdErr",
+        "name",
+        "id",
+        "nodeId",
+        "parentNodeId",
+        "locationHint",
+        "metainfo",
+        "location",
+        "comment",
+        "duration",
+        "message",
+        "details",
+        "error",
+        "expected",
+        "actual",
+        "expectedFile",
+        "actualFile",
+        "type",
+        "count",
+        "out"
+    };
+
+    /**
+     * Attributes which values tend to repeat within one run (e.g. names and ids are sent with the tree and then again with every event)
+     */
+    static final String[] INTERNED_VALUE_KEYS = {"name", "id", "nodeId", "parentNodeId", "locationHint", "metainfo"};
+
+    private BinaryTestEventsProtocol() {
+    }
+
+    static boolean isInternedValueKey(String key) {
+        for (int i = 0; i < INTERNED_VALUE_KEYS.length; i++) {
+            if (INTERNED_VALUE_KEYS[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int readVarInt(InputStream stream) throws IOException {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            int b = stream.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IOException("Malformed varint");
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the stream produced by {@link BinaryTestEventsWriter}, used on the IDE side of the events channel.
+ */
+public class BinaryTestEventsReader {
+    public interface Listener {
+        void message(String messageName, Map<String, String> attributes);
+
+        void text(String text);
+
+        /**
+         * @param stream {@link BinaryTestEventsProtocol#STDOUT} or {@link BinaryTestEventsProtocol#STDERR}
+         */
+        void output(int stream, String text);
+    }
+
+    private final DataInputStream myStream;
+    private final List<String> myStrings = new ArrayList<>(Arrays.asList(BinaryTestEventsProtocol.PREDEFINED_STRINGS));
+    private byte[] myFrame = new byte[256];
+
+    public BinaryTestEventsReader(InputStream stream) {
+        myStream = new DataInputStream(stream);
+    }
+
+    /**
+     * Reads events until the channel is closed.
+     */
+    public void readAll(Listener listener) throws IOException {
+        if (myStream.readInt() != BinaryTestEventsProtocol.MAGIC) {
+            throw new IOException("Not a test events stream");
+        }
+        int version = myStream.read();
+        if (version != BinaryTestEventsProtocol.VERSION) {
+            throw new IOException("Unsupported test events protocol version: " + version);
+        }
+
+        while (true) {
+            int length;
+            try {
+                length = BinaryTestEventsProtocol.readVarInt(myStream);
+            }
+            catch (EOFException e) {
+                return;
+            }
+            if (length > myFrame.length) {
+                myFrame = new byte[Math.max(length, myFrame.length * 2)];
+            }
+            myStream.readFully(myFrame, 0, length);
+            readFrame(new ByteArrayInputStream(myFrame, 0, length), listener);
+        }
+    }
+
+    private void readFrame(ByteArrayInputStream frame, Listener listener) throws IOException {
+        int opcode = frame.read();
+        switch (opcode) {
+            case BinaryTestEventsProtocol.OP_DEFINE_STRING: {
+                int idx = BinaryTestEventsProtocol.readVarInt(frame);
+                String str = readString(frame, BinaryTestEventsProtocol.readVarInt(frame));
+                if (idx != myStrings.size()) {
+                    throw new IOException("Unexpected string index " + idx + ", expected " + myStrings.size());
+                }
+                myStrings.add(str);
+                break;
+            }
+            case BinaryTestEventsProtocol.OP_MESSAGE: {
+                String messageName = myStrings.get(BinaryTestEventsProtocol.readVarInt(frame));
+                int count = BinaryTestEventsProtocol.readVarInt(frame);
+                Map<String, String> attributes = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String key = myStrings.get(BinaryTestEventsProtocol.readVarInt(frame));
+                    int tag = BinaryTestEventsProtocol.readVarInt(frame);
+                    attributes.put(key, (tag & 1) != 0 ? myStrings.get(tag >>> 1) : readString(frame, tag >>> 1));
+                }
+                listener.message(messageName, attributes);
+                break;
+            }
+            case BinaryTestEventsProtocol.OP_TEXT:
+                listener.text(readString(frame, BinaryTestEventsProtocol.readVarInt(frame)));
+                break;
+            case BinaryTestEventsProtocol.OP_OUTPUT: {
+                int stream = frame.read();
+                listener.output(stream, readString(frame, BinaryTestEventsProtocol.readVarInt(frame)));
+                break;
+            }
+            default:
+                //frames of newer versions are skipped
+        }
+    }
+
+    private static String readString(ByteArrayInputStream frame, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        if (frame.read(bytes, 0, length) != length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
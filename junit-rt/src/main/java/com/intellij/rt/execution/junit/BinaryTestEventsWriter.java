@@ -0,0 +1,349 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Encodes events according to {@link BinaryTestEventsProtocol}.
+ * Once the stream fails, all further events are dropped: the IDE treats the closed channel as the end of the run.
+ * <p>
+ * The output of the tests is sent as {@link BinaryTestEventsProtocol#OP_OUTPUT} frames through {@link #getOutput(int)}:
+ * it's collected until the next event, flush or switch between stdout and stderr, so the IDE gets it in order with the events.
+ */
+public class BinaryTestEventsWriter extends TestEventsWriter {
+    private static final int MAX_PENDING_OUTPUT = 8192;
+
+    private final OutputStream myStream;
+    private final Map<String, Integer> myStrings = new HashMap<>();
+    private byte[] myFrame = new byte[256];
+    private int myFrameLength;
+    private byte[] myHeader = new byte[5];
+    private boolean myFailed;
+    private boolean myAutoFlush = true;
+    private final StringBuilder myPendingOutput = new StringBuilder();
+    private int myPendingStream;
+
+    public BinaryTestEventsWriter(OutputStream stream) {
+        myStream = stream;
+        for (int i = 0; i < BinaryTestEventsProtocol.PREDEFINED_STRINGS.length; i++) {
+            myStrings.put(BinaryTestEventsProtocol.PREDEFINED_STRINGS[i], i);
+        }
+        try {
+            int magic = BinaryTestEventsProtocol.MAGIC;
+            myStream.write(new byte[]{(byte)(magic >>> 24), (byte)(magic >>> 16), (byte)(magic >>> 8), (byte)magic});
+            myStream.write(BinaryTestEventsProtocol.VERSION);
+        }
+        catch (IOException e) {
+            myFailed = true;
+        }
+    }
+
+    /**
+     * @param autoFlush whether the stream is flushed after every event; disabled when events are written in batches
+     */
+    public synchronized void setAutoFlush(boolean autoFlush) {
+        myAutoFlush = autoFlush;
+    }
+
+    /**
+     * @param stream {@link BinaryTestEventsProtocol#STDOUT} or {@link BinaryTestEventsProtocol#STDERR}
+     * @param encoding of the bytes written to the stream
+     * @return stream which sends what is written to it over the channel
+     */
+    public OutputStream getOutput(int stream, String encoding) {
+        return new OutputFrames(stream, Charset.forName(encoding));
+    }
+
+    @Override
+    public synchronized void message(String messageName, String... attributes) {
+        flushOutput();
+        int count = 0;
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            if (attributes[i + 1] != null) {
+                count++;
+            }
+        }
+        int nameIdx = intern(messageName);
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            if (attributes[i + 1] != null) {
+                intern(attributes[i]);
+                internValue(attributes[i], attributes[i + 1]);
+            }
+        }
+
+        startFrame(BinaryTestEventsProtocol.OP_MESSAGE);
+        writeVarInt(nameIdx);
+        writeVarInt(count);
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            if (attributes[i + 1] != null) {
+                writeVarInt(myStrings.get(attributes[i]));
+                writeValue(attributes[i + 1]);
+            }
+        }
+        endFrame();
+        if (myAutoFlush) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void message(String messageName, Map attributes) {
+        String[] pairs = new String[attributes.size() * 2];
+        int i = 0;
+        for (Iterator iterator = attributes.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry entry = (Map.Entry)iterator.next();
+            pairs[i++] = String.valueOf(entry.getKey());
+            pairs[i++] = (String)entry.getValue();
+        }
+        message(messageName, pairs);
+    }
+
+    @Override
+    public synchronized void text(String text) {
+        flushOutput();
+        startFrame(BinaryTestEventsProtocol.OP_TEXT);
+        writeString(text);
+        endFrame();
+        if (myAutoFlush) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushOutput();
+        if (!myFailed) {
+            try {
+                myStream.flush();
+            }
+            catch (IOException e) {
+                myFailed = true;
+            }
+        }
+    }
+
+    private void output(int stream, CharBuffer chars) {
+        if (myPendingStream != stream) {
+            flushOutput();
+            myPendingStream = stream;
+        }
+        myPendingOutput.append(chars);
+        if (myPendingOutput.length() >= MAX_PENDING_OUTPUT) {
+            flushOutput();
+        }
+    }
+
+    private void flushOutput() {
+        if (myPendingOutput.length() == 0) {
+            return;
+        }
+        startFrame(BinaryTestEventsProtocol.OP_OUTPUT);
+        writeByte(myPendingStream);
+        writeString(myPendingOutput.toString());
+        endFrame();
+        myPendingOutput.setLength(0);
+    }
+
+    private int intern(String str) {
+        Integer idx = myStrings.get(str);
+        if (idx != null) {
+            return idx;
+        }
+        int newIdx = myStrings.size();
+        myStrings.put(str, newIdx);
+        startFrame(BinaryTestEventsProtocol.OP_DEFINE_STRING);
+        writeVarInt(newIdx);
+        writeString(str);
+        endFrame();
+        return newIdx;
+    }
+
+    private void internValue(String key, String value) {
+        if (value.length() <= BinaryTestEventsProtocol.MAX_INTERNED_VALUE_LENGTH &&
+            myStrings.size() < BinaryTestEventsProtocol.MAX_TABLE_SIZE &&
+            BinaryTestEventsProtocol.isInternedValueKey(key)) {
+            intern(value);
+        }
+    }
+
+    private void writeValue(String value) {
+        Integer idx = myStrings.get(value);
+        if (idx != null) {
+            writeVarInt(idx << 1 | 1);
+        }
+        else {
+            writeString(value, true);
+        }
+    }
+
+    private void startFrame(int opcode) {
+        myFrameLength = 0;
+        writeByte(opcode);
+    }
+
+    private void endFrame() {
+        if (myFailed) {
+            return;
+        }
+        int length = myFrameLength;
+        int headerLength = 0;
+        while ((length & ~0x7F) != 0) {
+            myHeader[headerLength++] = (byte)((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        myHeader[headerLength++] = (byte)length;
+        try {
+            myStream.write(myHeader, 0, headerLength);
+            myStream.write(myFrame, 0, myFrameLength);
+        }
+        catch (IOException e) {
+            myFailed = true;
+        }
+    }
+
+    private void writeString(String str) {
+        writeString(str, false);
+    }
+
+    /**
+     * Writes UTF-8 bytes prefixed with their length; the length is reserved with the worst case size and then patched.
+     */
+    private void writeString(String str, boolean taggedLength) {
+        int maxBytes = str.length() * 3;
+        int maxPrefix = 5;
+        ensureCapacity(maxPrefix + maxBytes);
+        int prefixPos = myFrameLength;
+        int pos = prefixPos + maxPrefix;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                myFrame[pos++] = (byte)c;
+            }
+            else if (c < 0x800) {
+                myFrame[pos++] = (byte)(0xC0 | (c >> 6));
+                myFrame[pos++] = (byte)(0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, str.charAt(++i));
+                myFrame[pos++] = (byte)(0xF0 | (cp >> 18));
+                myFrame[pos++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                myFrame[pos++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                myFrame[pos++] = (byte)(0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                myFrame[pos++] = (byte)'?';
+            }
+            else {
+                myFrame[pos++] = (byte)(0xE0 | (c >> 12));
+                myFrame[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                myFrame[pos++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+        int byteLength = pos - prefixPos - maxPrefix;
+        myFrameLength = prefixPos;
+        writeVarInt(taggedLength ? byteLength << 1 : byteLength);
+        System.arraycopy(myFrame, prefixPos + maxPrefix, myFrame, myFrameLength, byteLength);
+        myFrameLength += byteLength;
+    }
+
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            myFrame[myFrameLength++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        myFrame[myFrameLength++] = (byte)value;
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        myFrame[myFrameLength++] = (byte)b;
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = myFrameLength + additional;
+        if (required > myFrame.length) {
+            byte[] newFrame = new byte[Math.max(required, myFrame.length * 2)];
+            System.arraycopy(myFrame, 0, newFrame, 0, myFrameLength);
+            myFrame = newFrame;
+        }
+    }
+
+    /**
+     * Decodes the bytes with the encoding of the stream, the bytes of an incomplete character wait for the rest of it
+     */
+    private class OutputFrames extends OutputStream {
+        private final int myStream;
+        private final CharsetDecoder myDecoder;
+        private final ByteBuffer myBytes = ByteBuffer.allocate(8192);
+        private final CharBuffer myChars = CharBuffer.allocate(8192);
+
+        OutputFrames(int stream, Charset charset) {
+            myStream = stream;
+            myDecoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public void write(int b) {
+            synchronized (BinaryTestEventsWriter.this) {
+                myBytes.put((byte)b);
+                decode();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            synchronized (BinaryTestEventsWriter.this) {
+                while (len > 0) {
+                    int count = Math.min(len, myBytes.remaining());
+                    myBytes.put(b, off, count);
+                    off += count;
+                    len -= count;
+                    decode();
+                }
+            }
+        }
+
+        private void decode() {
+            myBytes.flip();
+            CoderResult result;
+            do {
+                result = myDecoder.decode(myBytes, myChars, false);
+                myChars.flip();
+                output(myStream, myChars);
+                myChars.clear();
+            }
+            while (result.isOverflow());
+            myBytes.compact();
+        }
+
+        @Override
+        public void flush() {
+            BinaryTestEventsWriter.this.flush();
+        }
+    }
+}
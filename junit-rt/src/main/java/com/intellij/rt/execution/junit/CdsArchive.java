@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Dynamic AppCDS archives of test JVMs, keyed by a fingerprint of everything the archive depends on.
+ * <p>
+ * The first JVM for a fingerprint dumps the loaded classes into a temporary file at exit, which is published as the archive
+ * once the JVM is gone; later JVMs map the archive. The JVM refuses to dump with non-empty directories on its classpath,
+ * so archives are used only for JVMs started with jars only: the worker and daemon JVMs, which load test classes
+ * with own class loaders, and JVMs of classpaths without output directories.
+ * <p>
+ * The archives are kept in a directory of the current user given by the IDE in {@link #DIRECTORY_PROPERTY}, which the IDE creates
+ * accessible by the user only, since a JVM runs the classes of the archive it maps. Only the {@link #MAX_ARCHIVES} most recently
+ * used archives are kept.
+ * <p>
+ * Dynamic archives need Java 13, no options are added for older JVMs.
+ */
+public class CdsArchive {
+    public static final String CDS_PROPERTY = "idea.junit.cds";
+    public static final String DIRECTORY_PROPERTY = "idea.junit.cds.dir";
+
+    static final int MAX_ARCHIVES = 8;
+    /**
+     * Dumps left by JVMs which were killed are deleted after a day
+     */
+    private static final long MAX_DUMP_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    private static final String ARCHIVE_SUFFIX = ".jsa";
+    private static final String DUMP_SUFFIX = ARCHIVE_SUFFIX + ".tmp";
+    private static final String DUMP_OPTION = "-XX:ArchiveClassesAtExit=";
+    private static final String SHARED_ARCHIVE_OPTION = "-XX:SharedArchiveFile=";
+    private static final String LOG_OPTION = "-Xlog:cds";
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(CDS_PROPERTY) && getDirectory() != null && isSupported(System.getProperty("java.specification.version"));
+    }
+
+    /**
+     * @param javaVersion see {@link #getJavaVersion(String)}
+     */
+    public static boolean isSupported(String javaVersion) {
+        return getJavaVersion(javaVersion) >= 13;
+    }
+
+    /**
+     * @return directory of the archives given by the IDE, <code>null</code> if there is none
+     */
+    public static File getDirectory() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        return directory != null ? new File(directory) : null;
+    }
+
+    public static File getArchive(File directory, String fingerprint) {
+        return new File(directory, fingerprint + ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * @return a new file to dump the archive for the fingerprint into, see {@link #publish(File, File, String)}
+     */
+    public static File createDumpFile(File directory, String fingerprint) {
+        return new File(directory, fingerprint + "." + Long.toString(System.nanoTime(), 36) + DUMP_SUFFIX);
+    }
+
+    /**
+     * Publishes the dump as the archive of the fingerprint and evicts the archives used least recently.
+     *
+     * @param dumpFile file dumped by a JVM which has exited
+     */
+    public static void publish(File directory, File dumpFile, String fingerprint) {
+        File archive = getArchive(directory, fingerprint);
+        if (!dumpFile.isFile() || archive.exists() || !dumpFile.renameTo(archive)) {
+            dumpFile.delete();
+        }
+        else {
+            evict(directory);
+        }
+    }
+
+    /**
+     * Keeps {@link #MAX_ARCHIVES} archives modified last (mapping an archive touches it) and deletes stale dumps.
+     */
+    static void evict(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List archives = new ArrayList();
+        long staleDumps = System.currentTimeMillis() - MAX_DUMP_AGE_MS;
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (name.endsWith(ARCHIVE_SUFFIX)) {
+                archives.add(files[i]);
+            }
+            else if (name.endsWith(DUMP_SUFFIX) && files[i].lastModified() < staleDumps) {
+                files[i].delete();
+            }
+        }
+        if (archives.size() <= MAX_ARCHIVES) {
+            return;
+        }
+        File[] sorted = (File[])archives.toArray(new File[0]);
+        Arrays.sort(sorted, new Comparator() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                long modified1 = ((File)o1).lastModified();
+                long modified2 = ((File)o2).lastModified();
+                return modified1 > modified2 ? -1 : modified1 < modified2 ? 1 : 0;
+            }
+        });
+        // an archive mapped by a running JVM stays mapped after the deletion on POSIX, on Windows the deletion fails
+        for (int i = MAX_ARCHIVES; i < sorted.length; i++) {
+            sorted[i].delete();
+        }
+    }
+
+    /**
+     * @param dumpFile where to dump the archive if there is none yet, <code>null</code> to only use an existing archive
+     * @return JVM options to map the archive of the fingerprint or to dump it
+     */
+    public static List getVMOptions(File directory, String fingerprint, File dumpFile) {
+        List options = new ArrayList();
+        File archive = getArchive(directory, fingerprint);
+        if (archive.isFile()) {
+            // marks the archive as used for the eviction
+            archive.setLastModified(System.currentTimeMillis());
+            options.add(SHARED_ARCHIVE_OPTION + archive.getAbsolutePath());
+        }
+        else if (dumpFile != null) {
+            options.add(DUMP_OPTION + dumpFile.getAbsolutePath());
+        }
+        else {
+            return options;
+        }
+        // warnings about skipped or mismatched classes would be mixed into the test output
+        options.add(LOG_OPTION + "=off,cds+dynamic=off");
+        return options;
+    }
+
+    /**
+     * @param ownArchive whether the JVM gets the options of its own archive, see {@link #getVMOptions(File, String, File)}; the archive
+     *                   of the current JVM and its logging options are left out then, the JVM refuses to dump over a mapped dynamic archive
+     * @return options of the current JVM to start other test JVMs with, without the option to dump an archive
+     */
+    public static List getInheritedVMOptions(boolean ownArchive) {
+        List options = new ArrayList();
+        for (Iterator iterator = ManagementFactory.getRuntimeMXBean().getInputArguments().iterator(); iterator.hasNext(); ) {
+            String option = (String)iterator.next();
+            if (option.startsWith(DUMP_OPTION)) {
+                continue;
+            }
+            if (ownArchive && (option.startsWith(SHARED_ARCHIVE_OPTION) || option.startsWith(LOG_OPTION))) {
+                continue;
+            }
+            options.add(option);
+        }
+        return options;
+    }
+
+    /**
+     * @param version <code>java.specification.version</code> or a version string of a JDK, e.g. <code>1.8.0_292</code> or <code>17.0.9</code>
+     * @return the feature version, <code>0</code> if unknown
+     */
+    public static int getJavaVersion(String version) {
+        if (version == null) {
+            return 0;
+        }
+        int[] numbers = new int[2];
+        int count = 0;
+        int i = 0;
+        while (i < version.length() && count < numbers.length) {
+            if (!Character.isDigit(version.charAt(i))) {
+                if (count > 0 && version.charAt(i) != '.') {
+                    break;
+                }
+                i++;
+                continue;
+            }
+            int value = 0;
+            while (i < version.length() && Character.isDigit(version.charAt(i))) {
+                value = value * 10 + (version.charAt(i++) - '0');
+            }
+            numbers[count++] = value;
+        }
+        return numbers[0] == 1 && count > 1 ? numbers[1] : numbers[0];
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Comparison failures with expected or actual values longer than {@link #THRESHOLD_PROPERTY} characters: the values are written
+ * to files, which the IDE diff reads, and the message carries only the first differing region of them with some context.
+ * The files are created in the directory of the run given by {@link #DIRECTORY_PROPERTY}, which the IDE deletes when the process
+ * terminates; without it the values are sent as they are.
+ * <p>
+ * The region is found by the Myers diff of the values after their common prefix and suffix, bounded by {@link #WINDOW} characters
+ * and {@link #MAX_EDITS} edits; changes separated by less than {@link #CONTEXT} equal characters make one region.
+ */
+public class ComparisonPayloads {
+    public static final String THRESHOLD_PROPERTY = "idea.junit.comparison.threshold";
+    public static final String DIRECTORY_PROPERTY = "idea.junit.comparison.dir";
+
+    static final int CONTEXT = 32;
+    static final int MAX_REGION = 1024;
+    static final int WINDOW = 8192;
+    static final int MAX_EDITS = 256;
+
+    /**
+     * @return <code>data</code>, or the data with the values written to files if they are too long to be sent
+     */
+    public static ComparisonFailureData spillIfLarge(ComparisonFailureData data) {
+        if (data == null || data.getFilePath() != null || data.getActualFilePath() != null) {
+            return data;
+        }
+        String expected = data.getExpected();
+        String actual = data.getActual();
+        int threshold = getThreshold();
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (threshold < 0 || directory == null || expected == null || actual == null || expected.length() <= threshold && actual.length() <= threshold) {
+            return data;
+        }
+        try {
+            Path directoryPath = Paths.get(directory);
+            // forks share the directory of the run, it may be created by any of them
+            Files.createDirectories(directoryPath);
+            String expectedFile = write(directoryPath, "expected_", expected);
+            String actualFile = write(directoryPath, "actual_", actual);
+            String[] summary = summarize(expected, actual);
+            return new ComparisonFailureData(summary[0], summary[1], expectedFile, actualFile);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return data;
+        }
+    }
+
+    /**
+     * @return <code>-1</code> if the values are never written to files
+     */
+    private static int getThreshold() {
+        String threshold = System.getProperty(THRESHOLD_PROPERTY);
+        if (threshold != null) {
+            try {
+                return Integer.parseInt(threshold);
+            }
+            catch (NumberFormatException ignored) {
+            }
+        }
+        return -1;
+    }
+
+    private static String write(Path directory, String prefix, String text) throws IOException {
+        Path path = Files.createTempFile(directory, prefix, ".txt");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = CharBuffer.wrap(text);
+            ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                writeBuffer(channel, bytes);
+            }
+            while (result.isOverflow());
+            encoder.flush(bytes);
+            writeBuffer(channel, bytes);
+        }
+        finally {
+            channel.close();
+        }
+        return path.toString();
+    }
+
+    private static void writeBuffer(FileChannel channel, ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * @return the first differing regions of <code>expected</code> and <code>actual</code> with their context,
+     * the parts left out are marked with <code>...</code>
+     */
+    static String[] summarize(String expected, String actual) {
+        int prefix = 0;
+        int maxPrefix = Math.min(expected.length(), actual.length());
+        while (prefix < maxPrefix && expected.charAt(prefix) == actual.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && expected.charAt(expected.length() - suffix - 1) == actual.charAt(actual.length() - suffix - 1)) {
+            suffix++;
+        }
+        int expectedEnd = Math.min(expected.length() - suffix, prefix + WINDOW);
+        int actualEnd = Math.min(actual.length() - suffix, prefix + WINDOW);
+        int[] region = findFirstRegion(expected, prefix, expectedEnd, actual, prefix, actualEnd);
+        return new String[]{
+            excerpt(expected, prefix + region[0], prefix + region[1]),
+            excerpt(actual, prefix + region[2], prefix + region[3])
+        };
+    }
+
+    private static String excerpt(String text, int start, int end) {
+        end = Math.min(end, start + MAX_REGION);
+        int from = Math.max(0, start - CONTEXT);
+        int to = Math.min(text.length(), end + CONTEXT);
+        return (from > 0 ? "..." : "") + text.substring(from, to) + (to < text.length() ? "..." : "");
+    }
+
+    /**
+     * Myers diff of <code>a[aStart, aEnd)</code> and <code>b[bStart, bEnd)</code>.
+     *
+     * @return start and end of the first differing region in <code>a</code>, then in <code>b</code>, relative to the starts;
+     * the whole ranges if they differ in more than {@link #MAX_EDITS} edits
+     */
+    static int[] findFirstRegion(String a, int aStart, int aEnd, String b, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int max = Math.min(n + m, MAX_EDITS);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(v.clone());
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && v[offset + k - 1] < v[offset + k + 1] ? v[offset + k + 1] : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.charAt(aStart + x) == b.charAt(bStart + y)) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return getFirstRegion(trace, offset, d, k, x);
+                }
+            }
+        }
+        return new int[]{0, n, 0, m};
+    }
+
+    /**
+     * Walks the path found back and joins the edits at its start which are less than {@link #CONTEXT} equal characters apart
+     */
+    private static int[] getFirstRegion(List<int[]> trace, int offset, int d, int k, int x) {
+        // edits in the reverse order: start x and y, end x and y, length of the equal run after
+        List<int[]> edits = new ArrayList<>();
+        for (; d > 0; d--) {
+            int[] v = trace.get(d);
+            int previousK = k == -d || k != d && v[offset + k - 1] < v[offset + k + 1] ? k + 1 : k - 1;
+            int previousX = v[offset + previousK];
+            int previousY = previousX - previousK;
+            int editX = previousK == k + 1 ? previousX : previousX + 1;
+            int editY = previousK == k + 1 ? previousY + 1 : previousY;
+            edits.add(new int[]{previousX, previousY, editX, editY, x - editX});
+            k = previousK;
+            x = previousX;
+        }
+        if (edits.isEmpty()) {
+            return new int[]{0, 0, 0, 0};
+        }
+        int[] first = edits.get(edits.size() - 1);
+        int[] last = first;
+        for (int i = edits.size() - 2; i >= 0 && last[4] < CONTEXT; i--) {
+            last = edits.get(i);
+        }
+        return new int[]{first[0], last[2], first[1], last[3]};
+    }
+}
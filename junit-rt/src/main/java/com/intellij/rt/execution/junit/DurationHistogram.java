@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+/**
+ * Histogram of durations in nanoseconds with logarithmic buckets in the manner of HdrHistogram: every power of two is split into
+ * {@link #SUB_BUCKET_COUNT} linear sub-buckets, so a percentile is within 1/16 of the recorded value.
+ * Sub-buckets are allocated per power of two when the first value of it is recorded, so only the ranges seen take memory.
+ */
+public class DurationHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * Two-sided 95% quantiles of Student's t-distribution by degrees of freedom, the normal quantile is used above them
+     */
+    private static final double[] T_QUANTILES = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    private final long[][] myCounts = new long[64 - SUB_BUCKET_BITS + 1][];
+    private long myCount;
+    private long myMin = Long.MAX_VALUE;
+    private long myMax;
+    private long mySum;
+    private double myMean;
+    /**
+     * Sum of squared differences from the mean, updated by Welford's algorithm
+     */
+    private double mySquares;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int bucket = getBucket(value);
+        long[] counts = myCounts[bucket];
+        if (counts == null) {
+            counts = myCounts[bucket] = new long[SUB_BUCKET_COUNT];
+        }
+        counts[getSubBucket(value, bucket)]++;
+        myCount++;
+        mySum += value;
+        double delta = value - myMean;
+        myMean += delta / myCount;
+        mySquares += delta * (value - myMean);
+        myMin = Math.min(myMin, value);
+        myMax = Math.max(myMax, value);
+    }
+
+    /**
+     * Adds the values recorded by <code>other</code>
+     */
+    public void add(DurationHistogram other) {
+        for (int bucket = 0; bucket < myCounts.length; bucket++) {
+            long[] counts = other.myCounts[bucket];
+            if (counts == null) {
+                continue;
+            }
+            if (myCounts[bucket] == null) {
+                myCounts[bucket] = new long[SUB_BUCKET_COUNT];
+            }
+            for (int subBucket = 0; subBucket < SUB_BUCKET_COUNT; subBucket++) {
+                myCounts[bucket][subBucket] += counts[subBucket];
+            }
+        }
+        if (other.myCount > 0) {
+            long count = myCount + other.myCount;
+            double delta = other.myMean - myMean;
+            mySquares += other.mySquares + delta * delta * myCount * other.myCount / count;
+            myMean += delta * other.myCount / count;
+            myCount = count;
+            mySum += other.mySum;
+            myMin = Math.min(myMin, other.myMin);
+            myMax = Math.max(myMax, other.myMax);
+        }
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the highest value of the sub-bucket the percentile falls into, not above the maximum recorded value
+     */
+    public long getPercentile(double percentile) {
+        if (myCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil(percentile / 100 * myCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < myCounts.length; bucket++) {
+            long[] counts = myCounts[bucket];
+            if (counts == null) {
+                continue;
+            }
+            for (int subBucket = 0; subBucket < SUB_BUCKET_COUNT; subBucket++) {
+                seen += counts[subBucket];
+                if (seen >= target) {
+                    return Math.min(getHighestValue(bucket, subBucket), myMax);
+                }
+            }
+        }
+        return myMax;
+    }
+
+    public long getCount() {
+        return myCount;
+    }
+
+    public long getMin() {
+        return myCount > 0 ? myMin : 0;
+    }
+
+    public long getMax() {
+        return myMax;
+    }
+
+    public double getMean() {
+        return myCount > 0 ? (double)mySum / myCount : 0;
+    }
+
+    /**
+     * @return sample standard deviation
+     */
+    public double getStandardDeviation() {
+        return myCount > 1 ? Math.sqrt(mySquares / (myCount - 1)) : 0;
+    }
+
+    /**
+     * @return half-width of the 95% confidence interval of the mean
+     */
+    public double getConfidenceInterval() {
+        if (myCount < 2) {
+            return 0;
+        }
+        long degrees = myCount - 1;
+        double quantile = degrees <= T_QUANTILES.length ? T_QUANTILES[(int)degrees - 1] : 1.96;
+        return quantile * getStandardDeviation() / Math.sqrt(myCount);
+    }
+
+    /**
+     * Bucket <code>0</code> holds values below {@link #SUB_BUCKET_COUNT} one per sub-bucket,
+     * bucket <code>b</code> holds values from <code>2^(b + 3)</code> to <code>2^(b + 4) - 1</code>, <code>2^(b - 1)</code> per sub-bucket.
+     */
+    private static int getBucket(long value) {
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        return highestBit < SUB_BUCKET_BITS ? 0 : highestBit - SUB_BUCKET_BITS + 1;
+    }
+
+    private static int getSubBucket(long value, int bucket) {
+        return bucket == 0 ? (int)value : (int)(value >>> (bucket - 1)) - SUB_BUCKET_COUNT;
+    }
+
+    private static long getHighestValue(int bucket, int subBucket) {
+        return bucket == 0 ? subBucket : ((long)(subBucket + SUB_BUCKET_COUNT + 1) << (bucket - 1)) - 1;
+    }
+
+    /**
+     * @return nanoseconds as milliseconds with up to three fractional digits, e.g. <code>12.5 ms</code>
+     */
+    public static String formatMillis(long nanos) {
+        long micros = nanos / 1000;
+        String fraction = Long.toString(1000 + micros % 1000).substring(1);
+        while (fraction.endsWith("0")) {
+            fraction = fraction.substring(0, fraction.length() - 1);
+        }
+        return (micros / 1000) + (fraction.length() > 0 ? "." + fraction : "") + " ms";
+    }
+}
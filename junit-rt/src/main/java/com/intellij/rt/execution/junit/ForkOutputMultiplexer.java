@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Passes the output of the forks running at once into the output of this process line by line.
+ * <p>
+ * Forks report with own node ids, so their lines may be interleaved, but a line of a fork is never broken by the output of another one.
+ * Complete lines are written through as soon as they are read; the unfinished line of a fork is kept until its end is read,
+ * or until it grows over {@link #MAX_LINE} bytes, then it's written as is. Events are written from a new line,
+ * so such a line isn't glued to them.
+ */
+class ForkOutputMultiplexer {
+    static final int MAX_LINE = 1 << 16;
+
+    private final PrintStream myOut;
+    private final PrintStream myErr;
+
+    ForkOutputMultiplexer(PrintStream out, PrintStream err) {
+        myOut = out;
+        myErr = err;
+    }
+
+    Fork register() {
+        return new Fork();
+    }
+
+    /**
+     * Writes the kept start of a line followed by the bytes read now in one go
+     */
+    private synchronized void write(boolean err, byte[] start, int startLength, byte[] bytes, int offset, int length) {
+        PrintStream stream = err ? myErr : myOut;
+        if (startLength > 0) {
+            stream.write(start, 0, startLength);
+        }
+        if (length > 0) {
+            stream.write(bytes, offset, length);
+        }
+    }
+
+    private synchronized void flush() {
+        myOut.flush();
+        myErr.flush();
+    }
+
+    class Fork {
+        private final LineBuffer myOutLine = new LineBuffer(false);
+        private final LineBuffer myErrLine = new LineBuffer(true);
+
+        /**
+         * Reads the stream of the fork until it's closed; to be called from a separate thread for each stream.
+         */
+        void pump(InputStream stream, boolean err) {
+            LineBuffer line = err ? myErrLine : myOutLine;
+            byte[] buffer = new byte[8192];
+            try {
+                int length;
+                while ((length = stream.read(buffer)) >= 0) {
+                    if (length > 0) {
+                        line.write(buffer, 0, length);
+                    }
+                }
+            }
+            catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * @return stream for the output of this process which belongs to the fork, e.g. events of a node grouping its tests
+         */
+        PrintStream createOut() {
+            return new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[]{(byte)b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    myOutLine.write(b, off, len);
+                }
+            }, true);
+        }
+
+        void finish() {
+            myOutLine.writeRest();
+            myErrLine.writeRest();
+            flush();
+        }
+    }
+
+    private class LineBuffer {
+        private final boolean myErr;
+        private byte[] myBytes = new byte[256];
+        private int myLength;
+
+        private LineBuffer(boolean err) {
+            myErr = err;
+        }
+
+        synchronized void write(byte[] bytes, int offset, int length) {
+            int end = offset + length;
+            int lineEnd = end;
+            while (lineEnd > offset && bytes[lineEnd - 1] != '\n') {
+                lineEnd--;
+            }
+            if (lineEnd > offset) {
+                ForkOutputMultiplexer.this.write(myErr, myBytes, myLength, bytes, offset, lineEnd - offset);
+                myLength = 0;
+            }
+            append(bytes, lineEnd, end - lineEnd);
+            if (myLength >= MAX_LINE) {
+                writeRest();
+            }
+        }
+
+        synchronized void writeRest() {
+            if (myLength > 0) {
+                ForkOutputMultiplexer.this.write(myErr, myBytes, myLength, null, 0, 0);
+                myLength = 0;
+            }
+            if (myBytes.length > MAX_LINE) {
+                myBytes = new byte[256];
+            }
+        }
+
+        private void append(byte[] bytes, int offset, int length) {
+            if (myLength + length > myBytes.length) {
+                byte[] newBytes = new byte[Math.max(myLength + length, myBytes.length * 2)];
+                System.arraycopy(myBytes, 0, newBytes, 0, myLength);
+                myBytes = newBytes;
+            }
+            System.arraycopy(bytes, offset, myBytes, myLength, length);
+            myLength += length;
+        }
+    }
+}
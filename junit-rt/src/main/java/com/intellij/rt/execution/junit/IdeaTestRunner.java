@@ -20,14 +20,23 @@ import java.util.ArrayList;
 import java.util.List;
 
 public interface IdeaTestRunner {
+    /**
+     * Send only the number of the tests before the run instead of their tree: suites are announced when their first test starts,
+     * so huge runs start without sending and building the whole tree first
+     */
+    String LAZY_TREE_PROPERTY = "idea.junit.lazy.tree";
+
     void createListeners(ArrayList listeners, int count);
 
     /**
+     * @param repeated whether the call repeats the previous one with the same arguments, as {@link Repeater} does for every run
+     *                 after the first; the runner runs the tests it discovered for the previous call then instead of discovering them again
+     *
      * @return -2 internal failure
      * -1 there were failed tests
      * 0 all tests were successful
      */
-    int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree);
+    int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree, boolean repeated);
 
     Object getTestToStart(String[] args, String name);
 
@@ -48,14 +57,14 @@ public interface IdeaTestRunner {
         ) {
             testRunner.createListeners(listeners, count);
             if (count == 1) {
-                return testRunner.startRunnerWithArgs(args, name, count, sendTree);
+                return testRunner.startRunnerWithArgs(args, name, count, sendTree, false);
             }
             else {
                 if (count > 0) {
                     boolean success = true;
                     int i = 0;
                     while (i++ < count) {
-                        int result = testRunner.startRunnerWithArgs(args, name, count, sendTree);
+                        int result = testRunner.startRunnerWithArgs(args, name, count, sendTree, i > 1);
                         if (result == -2) {
                             return result;
                         }
@@ -67,8 +76,9 @@ public interface IdeaTestRunner {
                 }
                 else {
                     boolean success = true;
+                    boolean repeated = false;
                     while (true) {
-                        int result = testRunner.startRunnerWithArgs(args, name, count, sendTree);
+                        int result = testRunner.startRunnerWithArgs(args, name, count, sendTree, repeated);
                         if (result == -2) {
                             return -1;
                         }
@@ -76,9 +86,37 @@ public interface IdeaTestRunner {
                         if (count == -2 && !success) {
                             return -1;
                         }
+                        repeated = true;
                     }
                 }
             }
         }
+
+        /**
+         * Runs the iterations {@link BenchmarkRun} asks for, the number of them isn't known upfront.
+         */
+        public static int startBenchmark(
+            IdeaTestRunner testRunner,
+            String[] args,
+            ArrayList listeners,
+            String name,
+            BenchmarkRun benchmark
+        ) {
+            int count = RepeatCount.getCount(RepeatCount.UNLIMITED);
+            testRunner.createListeners(listeners, count);
+            boolean success = true;
+            boolean sendTree = true;
+            while (benchmark.next()) {
+                long start = System.nanoTime();
+                int result = testRunner.startRunnerWithArgs(args, name, count, sendTree, !sendTree);
+                if (result == -2) {
+                    return result;
+                }
+                benchmark.finished(System.nanoTime() - start);
+                success &= result == 0;
+                sendTree = false;
+            }
+            return success ? 0 : -1;
+        }
     }
 }
\ No newline at end of file
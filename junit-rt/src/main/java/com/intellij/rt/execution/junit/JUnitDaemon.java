@@ -0,0 +1,676 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * JVM which stays alive between runs of the same test classpath, so that the libraries are loaded and compiled once.
+ * <p>
+ * {@link JUnitStarter} started by the IDE becomes a client: it finds the daemon by the fingerprint of its classpath, JVM options,
+ * working directory and environment (starting the daemon when there is none), passes its arguments and relays the output.
+ * Library jars stay loaded in the daemon; output directories and the runtime jars get a fresh class loader every run,
+ * so changed classes are picked up. A changed jar changes the fingerprint and a new daemon is started, the old one exits
+ * after {@link #IDLE_TIMEOUT_PROPERTY} minutes without runs.
+ * <p>
+ * The files of the daemons are kept in a directory of the current user accessible by the user only, the client refuses
+ * a directory or a port file owned by someone else or open to others. Besides the port, the port file holds a random secret
+ * of the daemon, which the client sends first; connections without it are refused, so only the user can run code in the daemon.
+ * <pre>
+ * request:  UTF secret, int count, UTF arguments of {@link JUnitStarter}
+ * response: byte {@link #ACCEPTED} or {@link #BUSY}, then frames of byte {@link #OUT} or {@link #ERR}, int length, bytes;
+ *           byte {@link #EXIT}, int exit code ends the run
+ * </pre>
+ * Closing the connection before the end of the run stops it.
+ */
+public class JUnitDaemon {
+    public static final String DAEMON_PROPERTY = "idea.junit.daemon";
+    public static final String IDLE_TIMEOUT_PROPERTY = "idea.junit.daemon.idle";
+    /**
+     * Returned by {@link #runInDaemon(String[])} when the tests should run in the current process
+     */
+    public static final int UNAVAILABLE = Integer.MIN_VALUE;
+
+    private static final int ACCEPTED = 0;
+    private static final int BUSY = 1;
+    private static final int EXIT = 0;
+    private static final int OUT = 1;
+    private static final int ERR = 2;
+
+    private static final int DEFAULT_IDLE_TIMEOUT_MINUTES = 30;
+    private static final long START_TIMEOUT_MS = 20000;
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> OTHERS_PERMISSIONS = EnumSet.of(
+        PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+        PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE
+    );
+
+    private static final long CANCEL_TIMEOUT_MS = 10000;
+
+    private static FileLock ourRunningLock;
+    private static File ourPortFile;
+
+    private final AtomicBoolean myBusy = new AtomicBoolean();
+    private final byte[] mySecret;
+    private final ClassLoader mySharedLoader;
+    private final URL[] myRunClasspath;
+
+    private JUnitDaemon(String secret, List classpath) throws IOException {
+        mySecret = secret.getBytes("UTF-8");
+        List sharedUrls = new ArrayList();
+        List runUrls = new ArrayList();
+        for (Iterator iterator = classpath.iterator(); iterator.hasNext(); ) {
+            File file = new File((String)iterator.next());
+            URL url = file.toURI().toURL();
+            if (file.isFile() && !JUnitForkWorker.isRuntimeJar(file)) {
+                sharedUrls.add(url);
+            }
+            else {
+                runUrls.add(url);
+            }
+        }
+        mySharedLoader = new URLClassLoader((URL[])sharedUrls.toArray(new URL[0]), ClassLoader.getSystemClassLoader().getParent());
+        myRunClasspath = (URL[])runUrls.toArray(new URL[0]);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(DAEMON_PROPERTY);
+    }
+
+    /**
+     * Client side: runs the tests in the daemon for the current classpath.
+     *
+     * @return exit code of the run or {@link #UNAVAILABLE} if the daemon can't be used
+     */
+    public static int runInDaemon(String[] args) {
+        if (JUnitStarter.class.getClassLoader() != ClassLoader.getSystemClassLoader() || JUnitForkedSplitter.isDebugged() || hasAgents()) {
+            return UNAVAILABLE;
+        }
+        try {
+            String[] classpath = System.getProperty("java.class.path").split(File.pathSeparator);
+            String fingerprint = getFingerprint(classpath);
+            Socket socket = connect(fingerprint, classpath);
+            if (socket == null) {
+                return UNAVAILABLE;
+            }
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                out.writeInt(args.length);
+                for (int i = 0; i < args.length; i++) {
+                    out.writeUTF(args[i]);
+                }
+                out.flush();
+                if (in.readByte() != ACCEPTED) {
+                    return UNAVAILABLE;
+                }
+                return relayOutput(in);
+            }
+            finally {
+                socket.close();
+            }
+        }
+        catch (IOException e) {
+            return UNAVAILABLE;
+        }
+    }
+
+    private static int relayOutput(DataInputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        try {
+            while (true) {
+                int kind = in.readByte();
+                if (kind == EXIT) {
+                    return in.readInt();
+                }
+                int length = in.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                in.readFully(buffer, 0, length);
+                PrintStream stream = kind == ERR ? System.err : System.out;
+                stream.write(buffer, 0, length);
+                stream.flush();
+            }
+        }
+        catch (EOFException e) {
+            // the daemon was stopped by the tests, it's restarted on the next run
+            return -1;
+        }
+    }
+
+    /**
+     * Coverage and profiler agents write their results when the JVM exits, i.e. long after the run for a daemon.
+     */
+    private static boolean hasAgents() {
+        for (Iterator iterator = ManagementFactory.getRuntimeMXBean().getInputArguments().iterator(); iterator.hasNext(); ) {
+            String vmArg = (String)iterator.next();
+            if (vmArg.startsWith("-javaagent:") || vmArg.startsWith("-agentpath:") || vmArg.startsWith("-agentlib:") || vmArg.startsWith("-Xrun")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Socket connect(String fingerprint, String[] classpath) throws IOException {
+        File directory = getDaemonDirectory();
+        if (directory == null) {
+            return null;
+        }
+        File portFile = new File(directory, fingerprint + ".port");
+        RandomAccessFile lockFile = new RandomAccessFile(new File(directory, fingerprint + ".lock"), "rw");
+        try {
+            FileLock lock = lockFile.getChannel().lock();
+            try {
+                Socket socket = connect(portFile);
+                if (socket != null) {
+                    return socket;
+                }
+                startDaemon(directory, fingerprint, classpath);
+                long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+                while (System.currentTimeMillis() < deadline) {
+                    socket = connect(portFile);
+                    if (socket != null) {
+                        return socket;
+                    }
+                    try {
+                        Thread.sleep(50);
+                    }
+                    catch (InterruptedException e) {
+                        return null;
+                    }
+                }
+                return null;
+            }
+            finally {
+                lock.release();
+            }
+        }
+        finally {
+            lockFile.close();
+        }
+    }
+
+    /**
+     * @return socket of the daemon with the secret sent already, <code>null</code> if the daemon isn't running
+     */
+    private static Socket connect(File portFile) {
+        if (!portFile.isFile()) {
+            return null;
+        }
+        try {
+            if (!isPrivate(portFile.toPath())) {
+                return null;
+            }
+            int port;
+            String secret;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(portFile), "UTF-8"));
+            try {
+                port = Integer.parseInt(reader.readLine());
+                secret = reader.readLine();
+            }
+            finally {
+                reader.close();
+            }
+            if (secret == null) {
+                return null;
+            }
+            Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+            new DataOutputStream(socket.getOutputStream()).writeUTF(secret);
+            return socket;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void startDaemon(File directory, String fingerprint, String[] classpath) throws IOException {
+        File classpathFile = new File(directory, fingerprint + ".classpath");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(classpathFile), "UTF-8");
+        try {
+            for (int i = 0; i < classpath.length; i++) {
+                writer.write(classpath[i]);
+                writer.write('\n');
+            }
+        }
+        finally {
+            writer.close();
+        }
+
+        List command = new ArrayList();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(CdsArchive.getInheritedVMOptions(CdsArchive.isEnabled()));
+        if (CdsArchive.isEnabled()) {
+            // the daemon dumps its archive when it exits idle, so the dump is published by the client starting the next daemon
+            File cdsDumpFile = new File(directory, fingerprint + ".jsa.tmp");
+            if (cdsDumpFile.isFile() && !isRunning(directory, fingerprint)) {
+                CdsArchive.publish(CdsArchive.getDirectory(), cdsDumpFile, fingerprint);
+            }
+            command.addAll(CdsArchive.getVMOptions(CdsArchive.getDirectory(), fingerprint, cdsDumpFile));
+        }
+        command.add("-classpath");
+        try {
+            command.add(new File(JUnitDaemon.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        }
+        catch (Exception e) {
+            throw new IOException(e.getMessage());
+        }
+        command.add(JUnitDaemon.class.getName());
+        command.add(fingerprint);
+        File log = new File(directory, fingerprint + ".log");
+        // the daemon must not hold the streams of this process, otherwise the IDE waits for the daemon to exit
+        new ProcessBuilder(command).redirectOutput(log).redirectError(log).start().getOutputStream().close();
+    }
+
+    /**
+     * The daemon keeps the <code>.running</code> file locked until its process exits, i.e. also while it dumps the archive.
+     */
+    private static boolean isRunning(File directory, String fingerprint) throws IOException {
+        RandomAccessFile runningFile = new RandomAccessFile(new File(directory, fingerprint + ".running"), "rw");
+        try {
+            FileLock lock = runningFile.getChannel().tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        }
+        finally {
+            runningFile.close();
+        }
+    }
+
+    /**
+     * @return directory of the daemons of the current user, <code>null</code> if it's owned by someone else or open to others
+     */
+    private static File getDaemonDirectory() throws IOException {
+        String user = System.getProperty("user.name", "").replaceAll("[^A-Za-z0-9._-]", "_");
+        Path directory = new File(System.getProperty("java.io.tmpdir"), "idea_junit_daemon_" + user).toPath();
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                if (isPosix(directory)) {
+                    Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+                }
+                else {
+                    Files.createDirectory(directory);
+                }
+            }
+            catch (FileAlreadyExistsException ignored) {
+                // created by another client, it's checked below
+            }
+        }
+        return Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS) && isPrivate(directory) ? directory.toFile() : null;
+    }
+
+    /**
+     * @return whether <code>path</code> isn't a link, is owned by the current user and, where the permissions are known,
+     * can't be accessed by others
+     */
+    private static boolean isPrivate(Path path) throws IOException {
+        if (Files.isSymbolicLink(path)) {
+            return false;
+        }
+        try {
+            UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+            if (!owner.equals(user)) {
+                return false;
+            }
+        }
+        catch (UnsupportedOperationException e) {
+            return false;
+        }
+        if (isPosix(path)) {
+            Set permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+            permissions.retainAll(OTHERS_PERMISSIONS);
+            return permissions.isEmpty();
+        }
+        return true;
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * Writes the port and the secret of the daemon into a new file readable by the owner only, then moves it in place.
+     */
+    private static void writePortFile(File directory, String fingerprint, int port, String secret) throws IOException {
+        Path newPortFile = new File(directory, fingerprint + ".port.tmp").toPath();
+        Files.deleteIfExists(newPortFile);
+        if (isPosix(newPortFile)) {
+            Files.createFile(newPortFile, PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE));
+        }
+        else {
+            Files.createFile(newPortFile);
+        }
+        Writer writer = new OutputStreamWriter(Files.newOutputStream(newPortFile), "UTF-8");
+        try {
+            writer.write(port + "\n" + secret + "\n");
+        }
+        finally {
+            writer.close();
+        }
+        Files.move(newPortFile, new File(directory, fingerprint + ".port").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Everything which can't be changed for an already started JVM; directories are reloaded every run, so only their paths count.
+     */
+    static String getFingerprint(String[] classpath) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            update(digest, System.getProperty("java.home"));
+            update(digest, System.getProperty("user.dir"));
+            for (Iterator iterator = ManagementFactory.getRuntimeMXBean().getInputArguments().iterator(); iterator.hasNext(); ) {
+                update(digest, (String)iterator.next());
+            }
+            for (Iterator iterator = new TreeMap(System.getenv()).entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry entry = (Map.Entry)iterator.next();
+                update(digest, entry.getKey() + "=" + entry.getValue());
+            }
+            for (int i = 0; i < classpath.length; i++) {
+                File file = new File(classpath[i]);
+                update(digest, classpath[i]);
+                if (file.isFile()) {
+                    update(digest, file.length() + ":" + file.lastModified());
+                }
+            }
+            return toHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < bytes.length; i++) {
+            builder.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+            digest.update((byte)0);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Daemon side, <code>args[0]</code> is the fingerprint. The daemon exits if its directory isn't private to the user.
+     */
+    public static void main(String[] args) throws Exception {
+        String fingerprint = args[0];
+        File directory = getDaemonDirectory();
+        if (directory == null) {
+            System.exit(1);
+        }
+        List classpath = new ArrayList();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(directory, fingerprint + ".classpath")), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                classpath.add(line);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        RandomAccessFile runningFile = new RandomAccessFile(new File(directory, fingerprint + ".running"), "rw");
+        ourRunningLock = runningFile.getChannel().lock();
+        // output of the runs is relayed to the client, the asynchronous writer prints to the descriptors of the daemon itself
+        System.clearProperty(AsyncTestEventsWriter.ASYNC_EVENTS_PROPERTY);
+
+        byte[] secretBytes = new byte[32];
+        new SecureRandom().nextBytes(secretBytes);
+        String secret = toHex(secretBytes);
+        final JUnitDaemon daemon = new JUnitDaemon(secret, classpath);
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        File portFile = new File(directory, fingerprint + ".port");
+        ourPortFile = portFile;
+        writePortFile(directory, fingerprint, serverSocket.getLocalPort(), secret);
+
+        serverSocket.setSoTimeout(Integer.getInteger(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MINUTES).intValue() * 60 * 1000);
+        try {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                }
+                catch (SocketTimeoutException e) {
+                    if (daemon.myBusy.get()) {
+                        continue;
+                    }
+                    break;
+                }
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        daemon.serve(socket);
+                    }
+                }, "Test daemon run");
+                thread.start();
+            }
+        }
+        finally {
+            portFile.delete();
+            serverSocket.close();
+        }
+        System.exit(0);
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (!MessageDigest.isEqual(mySecret, in.readUTF().getBytes("UTF-8")) || !myBusy.compareAndSet(false, true)) {
+                out.writeByte(BUSY);
+                out.flush();
+                return;
+            }
+            try {
+                String[] args = new String[in.readInt()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = in.readUTF();
+                }
+                out.writeByte(ACCEPTED);
+                out.flush();
+                final Thread runThread = Thread.currentThread();
+                final AtomicBoolean finished = new AtomicBoolean();
+                final InputStream clientIn = in;
+                Thread watcher = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        watchClient(clientIn, runThread, finished);
+                    }
+                }, "Test daemon client watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+                int exitCode;
+                try {
+                    exitCode = run(args, out);
+                }
+                finally {
+                    finished.set(true);
+                }
+                synchronized (out) {
+                    out.writeByte(EXIT);
+                    out.writeInt(exitCode);
+                    out.flush();
+                }
+            }
+            finally {
+                myBusy.set(false);
+            }
+        }
+        catch (IOException ignored) {
+            // the client was stopped
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The client sends nothing after the arguments, so the end of its stream means it was stopped: the run is interrupted,
+     * and if it doesn't end in {@link #CANCEL_TIMEOUT_MS} the daemon exits, otherwise it would stay busy with the abandoned tests.
+     */
+    private static void watchClient(InputStream in, Thread runThread, AtomicBoolean finished) {
+        try {
+            while (in.read() >= 0) {
+            }
+        }
+        catch (IOException ignored) {
+            // the client was stopped or the socket was closed after the run
+        }
+        if (finished.get()) {
+            return;
+        }
+        runThread.interrupt();
+        try {
+            runThread.join(CANCEL_TIMEOUT_MS);
+        }
+        catch (InterruptedException ignored) {
+        }
+        if (!finished.get()) {
+            ourPortFile.delete();
+            System.exit(1);
+        }
+    }
+
+    private int run(String[] args, DataOutputStream out) {
+        PrintStream systemOut = System.out;
+        PrintStream systemErr = System.err;
+        Thread thread = Thread.currentThread();
+        URLClassLoader runLoader = new URLClassLoader(myRunClasspath, mySharedLoader);
+        String encoding = TextTestEventsWriter.getConsoleEncoding();
+        try {
+            System.setOut(new PrintStream(new FrameStream(out, OUT), true, encoding));
+            System.setErr(new PrintStream(new FrameStream(out, ERR), true, encoding));
+            thread.setContextClassLoader(runLoader);
+            Method run = Class.forName(JUnitStarter.class.getName(), true, runLoader).getMethod("run", String[].class);
+            return ((Integer)run.invoke(null, new Object[]{args})).intValue();
+        }
+        catch (InvocationTargetException e) {
+            e.getCause().printStackTrace();
+            return -2;
+        }
+        catch (Throwable e) {
+            e.printStackTrace();
+            return -2;
+        }
+        finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+            thread.setContextClassLoader(null);
+            try {
+                runLoader.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream myOut;
+        private final int myKind;
+
+        FrameStream(DataOutputStream out, int kind) {
+            myOut = out;
+            myKind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (myOut) {
+                myOut.writeByte(myKind);
+                myOut.writeInt(len);
+                myOut.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (myOut) {
+                myOut.flush();
+            }
+        }
+    }
+}
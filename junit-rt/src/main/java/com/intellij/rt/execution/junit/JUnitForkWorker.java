@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+
+/**
+ * Long living forked JVM which runs the children of {@link JUnitForkedSplitter} one after another, so that JVM startup
+ * and loading of the test libraries are paid once per worker instead of once per child.
+ * <p>
+ * The worker is started with the runtime jar only and receives the test classpath and the tasks over the control socket:
+ * <pre>
+ * classpath: int count, UTF entries
+ * task:      int count, UTF fork id, UTF arguments of {@link JUnitForkedStarter}; count -1 stops the worker
+ * reply:     int exit code, boolean whether the worker stops after this task
+ * </pre>
+ * Library jars are loaded once into a shared class loader; output directories and the runtime jars, which load test classes
+ * by name, get a fresh class loader for every task.
+ */
+public class JUnitForkWorker {
+    public static final String REUSE_PROPERTY = "idea.junit.fork.reuse";
+    /**
+     * Number of tasks after which the worker is replaced with a new one
+     */
+    public static final String MAX_TASKS_PROPERTY = "idea.junit.fork.worker.tasks";
+    /**
+     * Percent of the max heap; the worker is replaced when more is used after a task
+     */
+    public static final String MAX_HEAP_PROPERTY = "idea.junit.fork.worker.heap";
+
+    private static final int DEFAULT_MAX_TASKS = 200;
+    private static final int DEFAULT_MAX_HEAP = 70;
+    private static final String[] RUNTIME_CLASSES = {
+        "com/intellij/rt/execution/junit/JUnitStarter.class",
+        "com/intellij/rt/execution/junit/ComparisonFailureData.class",
+        "com/intellij/junit5/JUnit5IdeaTestRunner.class"
+    };
+
+    public static boolean isReuseEnabled() {
+        return Boolean.getBoolean(REUSE_PROPERTY);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(args[0]));
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+        List sharedUrls = new ArrayList();
+        List taskUrls = new ArrayList();
+        int classpathSize = in.readInt();
+        for (int i = 0; i < classpathSize; i++) {
+            File file = new File(in.readUTF());
+            URL url = file.toURI().toURL();
+            if (file.isFile() && !isRuntimeJar(file)) {
+                sharedUrls.add(url);
+            }
+            else {
+                taskUrls.add(url);
+            }
+        }
+        ClassLoader sharedLoader = new URLClassLoader((URL[])sharedUrls.toArray(new URL[0]), ClassLoader.getSystemClassLoader().getParent());
+        URL[] taskClasspath = (URL[])taskUrls.toArray(new URL[0]);
+
+        int maxTasks = Integer.getInteger(MAX_TASKS_PROPERTY, DEFAULT_MAX_TASKS);
+        int maxHeap = Integer.getInteger(MAX_HEAP_PROPERTY, DEFAULT_MAX_HEAP);
+        PrintStream systemOut = System.out;
+        PrintStream systemErr = System.err;
+        // tasks run in own class loaders, each would start a writer thread and replace the streams restored after the task
+        System.clearProperty(AsyncTestEventsWriter.ASYNC_EVENTS_PROPERTY);
+        int tasks = 0;
+        int count;
+        while ((count = in.readInt()) >= 0) {
+            String forkId = in.readUTF();
+            String[] taskArgs = new String[count - 1];
+            for (int i = 0; i < taskArgs.length; i++) {
+                taskArgs[i] = in.readUTF();
+            }
+
+            int exitCode;
+            Thread thread = Thread.currentThread();
+            URLClassLoader taskLoader = new URLClassLoader(taskClasspath, sharedLoader);
+            System.setProperty(TestNodeIds.FORK_ID_PROPERTY, forkId);
+            thread.setContextClassLoader(taskLoader);
+            try {
+                Method run = Class.forName(JUnitForkedStarter.class.getName(), true, taskLoader).getMethod("run", String[].class);
+                exitCode = ((Integer)run.invoke(null, new Object[]{taskArgs})).intValue();
+            }
+            catch (InvocationTargetException e) {
+                e.getCause().printStackTrace();
+                exitCode = -2;
+            }
+            catch (Throwable e) {
+                e.printStackTrace();
+                exitCode = -2;
+            }
+            finally {
+                thread.setContextClassLoader(null);
+                System.out.flush();
+                System.err.flush();
+                System.setOut(systemOut);
+                System.setErr(systemErr);
+                taskLoader.close();
+            }
+
+            boolean recycle = ++tasks >= maxTasks || isHeapExhausted(maxHeap);
+            out.writeInt(exitCode);
+            out.writeBoolean(recycle);
+            out.flush();
+            if (recycle) {
+                break;
+            }
+        }
+        socket.close();
+        System.exit(0);
+    }
+
+    private static boolean isHeapExhausted(int maxHeapPercent) {
+        Runtime runtime = Runtime.getRuntime();
+        long limit = runtime.maxMemory() / 100 * maxHeapPercent;
+        if (runtime.totalMemory() - runtime.freeMemory() <= limit) {
+            return false;
+        }
+        // only the memory which survives collection means the previous tasks leaked
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory() > limit;
+    }
+
+    /**
+     * @return whether the jar contains classes of the test runtime, which must be loaded together with the test classes
+     */
+    static boolean isRuntimeJar(File file) {
+        try {
+            JarFile jarFile = new JarFile(file);
+            try {
+                for (int i = 0; i < RUNTIME_CLASSES.length; i++) {
+                    if (jarFile.getEntry(RUNTIME_CLASSES[i]) != null) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            finally {
+                jarFile.close();
+            }
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+}
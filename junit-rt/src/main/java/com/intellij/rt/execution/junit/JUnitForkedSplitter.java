@@ -17,16 +17,45 @@ package com.intellij.rt.execution.junit;
 
 import com.intellij.rt.execution.testFrameworks.ForkedSplitter;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * @author anna
  * @since 2011-04-06
  */
 public class JUnitForkedSplitter extends ForkedSplitter {
+    /**
+     * Number of forks run at once; <code>0</code> or <code>auto</code> for the number of processors
+     */
+    public static final String FORK_CONCURRENCY_PROPERTY = "idea.junit.fork.concurrency";
+
     private IdeaTestRunner myTestRunner;
 
     public JUnitForkedSplitter(String workingDirsPath, String forkMode, List newArgs) {
@@ -73,4 +102,522 @@ public class JUnitForkedSplitter extends ForkedSplitter {
     protected List getChildren(Object child) {
         return myTestRunner.getChildTests(child);
     }
+
+    public static int getForkConcurrency() {
+        String concurrency = System.getProperty(FORK_CONCURRENCY_PROPERTY);
+        if (concurrency == null) {
+            return 1;
+        }
+        if ("auto".equals(concurrency)) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int value = Integer.parseInt(concurrency);
+            return value > 0 ? value : Runtime.getRuntime().availableProcessors();
+        }
+        catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Forks are started by this process itself with its own JVM options and classpath, so the splitting which
+     * needs the command line prepared by the IDE (debugger, classpath wrappers, per module working directories)
+     * stays sequential.
+     */
+    public static boolean canSplitConcurrently(String[] args, String forkMode, String workingDirsPath) {
+        if (!"class".equals(forkMode) && !"method".equals(forkMode)) {
+            return false;
+        }
+        if (workingDirsPath != null && new File(workingDirsPath).length() > 0) {
+            return false;
+        }
+        return canStartForks(args);
+    }
+
+    /**
+     * Forks per module get the working directory and classpath of their module from the working directories file,
+     * the rest of the command line is taken from this process like for {@link #canSplitConcurrently(String[], String, String)}.
+     */
+    public static boolean canSplitModulesConcurrently(String[] args, String workingDirsPath) {
+        return workingDirsPath != null && new File(workingDirsPath).length() > 0 && canStartForks(args);
+    }
+
+    private static boolean canStartForks(String[] args) {
+        if (JUnitStarter.class.getClassLoader() != ClassLoader.getSystemClassLoader()) {
+            return false;
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-debugSocket")) {
+                return false;
+            }
+        }
+        return !isDebugged();
+    }
+
+    static boolean isDebugged() {
+        for (Iterator iterator = ManagementFactory.getRuntimeMXBean().getInputArguments().iterator(); iterator.hasNext(); ) {
+            String vmArg = (String)iterator.next();
+            if (vmArg.startsWith("-agentlib:jdwp") || vmArg.startsWith("-Xrunjdwp") || vmArg.equals("-Xdebug")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a fork per test class (or per test method in <code>method</code> mode), up to <code>concurrency</code> forks at once.
+     * Forks report with own node ids, their output is passed through {@link ForkOutputMultiplexer}.
+     */
+    public int startConcurrentSplitting(String[] args, String configName, String forkMode, String repeatCount, int concurrency)
+        throws Exception {
+        Object rootDescription = createRootDescription(args, configName);
+        List children = new ArrayList();
+        for (Iterator iterator = getChildren(rootDescription).iterator(); iterator.hasNext(); ) {
+            Object child = iterator.next();
+            List tests = "method".equals(forkMode) ? getChildren(child) : null;
+            if (tests != null && !tests.isEmpty()) {
+                children.addAll(tests);
+            }
+            else {
+                children.add(child);
+            }
+        }
+        sortLongestFirst(children);
+
+        List childArgs = new ArrayList();
+        for (int i = 0; i < children.size(); i++) {
+            childArgs.add(createChildArgs(children.get(i)));
+        }
+        int threads = Math.min(concurrency, Math.max(children.size(), 1));
+        if (JUnitForkWorker.isReuseEnabled()) {
+            return runOnWorkers(childArgs, repeatCount, threads);
+        }
+
+        ForkOutputMultiplexer multiplexer = new ForkOutputMultiplexer(System.out, System.err);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Forked tests runner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List results = new ArrayList();
+            for (int i = 0; i < childArgs.size(); i++) {
+                List command = createForkCommand("f" + i, null, System.getProperty("java.class.path"), (List)childArgs.get(i), repeatCount);
+                results.add(executor.submit(new ForkRunner(command, null, multiplexer.register())));
+            }
+            int result = 0;
+            for (Iterator iterator = results.iterator(); iterator.hasNext(); ) {
+                if (((Integer)((Future)iterator.next()).get()).intValue() != 0) {
+                    result = -1;
+                }
+            }
+            return result;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a fork per module of the working directories file, up to <code>concurrency</code> forks at once.
+     * Tests of a module are reported under a node of the module; modules which took longest in the last run are started first.
+     */
+    public int startModuleSplitting(String workingDirsPath, String repeatCount, int concurrency) throws Exception {
+        List modules = new ArrayList();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(workingDirsPath), "UTF-8"));
+        try {
+            String packageName = reader.readLine();
+            String workingDir;
+            while ((workingDir = reader.readLine()) != null) {
+                String moduleName = reader.readLine();
+                String classpath = reader.readLine();
+                int classCount = Integer.parseInt(reader.readLine());
+                List classNames = new ArrayList(classCount);
+                for (int i = 0; i < classCount; i++) {
+                    classNames.add(reader.readLine());
+                }
+                List childArgs = createPerModuleArgs(packageName, workingDir, classNames, null);
+                modules.add(new ModuleFork(moduleName, workingDir, classpath, classNames, childArgs));
+            }
+        }
+        finally {
+            reader.close();
+        }
+        sortModulesLongestFirst(modules);
+
+        String runtimeClasspath = getRuntimeClasspath();
+        ForkOutputMultiplexer multiplexer = new ForkOutputMultiplexer(System.out, System.err);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(modules.size(), 1)), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Forked module tests runner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List results = new ArrayList();
+            for (int i = 0; i < modules.size(); i++) {
+                ModuleFork module = (ModuleFork)modules.get(i);
+                String forkId = "m" + i;
+                List command = createForkCommand(forkId, forkId, runtimeClasspath + module.myClasspath, module.myChildArgs, repeatCount);
+                ForkRunner runner = new ForkRunner(command, new File(module.myWorkingDir), multiplexer.register());
+                runner.groupTests(module.myName, forkId);
+                results.add(executor.submit(runner));
+            }
+            int result = 0;
+            for (Iterator iterator = results.iterator(); iterator.hasNext(); ) {
+                if (((Integer)((Future)iterator.next()).get()).intValue() != 0) {
+                    result = -1;
+                }
+            }
+            return result;
+        }
+        finally {
+            executor.shutdownNow();
+            for (int i = 0; i < modules.size(); i++) {
+                // the classes list of a module isn't needed once its fork has read it, don't leave it to the exit of this process
+                new File(((String)((ModuleFork)modules.get(i)).myChildArgs.get(0)).substring(1)).delete();
+            }
+        }
+    }
+
+    /**
+     * Modules are estimated by the total duration of their classes; modules without classes,
+     * whose tests are found by the fork itself, are estimated with the average of the other modules.
+     */
+    private static void sortModulesLongestFirst(List modules) {
+        List classNames = new ArrayList();
+        for (int i = 0; i < modules.size(); i++) {
+            classNames.addAll(((ModuleFork)modules.get(i)).myClassNames);
+        }
+        Map estimates = TestDurations.estimate(classNames);
+        long total = 0;
+        int estimated = 0;
+        for (int i = 0; i < modules.size(); i++) {
+            ModuleFork module = (ModuleFork)modules.get(i);
+            for (Iterator iterator = module.myClassNames.iterator(); iterator.hasNext(); ) {
+                module.myDuration += ((Long)estimates.get(iterator.next())).longValue();
+            }
+            if (!module.myClassNames.isEmpty()) {
+                total += module.myDuration;
+                estimated++;
+            }
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            ModuleFork module = (ModuleFork)modules.get(i);
+            if (module.myClassNames.isEmpty()) {
+                module.myDuration = estimated > 0 ? total / estimated : 1;
+            }
+        }
+        Collections.sort(modules, new Comparator() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                return Long.compare(((ModuleFork)o2).myDuration, ((ModuleFork)o1).myDuration);
+            }
+        });
+    }
+
+    /**
+     * @return runtime jars of this process to put before the classpath of a module, ends with the path separator if not empty
+     */
+    private static String getRuntimeClasspath() {
+        StringBuilder classpath = new StringBuilder();
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        for (int i = 0; i < entries.length; i++) {
+            File file = new File(entries[i]);
+            if (file.isFile() && JUnitForkWorker.isRuntimeJar(file)) {
+                classpath.append(file.getAbsolutePath()).append(File.pathSeparator);
+            }
+        }
+        return classpath.toString();
+    }
+
+    /**
+     * Runs the children as tasks of {@link JUnitForkWorker}s, every worker thread keeps its worker until it's recycled.
+     * Output of a worker isn't split per task, the multiplexer keeps outputs of different workers apart.
+     */
+    private int runOnWorkers(List childArgs, String repeatCount, int workers) throws Exception {
+        ConcurrentLinkedQueue tasks = new ConcurrentLinkedQueue();
+        for (int i = 0; i < childArgs.size(); i++) {
+            List task = new ArrayList();
+            task.add("f" + i);
+            task.addAll((List)childArgs.get(i));
+            if (repeatCount != null) {
+                task.add(repeatCount);
+            }
+            tasks.add(task);
+        }
+
+        List workerVMCommand = new ArrayList();
+        workerVMCommand.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        // workers are started with the runtime jar only, so they can have an archive of the loaded test libraries
+        String cdsFingerprint = CdsArchive.isEnabled() ? JUnitDaemon.getFingerprint(System.getProperty("java.class.path").split(File.pathSeparator)) : null;
+        workerVMCommand.addAll(CdsArchive.getInheritedVMOptions(cdsFingerprint != null));
+        List workerCommand = new ArrayList();
+        workerCommand.add("-classpath");
+        workerCommand.add(new File(JUnitForkWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        workerCommand.add(JUnitForkWorker.class.getName());
+
+        ForkOutputMultiplexer multiplexer = new ForkOutputMultiplexer(System.out, System.err);
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Forked tests worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List results = new ArrayList();
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(new WorkerRunner(workerVMCommand, workerCommand, cdsFingerprint, tasks, multiplexer)));
+            }
+            int result = 0;
+            for (Iterator iterator = results.iterator(); iterator.hasNext(); ) {
+                if (((Integer)((Future)iterator.next()).get()).intValue() != 0) {
+                    result = -1;
+                }
+            }
+            return result;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The pool takes the children in this order, which makes it the longest-processing-time-first schedule.
+     */
+    private void sortLongestFirst(List children) {
+        List classNames = new ArrayList();
+        for (int i = 0; i < children.size(); i++) {
+            classNames.add(getTestClassName(children.get(i)));
+        }
+        final Map estimates = TestDurations.estimate(classNames);
+        Collections.sort(children, new Comparator() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                return ((Long)estimates.get(getTestClassName(o2))).compareTo((Long)estimates.get(getTestClassName(o1)));
+            }
+        });
+    }
+
+    /**
+     * @param parentId node to report the tests of the fork under, <code>null</code> for the root
+     */
+    private List createForkCommand(String forkId, String parentId, String classpath, List childArgs, String repeatCount) {
+        List command = new ArrayList();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(CdsArchive.getInheritedVMOptions(false));
+        command.add("-D" + TestNodeIds.FORK_ID_PROPERTY + "=" + forkId);
+        if (parentId != null) {
+            command.add("-D" + TestNodeIds.PARENT_ID_PROPERTY + "=" + parentId);
+        }
+        command.add("-classpath");
+        command.add(classpath);
+        command.add(getStarterName());
+        command.addAll(childArgs);
+        if (repeatCount != null) {
+            command.add(repeatCount);
+        }
+        return command;
+    }
+
+    private static class ForkRunner implements Callable {
+        private final List myCommand;
+        private final File myWorkingDir;
+        private final ForkOutputMultiplexer.Fork myFork;
+        private String myGroupName;
+        private String myGroupId;
+
+        /**
+         * @param workingDir <code>null</code> for the working directory of this process
+         */
+        ForkRunner(List command, File workingDir, ForkOutputMultiplexer.Fork fork) {
+            myCommand = command;
+            myWorkingDir = workingDir;
+            myFork = fork;
+        }
+
+        /**
+         * Reports the tests of the fork under a node with the id given to the fork by {@link TestNodeIds#PARENT_ID_PROPERTY}
+         */
+        void groupTests(String name, String nodeId) {
+            myGroupName = name;
+            myGroupId = nodeId;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            TestEventsWriter groupWriter = myGroupId != null ? new TextTestEventsWriter(myFork.createOut()) : null;
+            try {
+                if (groupWriter != null) {
+                    groupWriter.message("testSuiteStarted", "name", myGroupName, "nodeId", myGroupId, "parentNodeId", TestNodeIds.ROOT_ID);
+                }
+                Process process = new ProcessBuilder(myCommand).directory(myWorkingDir).start();
+                process.getOutputStream().close();
+                Thread err = pump(process.getErrorStream(), true);
+                Thread out = pump(process.getInputStream(), false);
+                int exitCode = process.waitFor();
+                err.join();
+                out.join();
+                return Integer.valueOf(exitCode);
+            }
+            finally {
+                if (groupWriter != null) {
+                    groupWriter.message("testSuiteFinished", "name", myGroupName, "nodeId", myGroupId, "parentNodeId", TestNodeIds.ROOT_ID);
+                    groupWriter.flush();
+                }
+                myFork.finish();
+            }
+        }
+
+        Future startAsync() {
+            FutureTask task = new FutureTask(this);
+            Thread thread = new Thread(task, "Forked tests worker process");
+            thread.setDaemon(true);
+            thread.start();
+            return task;
+        }
+
+        private Thread pump(final InputStream stream, final boolean err) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    myFork.pump(stream, err);
+                }
+            }, err ? "Read forked error output" : "Read forked output");
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        }
+    }
+
+    private static class ModuleFork {
+        private final String myName;
+        private final String myWorkingDir;
+        private final String myClasspath;
+        private final List myClassNames;
+        private final List myChildArgs;
+        private long myDuration;
+
+        ModuleFork(String name, String workingDir, String classpath, List classNames, List childArgs) {
+            myName = name;
+            myWorkingDir = workingDir;
+            myClasspath = classpath;
+            myClassNames = classNames;
+            myChildArgs = childArgs;
+        }
+    }
+
+    private static class WorkerRunner implements Callable {
+        private final List myVMCommand;
+        private final List myCommand;
+        private final String myCdsFingerprint;
+        private final ConcurrentLinkedQueue myTasks;
+        private final ForkOutputMultiplexer myMultiplexer;
+
+        /**
+         * @param vmCommand java executable and JVM options
+         * @param command classpath and main class of the worker
+         * @param cdsFingerprint key of the archive of workers, <code>null</code> if they don't use archives
+         */
+        WorkerRunner(List vmCommand, List command, String cdsFingerprint, ConcurrentLinkedQueue tasks, ForkOutputMultiplexer multiplexer) {
+            myVMCommand = vmCommand;
+            myCommand = command;
+            myCdsFingerprint = cdsFingerprint;
+            myTasks = tasks;
+            myMultiplexer = multiplexer;
+        }
+
+        /**
+         * @return <code>0</code> if all tasks run by this thread passed
+         */
+        @Override
+        public Object call() throws Exception {
+            int result = 0;
+            List task;
+            while ((task = (List)myTasks.poll()) != null) {
+                ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+                List command = new ArrayList(myVMCommand);
+                File cdsDumpFile = null;
+                if (myCdsFingerprint != null) {
+                    File cdsDirectory = CdsArchive.getDirectory();
+                    cdsDumpFile = CdsArchive.getArchive(cdsDirectory, myCdsFingerprint).isFile() ? null : CdsArchive.createDumpFile(cdsDirectory, myCdsFingerprint);
+                    command.addAll(CdsArchive.getVMOptions(cdsDirectory, myCdsFingerprint, cdsDumpFile));
+                }
+                command.addAll(myCommand);
+                command.add(String.valueOf(serverSocket.getLocalPort()));
+                ForkRunner worker = new ForkRunner(command, null, myMultiplexer.register());
+                Future exitCode = worker.startAsync();
+                try {
+                    Socket socket = accept(serverSocket, exitCode);
+                    if (socket == null) {
+                        // the worker could not start, report the task as failed and don't try to start other workers
+                        return Integer.valueOf(-1);
+                    }
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    String[] classpath = System.getProperty("java.class.path").split(File.pathSeparator);
+                    out.writeInt(classpath.length);
+                    for (int i = 0; i < classpath.length; i++) {
+                        out.writeUTF(classpath[i]);
+                    }
+                    boolean recycle = false;
+                    while (task != null) {
+                        out.writeInt(task.size());
+                        for (Iterator iterator = task.iterator(); iterator.hasNext(); ) {
+                            out.writeUTF((String)iterator.next());
+                        }
+                        out.flush();
+                        try {
+                            if (in.readInt() != 0) {
+                                result = -1;
+                            }
+                            recycle = in.readBoolean();
+                        }
+                        catch (EOFException e) {
+                            // the test has stopped the worker JVM
+                            result = -1;
+                            recycle = true;
+                        }
+                        if (recycle) {
+                            break;
+                        }
+                        task = (List)myTasks.poll();
+                    }
+                    if (!recycle) {
+                        out.writeInt(-1);
+                        out.flush();
+                    }
+                    socket.close();
+                }
+                finally {
+                    serverSocket.close();
+                    exitCode.get();
+                    if (cdsDumpFile != null) {
+                        CdsArchive.publish(CdsArchive.getDirectory(), cdsDumpFile, myCdsFingerprint);
+                    }
+                }
+            }
+            return Integer.valueOf(result);
+        }
+
+        private static Socket accept(ServerSocket serverSocket, Future worker) throws IOException {
+            serverSocket.setSoTimeout(1000);
+            while (!worker.isDone()) {
+                try {
+                    return serverSocket.accept();
+                }
+                catch (SocketTimeoutException ignored) {
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -20,6 +20,15 @@ import java.util.List;
 
 public class JUnitForkedStarter {
     public static void main(String[] args) throws Exception {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the child described by the arguments and returns its exit code; also called by {@link JUnitForkWorker}
+     * for every task in a fresh class loader.
+     */
+    public static int run(String[] args) throws Exception {
+        TestNodeIds.initializeForked();
         List argList = new ArrayList();
         for (int i = 0; i < args.length; i++) {
             int count = RepeatCount.getCount(args[i]);
@@ -37,13 +46,24 @@ public class JUnitForkedStarter {
             listeners.add(args[i]);
         }
         IdeaTestRunner testRunner = (IdeaTestRunner)JUnitStarter.getAgentClass(argentName).newInstance();
-        System.exit(IdeaTestRunner.Repeater.startRunnerWithArgs(
-            testRunner,
-            childTestDescription,
-            listeners,
-            null,
-            JUnitStarter.ourCount,
-            false
-        ));
+        TestEventsWriter.startAsyncIfEnabled();
+        TestEventsWriter.startRepeatStatisticsIfEnabled(JUnitStarter.ourCount);
+        int exitCode;
+        try {
+            exitCode = IdeaTestRunner.Repeater.startRunnerWithArgs(
+                testRunner,
+                childTestDescription,
+                listeners,
+                null,
+                JUnitStarter.ourCount,
+                false
+            );
+        }
+        finally {
+            TestEventsWriter.stopRepeatStatistics();
+        }
+        TestDurations.save(false);
+        TestEventsWriter.shutdown();
+        return exitCode;
     }
 }
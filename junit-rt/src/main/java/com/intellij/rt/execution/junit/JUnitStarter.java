@@ -19,7 +19,9 @@ import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 /**
@@ -38,6 +40,17 @@ public class JUnitStarter {
     public static final String JUNIT5_KEY = "idea.is.junit5";
 
     private static final String SOCKET = "-socket";
+    public static final String EVENTS_SOCKET = "-eventsSocket";
+    /**
+     * Port of the IDE sending the test classes while searching for them, see {@link TestClassesStream}
+     */
+    public static final String DISCOVERY_SOCKET = "-discoverySocket";
+    /**
+     * <code>-shard2/4</code> runs the second of four shards of the classes list, split by the hash of the class names;
+     * <code>-shard2/4:path</code> balances the shards by the durations history in <code>path</code>, a copy of the history made before
+     * the shards are started and not changed until all of them have started. See {@link TestDurations#partition(List, int, Map)}
+     */
+    public static final String SHARD = "-shard";
     public static final String JUNIT3_RUNNER_NAME = "com.intellij.junit3.JUnit3IdeaTestRunner";
     public static final String JUNIT4_RUNNER_NAME = "com.intellij.junit4.JUnit4IdeaTestRunner";
     public static final String JUNIT5_RUNNER_NAME = "com.intellij.junit5.JUnit5IdeaTestRunner";
@@ -46,8 +59,29 @@ public class JUnitStarter {
     private static String ourWorkingDirs;
     protected static int ourCount = 1;
     public static String ourRepeatCount = null;
+    private static String ourShard;
+    private static int ourShardIndex;
+    private static int ourShardCount;
+    private static String ourShardDurations;
+    private static int ourSearchPort;
+    private static int ourDiscoveryPort;
+    private static int ourConcurrentCount;
+    private static int ourBenchmarkCount;
 
     public static void main(String[] args) throws IOException {
+        if (JUnitDaemon.isEnabled()) {
+            int exitCode = JUnitDaemon.runInDaemon(args);
+            if (exitCode != JUnitDaemon.UNAVAILABLE) {
+                System.exit(exitCode);
+            }
+        }
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the tests and returns the exit code of the process; also called by {@link JUnitDaemon} for every run.
+     */
+    public static int run(String[] args) throws IOException {
         Vector argList = new Vector();
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
@@ -58,23 +92,56 @@ public class JUnitStarter {
         String[] name = new String[1];
 
         String agentName = processParameters(argList, listeners, name);
+        Socket searchSocket = ourSearchPort > 0 ? startSearch(ourSearchPort) : null;
+        TestClassesStream classesStream = ourDiscoveryPort > 0 ? connectClassesStream(ourDiscoveryPort) : null;
+        if (searchSocket != null && classesStream == null) {
+            waitForSearch(searchSocket, agentName);
+            searchSocket = null;
+        }
 
         if (!JUNIT5_RUNNER_NAME.equals(agentName) && !canWorkWithJUnitVersion(System.err, agentName)) {
-            System.exit(-3);
+            return -3;
         }
         if (!checkVersion(args, System.err)) {
-            System.exit(-3);
+            return -3;
+        }
+        if (ourShard != null && !parseShard(ourShard)) {
+            System.err.println("Invalid shard " + SHARD + ourShard + ", expected " + SHARD + "<index>/<count> or " + SHARD +
+                               "<index>/<count>:<durations file> with 1 <= index <= count");
+            return -3;
         }
 
+        TestEventsWriter.startAsyncIfEnabled();
+
         String[] array = new String[argList.size()];
         argList.copyInto(array);
-        int exitCode = prepareStreamsAndStart(array, agentName, listeners, name[0]);
-        System.exit(exitCode);
+        if (ourShardCount > 0 && !selectShard(array, ourShardIndex, ourShardCount, ourShardDurations)) {
+            System.out.println("No tests in shard " + ourShardIndex + "/" + ourShardCount);
+            TestEventsWriter.shutdown();
+            return 0;
+        }
+        int exitCode;
+        if (classesStream != null && canRunStreamed(agentName)) {
+            exitCode = runStreamed(classesStream, array, agentName, listeners, name[0]);
+        }
+        else {
+            if (classesStream != null) {
+                waitForEnd(classesStream);
+            }
+            exitCode = prepareStreamsAndStart(array, agentName, listeners, name[0]);
+        }
+        if (searchSocket != null) {
+            searchSocket.close();
+        }
+        TestDurations.save(true);
+        TestEventsWriter.shutdown();
+        return exitCode;
     }
 
     private static String processParameters(Vector args, List listeners, String[] params) {
         String agentName = isJUnit5Preferred() ? JUNIT5_RUNNER_NAME : JUNIT4_RUNNER_NAME;
         Vector result = new Vector(args.size());
+        List listenersFiles = new ArrayList();
         for (int i = 0; i < args.size(); i++) {
             String arg = (String)args.get(i);
             if (arg.startsWith(IDE_VERSION)) {
@@ -105,36 +172,35 @@ public class JUnitStarter {
                     continue;
                 }
                 else if (arg.startsWith("@@")) {
-                    if (new File(arg.substring(2)).exists()) {
-                        try {
-                            BufferedReader reader = new BufferedReader(new FileReader(arg.substring(2)));
-                            String line;
-                            while ((line = reader.readLine()) != null) {
-                                listeners.add(line);
-                            }
-                        }
-                        catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
+                    // read once the events channel, which can carry the list, is connected whatever the order of the arguments
+                    listenersFiles.add(arg.substring(2));
+                    continue;
+                }
+                else if (arg.startsWith(EVENTS_SOCKET)) {
+                    TestEventsWriter.connect(Integer.parseInt(arg.substring(EVENTS_SOCKET.length())));
+                    continue;
+                }
+                else if (arg.startsWith(SHARD)) {
+                    ourShard = arg.substring(SHARD.length());
                     continue;
                 }
                 else if (arg.startsWith(SOCKET)) {
-                    int port = Integer.parseInt(arg.substring(SOCKET.length()));
-                    try {
-                        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);  //start collecting tests
-                        DataInputStream os = new DataInputStream(socket.getInputStream());
-                        try {
-                            os.readBoolean();//wait for ready flag
-                        }
-                        finally {
-                            os.close();
-                        }
-                    }
-                    catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                    ourSearchPort = Integer.parseInt(arg.substring(SOCKET.length()));
+                    continue;
+                }
+                else if (arg.startsWith(DISCOVERY_SOCKET)) {
+                    ourDiscoveryPort = Integer.parseInt(arg.substring(DISCOVERY_SOCKET.length()));
+                    continue;
+                }
 
+                int benchmarkCount = RepeatCount.getBenchmarkCount(arg);
+                if (benchmarkCount > 0) {
+                    ourBenchmarkCount = benchmarkCount;
+                    continue;
+                }
+                int concurrentCount = RepeatCount.getConcurrentCount(arg);
+                if (concurrentCount > 0) {
+                    ourConcurrentCount = concurrentCount;
                     continue;
                 }
 
@@ -148,6 +214,21 @@ public class JUnitStarter {
                 result.addElement(arg);
             }
         }
+        for (int i = 0; i < listenersFiles.size(); i++) {
+            String listenersFile = (String)listenersFiles.get(i);
+            if (TestListFiles.exists(listenersFile)) {
+                try {
+                    BufferedReader reader = TestListFiles.openReader(listenersFile);
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        listeners.add(line);
+                    }
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
         args.removeAllElements();
         for (int i = 0; i < result.size(); i++) {
             String arg = (String)result.get(i);
@@ -244,16 +325,36 @@ public class JUnitStarter {
     ) {
         try {
             IdeaTestRunner testRunner = (IdeaTestRunner)getAgentClass(agentName).newInstance();
+            if (ourConcurrentCount > 0) {
+                // the threads run in this process, whatever the fork mode is
+                return StressRun.create(ourConcurrentCount).run(testRunner, args, name);
+            }
+            if (ourBenchmarkCount > 0) {
+                return BenchmarkRun.create(ourBenchmarkCount).run(testRunner, args, listeners, name);
+            }
             if (ourCommandFileName != null) {
                 if (!"none".equals(ourForkMode) || ourWorkingDirs != null && new File(ourWorkingDirs).length() > 0) {
                     List newArgs = new ArrayList();
                     newArgs.add(agentName);
                     newArgs.addAll(listeners);
-                    return new JUnitForkedSplitter(ourWorkingDirs, ourForkMode, newArgs)
-                        .startSplitting(args, name, ourCommandFileName, ourRepeatCount);
+                    JUnitForkedSplitter splitter = new JUnitForkedSplitter(ourWorkingDirs, ourForkMode, newArgs);
+                    int concurrency = JUnitForkedSplitter.getForkConcurrency();
+                    if ((concurrency > 1 || JUnitForkWorker.isReuseEnabled()) && JUnitForkedSplitter.canSplitConcurrently(args, ourForkMode, ourWorkingDirs)) {
+                        return splitter.startConcurrentSplitting(args, name, ourForkMode, ourRepeatCount, concurrency);
+                    }
+                    if (concurrency > 1 && JUnitForkedSplitter.canSplitModulesConcurrently(args, ourWorkingDirs)) {
+                        return splitter.startModuleSplitting(ourWorkingDirs, ourRepeatCount, concurrency);
+                    }
+                    return splitter.startSplitting(args, name, ourCommandFileName, ourRepeatCount);
                 }
             }
-            return IdeaTestRunner.Repeater.startRunnerWithArgs(testRunner, args, listeners, name, ourCount, true);
+            TestEventsWriter.startRepeatStatisticsIfEnabled(ourCount);
+            try {
+                return IdeaTestRunner.Repeater.startRunnerWithArgs(testRunner, args, listeners, name, ourCount, true);
+            }
+            finally {
+                TestEventsWriter.stopRepeatStatistics();
+            }
         }
         catch (Exception e) {
             e.printStackTrace(System.err);
@@ -262,10 +363,205 @@ public class JUnitStarter {
 
     }
 
+    /**
+     * Connects to the IDE, which starts to search for the tests.
+     */
+    private static Socket startSearch(int port) {
+        try {
+            return new Socket(InetAddress.getByName("127.0.0.1"), port);  //start collecting tests
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Waits until the classes list file is written, the runtime is prewarmed meanwhile if {@link RuntimePrewarmer#isEnabled()}
+     */
+    private static void waitForSearch(Socket searchSocket, String agentName) {
+        RuntimePrewarmer prewarmer = RuntimePrewarmer.isEnabled() ? RuntimePrewarmer.start(agentName) : null;
+        try {
+            DataInputStream os = new DataInputStream(searchSocket.getInputStream());
+            try {
+                os.readBoolean();//wait for ready flag
+            }
+            finally {
+                os.close();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        finally {
+            if (prewarmer != null) {
+                prewarmer.stop();
+            }
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the IDE doesn't send the classes, then the classes list file is to be waited for
+     */
+    private static TestClassesStream connectClassesStream(int port) {
+        try {
+            return TestClassesStream.connect(port);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void waitForEnd(TestClassesStream classesStream) {
+        try {
+            classesStream.waitForEnd();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Classes are run as they come only in this process and all at once, forks and shards need the whole list upfront.
+     * JUnit 5 tests are found by the runner itself.
+     */
+    private static boolean canRunStreamed(String agentName) {
+        if (JUNIT5_RUNNER_NAME.equals(agentName) || ourCount != 1 || ourConcurrentCount > 0 || ourBenchmarkCount > 0 || ourShardCount > 0) {
+            return false;
+        }
+        return ourCommandFileName == null || "none".equals(ourForkMode) && (ourWorkingDirs == null || new File(ourWorkingDirs).length() == 0);
+    }
+
+    /**
+     * Runs the classes received so far while the IDE is searching for more; every batch is a run of the same listeners,
+     * which add the nodes of the tests as they start.
+     */
+    private static int runStreamed(TestClassesStream classesStream, String[] args, String agentName, ArrayList listeners, String name) {
+        try {
+            int classesArg = -1;
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].startsWith("@")) {
+                    classesArg = i;
+                }
+            }
+            if (classesArg < 0) {
+                classesStream.waitForEnd();
+                return prepareStreamsAndStart(args, agentName, listeners, name);
+            }
+
+            IdeaTestRunner testRunner = (IdeaTestRunner)getAgentClass(agentName).newInstance();
+            testRunner.createListeners(listeners, 1);
+            File tempFile = File.createTempFile("idea_junit_batch", ".tmp");
+            tempFile.deleteOnExit();
+            int result = 0;
+            List batch;
+            while ((batch = classesStream.nextBatch()) != null) {
+                printClassesList(batch, classesStream.getPackageName(), classesStream.getCategory(), classesStream.getFilters(), tempFile);
+                // the arguments keep the classes list of the IDE for the run without streamed classes below
+                String[] batchArgs = (String[])args.clone();
+                batchArgs[classesArg] = "@" + tempFile.getAbsolutePath();
+                int batchResult = testRunner.startRunnerWithArgs(batchArgs, name, 1, false, false);
+                if (batchResult == -2) {
+                    return batchResult;
+                }
+                if (batchResult != 0) {
+                    result = -1;
+                }
+            }
+            tempFile.delete();
+            if (classesStream.isEmpty()) {
+                // no classes found by the IDE, the runner decides what to do with the empty classes list
+                return prepareStreamsAndStart(args, agentName, listeners, name);
+            }
+            return result;
+        }
+        catch (Exception e) {
+            e.printStackTrace(System.err);
+            return -2;
+        }
+    }
+
     static Class getAgentClass(String agentName) throws ClassNotFoundException {
         return Class.forName(agentName);
     }
 
+    /**
+     * @param shard argument of {@link #SHARD} without the prefix
+     * @return <code>false</code> if the argument is malformed
+     */
+    private static boolean parseShard(String shard) {
+        int pos = shard.indexOf('/');
+        if (pos == -1) {
+            return false;
+        }
+        int durationsPos = shard.indexOf(':', pos);
+        try {
+            ourShardIndex = Integer.parseInt(shard.substring(0, pos));
+            ourShardCount = Integer.parseInt(shard.substring(pos + 1, durationsPos != -1 ? durationsPos : shard.length()));
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+        ourShardDurations = durationsPos != -1 ? shard.substring(durationsPos + 1) : null;
+        return ourShardIndex >= 1 && ourShardIndex <= ourShardCount && (ourShardDurations == null || ourShardDurations.length() > 0);
+    }
+
+    /**
+     * Replaces the classes list among the arguments with the list of the classes of the shard.
+     *
+     * @param shardIndex 1-based index of the shard
+     * @param durations  read-only durations history to balance the shards by, <code>null</code> to split them by the class names
+     * @return <code>false</code> if the shard is empty
+     */
+    private static boolean selectShard(String[] args, int shardIndex, int shardCount, String durations) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("@")) {
+                continue;
+            }
+            BufferedReader reader = TestListFiles.openReader(args[i].substring(1));
+            String packageName;
+            String category;
+            String filters;
+            Map classLines = new LinkedHashMap();
+            try {
+                packageName = reader.readLine();
+                category = reader.readLine();
+                filters = reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int idx = line.indexOf(',');
+                    String className = idx != -1 ? line.substring(0, idx) : line;
+                    List lines = (List)classLines.get(className);
+                    if (lines == null) {
+                        lines = new ArrayList();
+                        classLines.put(className, lines);
+                    }
+                    lines.add(line);
+                }
+            }
+            finally {
+                reader.close();
+            }
+            if (packageName == null || classLines.isEmpty()) {
+                // the whole package is scanned by the runner, there is nothing to split
+                return shardIndex == 1;
+            }
+
+            Map snapshot = durations != null ? TestDurations.readSnapshot(durations) : null;
+            List shard = (List)TestDurations.partition(new ArrayList(classLines.keySet()), shardCount, snapshot).get(shardIndex - 1);
+            List lines = new ArrayList();
+            for (int j = 0; j < shard.size(); j++) {
+                lines.addAll((List)classLines.get(shard.get(j)));
+            }
+            File tempFile = File.createTempFile("idea_junit_shard", ".tmp");
+            tempFile.deleteOnExit();
+            printClassesList(lines, packageName, category != null ? category : "", filters != null ? filters : "", tempFile);
+            args[i] = "@" + tempFile.getAbsolutePath();
+            return !lines.isEmpty();
+        }
+        return shardIndex == 1;
+    }
+
     public static void printClassesList(
         List classNames,
         String packageName,
@@ -273,7 +569,20 @@ public class JUnitStarter {
         String filters,
         File tempFile
     ) throws IOException {
-        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+        printClassesList(classNames, packageName, category, filters, new FileOutputStream(tempFile));
+    }
+
+    /**
+     * Writes the classes list in the form of the <code>@file</code> argument, see {@link TestListFiles}; closes the stream.
+     */
+    public static void printClassesList(
+        List classNames,
+        String packageName,
+        String category,
+        String filters,
+        OutputStream stream
+    ) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, "UTF-8"));
 
         try {
             writer.println(packageName); //package name
@@ -16,7 +16,6 @@
 package com.intellij.rt.execution.junit;
 
 
-import java.util.Iterator;
 import java.util.Map;
 
 public class MapSerializerUtil {
@@ -74,52 +73,28 @@ public class MapSerializerUtil {
    */
   public static String escapeStr(String str, EscapeInfoProvider p) {
     if (str == null) return null;
-    int finalCount = calcFinalEscapedStringCount(str, p);
-
-    if (str.length() == finalCount) return str;
-
-    char[] resultChars = new char[finalCount];
-    int resultPos = 0;
+    StringBuilder result = null;
     for (int i = 0; i < str.length(); i++) {
       char c = str.charAt(i);
       char escaped = p.escape(c);
       if (escaped != 0) {
-        resultChars[resultPos++] = p.escapeCharacter();
-        resultChars[resultPos++] = escaped;
+        if (result == null) {
+          result = new StringBuilder(str.length() + 16);
+          result.append(str, 0, i);
+        }
+        result.append(p.escapeCharacter()).append(escaped);
       }
-      else {
-        resultChars[resultPos++] = c;
+      else if (result != null) {
+        result.append(c);
       }
     }
-
-    if (resultPos != finalCount) {
-      throw new RuntimeException("Incorrect escaping for '" + str + "'");
-    }
-    return new String(resultChars);
-  }
-
-  private static int calcFinalEscapedStringCount(String name, EscapeInfoProvider p) {
-    int result = 0;
-    for (int i = 0; i < name.length(); i++) {
-      char c = name.charAt(i);
-      if (p.escape(c) != 0) {
-        result += 2;
-      }
-      else {
-        result += 1;
-      }
-    }
-
-    return result;
+    return result != null ? result.toString() : str;
   }
 
   public static String asString(String messageName, Map attributes) {
-    String text = "##teamcity[" + messageName;
-    for (Iterator iterator = attributes.keySet().iterator(); iterator.hasNext(); ) {
-      Object attrName = iterator.next();
-      text += " " + attrName + "='" + escapeStr((String)attributes.get(attrName), STD_ESCAPER) + "'";
-    }
-    text += "]";
+    ServiceMessageEncoder encoder = ServiceMessageEncoder.forCurrentThread();
+    String text = encoder.encode(messageName, attributes).toString();
+    encoder.reset();
     return text;
   }
 
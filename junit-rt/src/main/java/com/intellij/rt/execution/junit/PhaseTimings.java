@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Durations of the tests in nanoseconds and, if {@link #PHASES_PROPERTY} is set, of their phases: the fixture setup
+ * (<code>@Before</code>/<code>@BeforeEach</code>, <code>@BeforeClass</code>/<code>@BeforeAll</code> for a class), the test body
+ * (all the tests for a class) and the teardown.
+ * <p>
+ * The framework instrumentation marks the phase boundaries of a node keyed by its description or unique id,
+ * the listener takes them as attributes of the message finishing the node:
+ * {@link #DURATION_NANOS}, {@link #SETUP_NANOS}, {@link #BODY_NANOS} and {@link #TEARDOWN_NANOS}.
+ * <p>
+ * JUnit 5 tests are instrumented by an auto-detected extension. Jupiter before 5.11 can't limit the auto-detection to it,
+ * so there JUnit 5 tests get no phases unless the tests enable the auto-detection themselves.
+ */
+public class PhaseTimings {
+    public static final String PHASES_PROPERTY = "idea.junit.phases";
+
+    public static final String DURATION_NANOS = "durationNanos";
+    public static final String SETUP_NANOS = "setupNanos";
+    public static final String BODY_NANOS = "bodyNanos";
+    public static final String TEARDOWN_NANOS = "teardownNanos";
+
+    private static final int SETUP_STARTED = 0;
+    private static final int BODY_STARTED = 1;
+    private static final int BODY_FINISHED = 2;
+    private static final int TEARDOWN_FINISHED = 3;
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final Map<Object, long[]> ourMarks = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PHASES_PROPERTY);
+    }
+
+    public static void setupStarted(Object key) {
+        mark(key, SETUP_STARTED, false);
+    }
+
+    /**
+     * The first call counts: for a class it's the start of its first test
+     */
+    public static void bodyStarted(Object key) {
+        mark(key, BODY_STARTED, false);
+    }
+
+    /**
+     * The latest call counts: for a class it's the end of its last test
+     */
+    public static void bodyFinished(Object key) {
+        mark(key, BODY_FINISHED, true);
+    }
+
+    public static void teardownFinished(Object key) {
+        mark(key, TEARDOWN_FINISHED, true);
+    }
+
+    private static void mark(Object key, int mark, boolean latest) {
+        long now = System.nanoTime();
+        long[] marks = ourMarks.get(key);
+        if (marks == null) {
+            long[] newMarks = new long[TEARDOWN_FINISHED + 1];
+            Arrays.fill(newMarks, UNKNOWN);
+            marks = ourMarks.putIfAbsent(key, newMarks);
+            if (marks == null) {
+                marks = newMarks;
+            }
+        }
+        synchronized (marks) {
+            if (marks[mark] == UNKNOWN || latest && now - marks[mark] > 0) {
+                marks[mark] = now;
+            }
+        }
+    }
+
+    /**
+     * @param duration of the node in nanoseconds, negative if it wasn't measured
+     * @return <code>duration</code> in milliseconds and nanoseconds and the phases marked for <code>key</code>, which are forgotten;
+     * pairs with <code>null</code> values stand for the unknown ones
+     */
+    public static String[] takeAttributes(Object key, long duration) {
+        long[] marks = key != null ? ourMarks.remove(key) : null;
+        String[] attributes = new String[10];
+        attributes[0] = "duration";
+        attributes[2] = DURATION_NANOS;
+        if (duration >= 0) {
+            attributes[1] = Long.toString(duration / 1000000);
+            attributes[3] = Long.toString(duration);
+        }
+        attributes[4] = SETUP_NANOS;
+        attributes[6] = BODY_NANOS;
+        attributes[8] = TEARDOWN_NANOS;
+        if (marks != null) {
+            synchronized (marks) {
+                attributes[5] = getPhase(marks, SETUP_STARTED, BODY_STARTED);
+                attributes[7] = getPhase(marks, BODY_STARTED, BODY_FINISHED);
+                attributes[9] = getPhase(marks, BODY_FINISHED, TEARDOWN_FINISHED);
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Puts the duration attributes for the messages reported with a map of attributes.
+     */
+    public static void putDuration(Map<String, String> attributes, long duration) {
+        if (duration >= 0) {
+            attributes.put("duration", Long.toString(duration / 1000000));
+            attributes.put(DURATION_NANOS, Long.toString(duration));
+        }
+    }
+
+    private static String getPhase(long[] marks, int start, int end) {
+        return marks[start] != UNKNOWN && marks[end] != UNKNOWN ? Long.toString(Math.max(0, marks[end] - marks[start])) : null;
+    }
+}
@@ -21,11 +21,21 @@ public abstract class RepeatCount
 	public static final String N = "N Times";
 	public static final String UNTIL_FAILURE = "Until Failure";
 	public static final String UNLIMITED = "Until Stopped";
+	/**
+	 * Runs the tests N times on every thread of {@link StressRun}
+	 */
+	public static final String CONCURRENTLY = "Concurrently N Times";
+	/**
+	 * Runs warm-up iterations, then measures up to N iterations until the durations of {@link BenchmarkRun} settle
+	 */
+	public static final String BENCHMARK = "Benchmark";
 	public static final String[] REPEAT_TYPES = new String[]{
 			ONCE,
 			N,
 			UNTIL_FAILURE,
-			UNLIMITED
+			UNLIMITED,
+			CONCURRENTLY,
+			BENCHMARK
 	};
 
 	public static String getCountString(int count)
@@ -45,6 +55,48 @@ public abstract class RepeatCount
 		return ONCE;
 	}
 
+	public static String getConcurrentCountString(int count)
+	{
+		return "@" + CONCURRENTLY + count;
+	}
+
+	/**
+	 * @return number of runs per thread, <code>0</code> if the runs are not concurrent
+	 */
+	public static int getConcurrentCount(String countString)
+	{
+		return getModeCount(countString, CONCURRENTLY);
+	}
+
+	public static String getBenchmarkCountString(int count)
+	{
+		return "@" + BENCHMARK + count;
+	}
+
+	/**
+	 * @return maximal number of measured iterations, <code>0</code> if the run is not a benchmark
+	 */
+	public static int getBenchmarkCount(String countString)
+	{
+		return getModeCount(countString, BENCHMARK);
+	}
+
+	private static int getModeCount(String countString, String mode)
+	{
+		String prefix = "@" + mode;
+		if(countString.startsWith(prefix))
+		{
+			try
+			{
+				return Integer.parseInt(countString.substring(prefix.length()));
+			}
+			catch(NumberFormatException ignore)
+			{
+			}
+		}
+		return 0;
+	}
+
 	public static int getCount(String countString)
 	{
 		if(countString.equals(ONCE))
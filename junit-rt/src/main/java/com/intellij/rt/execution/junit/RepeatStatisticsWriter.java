@@ -0,0 +1,408 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates the results of repeated runs instead of reporting every iteration: the events of the tests are held back and
+ * every test is reported once at the end of the run, under the suite of its class, with the number of runs, failures and
+ * the percentiles of its durations in its output. A test which failed in some of the runs is reported as failed with
+ * the first of its failures.
+ * <p>
+ * Events of every iteration may be kept in the file given by {@link #EVENTS_FILE_PROPERTY} as <code>##teamcity[...]</code> lines.
+ */
+public class RepeatStatisticsWriter extends TestEventsWriter {
+    public static final String STATISTICS_PROPERTY = "idea.junit.repeat.statistics";
+    public static final String EVENTS_FILE_PROPERTY = "idea.junit.repeat.events";
+
+    private final TestEventsWriter myDelegate;
+    private final String myEventsFile;
+    private final PrintStream myEventsStream;
+    private final TestEventsWriter myEventsWriter;
+    private final Thread myShutdownHook;
+
+    private final Map myNodes = new HashMap();
+    private final Map myStarts = new HashMap();
+    private final Map myStatistics = new LinkedHashMap();
+    private boolean myEnteredTheMatrix;
+    private boolean myRootNameSent;
+    private boolean myReported;
+    private boolean myMeasuring = true;
+
+    private RepeatStatisticsWriter(TestEventsWriter delegate, String eventsFile, PrintStream eventsStream, boolean stoppedByUser) {
+        myDelegate = delegate;
+        myEventsFile = eventsFile;
+        myEventsStream = eventsStream;
+        myEventsWriter = eventsStream != null ? new TextTestEventsWriter(eventsStream, "UTF-8") : null;
+        myShutdownHook = stoppedByUser ? new Thread(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }) : null;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(STATISTICS_PROPERTY);
+    }
+
+    /**
+     * @param reportOnExit whether to report the statistics when the process is stopped
+     */
+    static RepeatStatisticsWriter install(TestEventsWriter delegate, boolean reportOnExit) {
+        String eventsFile = System.getProperty(EVENTS_FILE_PROPERTY);
+        PrintStream eventsStream = null;
+        if (eventsFile != null) {
+            String forkId = System.getProperty(TestNodeIds.FORK_ID_PROPERTY);
+            if (forkId != null) {
+                eventsFile += "." + forkId;
+            }
+            try {
+                // forks run one after another append to the same file
+                eventsStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(eventsFile, true), 1 << 16), false, "UTF-8");
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                eventsFile = null;
+            }
+        }
+        RepeatStatisticsWriter writer = new RepeatStatisticsWriter(delegate, eventsFile, eventsStream, reportOnExit);
+        if (writer.myShutdownHook != null) {
+            Runtime.getRuntime().addShutdownHook(writer.myShutdownHook);
+        }
+        return writer;
+    }
+
+    @Override
+    public void message(String messageName, String... attributes) {
+        Map map = new HashMap();
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            if (attributes[i + 1] != null) {
+                map.put(attributes[i], attributes[i + 1]);
+            }
+        }
+        if (myEventsWriter != null) {
+            myEventsWriter.message(messageName, attributes);
+        }
+        handle(messageName, map, attributes, null);
+    }
+
+    @Override
+    public void message(String messageName, Map attributes) {
+        if (myEventsWriter != null) {
+            myEventsWriter.message(messageName, attributes);
+        }
+        handle(messageName, attributes, null, attributes);
+    }
+
+    /**
+     * Tests are not measured while {@link BenchmarkRun} warms them up; to be switched between the iterations.
+     */
+    synchronized void setMeasuring(boolean measuring) {
+        myMeasuring = measuring;
+    }
+
+    @Override
+    public void text(String text) {
+        myDelegate.text(text);
+    }
+
+    @Override
+    public void flush() {
+        myDelegate.flush();
+    }
+
+    private synchronized void handle(String messageName, Map attributes, String[] attributesArray, Map attributesMap) {
+        String nodeId = (String)attributes.get("nodeId");
+        if (myReported) {
+            passThrough(messageName, attributesArray, attributesMap);
+        }
+        else if (messageName.equals("enteredTheMatrix")) {
+            if (!myEnteredTheMatrix) {
+                myEnteredTheMatrix = true;
+                passThrough(messageName, attributesArray, attributesMap);
+            }
+        }
+        else if (messageName.equals("rootName")) {
+            if (!myRootNameSent) {
+                myRootNameSent = true;
+                passThrough(messageName, attributesArray, attributesMap);
+            }
+        }
+        else if (!myMeasuring && nodeId != null) {
+            // warm-up iteration
+        }
+        else if (messageName.equals("testSuiteStarted")) {
+            myNodes.put(nodeId, new Node(attributes));
+        }
+        else if (messageName.equals("testSuiteFinished")) {
+            myNodes.remove(nodeId);
+        }
+        else if (messageName.equals("testStarted")) {
+            myNodes.put(nodeId, new Node(attributes));
+            myStarts.put(nodeId, Long.valueOf(System.nanoTime()));
+        }
+        else if (messageName.equals(MapSerializerUtil.TEST_FAILED)) {
+            TestStatistics statistics = getStatistics(nodeId, attributes);
+            if (statistics != null) {
+                statistics.failed(nodeId, attributes);
+            }
+        }
+        else if (messageName.equals(MapSerializerUtil.TEST_IGNORED)) {
+            TestStatistics statistics = getStatistics(nodeId, attributes);
+            if (statistics != null) {
+                statistics.myIgnoredIds.add(nodeId);
+                if (!myStarts.containsKey(nodeId)) {
+                    // ignored without start
+                    statistics.finished(nodeId, -1);
+                    myNodes.remove(nodeId);
+                }
+            }
+        }
+        else if (messageName.equals("testFinished")) {
+            Long start = (Long)myStarts.remove(nodeId);
+            TestStatistics statistics = getStatistics(nodeId, attributes);
+            if (statistics != null && start != null) {
+                statistics.finished(nodeId, System.nanoTime() - start.longValue());
+            }
+            myNodes.remove(nodeId);
+        }
+        else if (nodeId == null && !TextTestEventsWriter.isTreeMessage(messageName)) {
+            passThrough(messageName, attributesArray, attributesMap);
+        }
+    }
+
+    private void passThrough(String messageName, String[] attributesArray, Map attributesMap) {
+        if (attributesMap != null) {
+            myDelegate.message(messageName, attributesMap);
+        }
+        else {
+            myDelegate.message(messageName, attributesArray);
+        }
+    }
+
+    /**
+     * @return statistics of the test, tests are told apart by the names of their suites and their own name
+     */
+    private TestStatistics getStatistics(String nodeId, Map attributes) {
+        if (nodeId == null) {
+            return null;
+        }
+        Node node = (Node)myNodes.get(nodeId);
+        if (node == null) {
+            node = new Node(attributes);
+            myNodes.put(nodeId, node);
+        }
+        Node suite = (Node)myNodes.get(node.myParentId);
+        StringBuilder key = new StringBuilder(String.valueOf(node.myName));
+        for (Node parent = suite; parent != null; parent = (Node)myNodes.get(parent.myParentId)) {
+            key.insert(0, parent.myName + "/");
+        }
+        TestStatistics statistics = (TestStatistics)myStatistics.get(key.toString());
+        if (statistics == null) {
+            statistics = new TestStatistics(node, suite);
+            myStatistics.put(key.toString(), statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * Reports the statistics of the tests; the events which come after it are passed as is.
+     */
+    public synchronized void report() {
+        if (myReported) {
+            return;
+        }
+        myReported = true;
+        if (myShutdownHook != null && Thread.currentThread() != myShutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(myShutdownHook);
+            }
+            catch (IllegalStateException ignored) {
+                // the process is shutting down
+            }
+        }
+
+        Map suites = new LinkedHashMap();
+        for (Iterator iterator = myStatistics.values().iterator(); iterator.hasNext(); ) {
+            TestStatistics statistics = (TestStatistics)iterator.next();
+            List tests = (List)suites.get(statistics.mySuiteKey);
+            if (tests == null) {
+                tests = new ArrayList();
+                suites.put(statistics.mySuiteKey, tests);
+            }
+            tests.add(statistics);
+        }
+        TestNodeIds ids = new TestNodeIds();
+        for (Iterator iterator = suites.values().iterator(); iterator.hasNext(); ) {
+            List tests = (List)iterator.next();
+            TestStatistics first = (TestStatistics)tests.get(0);
+            String parentId = TestNodeIds.getRootId();
+            String suiteId = null;
+            if (first.mySuiteName != null) {
+                suiteId = ids.next();
+                myDelegate.message("testSuiteStarted", "id", suiteId, "name", first.mySuiteName, "nodeId", suiteId,
+                                   "parentNodeId", parentId, "locationHint", first.mySuiteLocation);
+                parentId = suiteId;
+            }
+            for (int i = 0; i < tests.size(); i++) {
+                ((TestStatistics)tests.get(i)).report(ids.next(), parentId);
+            }
+            if (suiteId != null) {
+                myDelegate.message("testSuiteFinished", "id", suiteId, "name", first.mySuiteName, "nodeId", suiteId, "parentNodeId", TestNodeIds.getRootId());
+            }
+        }
+        myStatistics.clear();
+        myNodes.clear();
+        myStarts.clear();
+
+        if (myEventsStream != null) {
+            myEventsStream.close();
+            myDelegate.text("Events of every run are written to " + myEventsFile);
+        }
+        myDelegate.flush();
+    }
+
+    private static class Node {
+        final String myName;
+        final String myLocationHint;
+        final String myParentId;
+
+        Node(Map attributes) {
+            myName = (String)attributes.get("name");
+            myLocationHint = (String)attributes.get("locationHint");
+            myParentId = (String)attributes.get("parentNodeId");
+        }
+    }
+
+    private class TestStatistics {
+        final String myName;
+        final String myLocationHint;
+        final String mySuiteKey;
+        final String mySuiteName;
+        final String mySuiteLocation;
+        final DurationHistogram myDurations = new DurationHistogram();
+        final List myIgnoredIds = new ArrayList();
+        final List myFailedIds = new ArrayList();
+        Map myFirstFailure;
+        int myRuns;
+        int myPassed;
+        int myFailed;
+        int myIgnored;
+
+        TestStatistics(Node test, Node suite) {
+            myName = test.myName;
+            myLocationHint = test.myLocationHint;
+            mySuiteName = suite != null ? suite.myName : null;
+            mySuiteLocation = suite != null ? suite.myLocationHint : null;
+            mySuiteKey = suite != null ? suite.myName + "\n" + suite.myLocationHint : "";
+        }
+
+        void failed(String nodeId, Map attributes) {
+            if (!myFailedIds.contains(nodeId)) {
+                myFailedIds.add(nodeId);
+            }
+            if (myFirstFailure == null) {
+                myFirstFailure = new LinkedHashMap(attributes);
+                myFirstFailure.remove("id");
+                myFirstFailure.remove("name");
+                myFirstFailure.remove("nodeId");
+                myFirstFailure.remove("parentNodeId");
+                myFirstFailure.remove("duration");
+                myFirstFailure.remove(PhaseTimings.DURATION_NANOS);
+            }
+        }
+
+        /**
+         * @param duration in nanoseconds, negative for a test ignored without start
+         */
+        void finished(String nodeId, long duration) {
+            myRuns++;
+            if (myFailedIds.remove(nodeId)) {
+                myFailed++;
+            }
+            else if (myIgnoredIds.remove(nodeId)) {
+                myIgnored++;
+            }
+            else {
+                myPassed++;
+            }
+            if (duration >= 0) {
+                myDurations.record(duration);
+            }
+        }
+
+        void report(String id, String parentId) {
+            myDelegate.message("testStarted", "id", id, "name", myName, "nodeId", id, "parentNodeId", parentId, "locationHint", myLocationHint);
+            myDelegate.message("testStdOut", "id", id, "name", myName, "nodeId", id, "parentNodeId", parentId, "out", format());
+            if (myFailed > 0) {
+                Map attributes = new LinkedHashMap();
+                attributes.put("id", id);
+                attributes.put("name", myName);
+                attributes.put("nodeId", id);
+                attributes.put("parentNodeId", parentId);
+                attributes.putAll(myFirstFailure);
+                String message = (String)myFirstFailure.get("message");
+                String summary = "Failed in " + myFailed + " of " + myRuns + " runs";
+                attributes.put("message", message != null && message.length() > 0 ? summary + ": " + message : summary);
+                myDelegate.message(MapSerializerUtil.TEST_FAILED, attributes);
+            }
+            else if (myPassed == 0 && myIgnored > 0) {
+                myDelegate.message(MapSerializerUtil.TEST_IGNORED, "id", id, "name", myName, "nodeId", id, "parentNodeId", parentId);
+            }
+            long median = myDurations.getPercentile(50) / 1000000;
+            myDelegate.message("testFinished", "id", id, "name", myName, "nodeId", id, "parentNodeId", parentId,
+                               "duration", median > 0 ? Long.toString(median) : null);
+        }
+
+        private String format() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Runs: ").append(myRuns)
+                .append(", passed: ").append(myPassed)
+                .append(", failed: ").append(myFailed);
+            if (myIgnored > 0) {
+                builder.append(", ignored: ").append(myIgnored);
+            }
+            if (myFailed > 0 && myPassed > 0) {
+                builder.append(", flaky: ").append(Math.round(myFailed * 10000.0 / (myFailed + myPassed)) / 100.0).append('%');
+            }
+            builder.append('\n');
+            if (myDurations.getCount() > 0) {
+                builder.append("Duration: p50 ").append(DurationHistogram.formatMillis(myDurations.getPercentile(50)))
+                    .append(", p90 ").append(DurationHistogram.formatMillis(myDurations.getPercentile(90)))
+                    .append(", p99 ").append(DurationHistogram.formatMillis(myDurations.getPercentile(99)))
+                    .append(", max ").append(DurationHistogram.formatMillis(myDurations.getMax()))
+                    .append('\n');
+            }
+            if (myDurations.getCount() > 1) {
+                builder.append("Mean: ").append(DurationHistogram.formatMillis(Math.round(myDurations.getMean())))
+                    .append(" +/- ").append(DurationHistogram.formatMillis(Math.round(myDurations.getConfidenceInterval())))
+                    .append(" (95% confidence)\n");
+            }
+            return builder.toString();
+        }
+    }
+}
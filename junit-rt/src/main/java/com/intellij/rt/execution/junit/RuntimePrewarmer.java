@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pays one-time costs of the run while the IDE is still searching for the tests: loads the classes of the runner and
+ * of the test framework, creates the JUnit 5 launcher, which loads the engines, and loads the classes of the output directories.
+ * <p>
+ * Classes of the output directories are loaded without initialization, so no test code runs; their loading stops with the search.
+ * Enabled by {@link #PREWARM_PROPERTY}, since it loads the classes of all output directories on the classpath, not only of the tests.
+ */
+public class RuntimePrewarmer implements Runnable {
+    public static final String PREWARM_PROPERTY = "idea.junit.prewarm";
+
+    private static final String[] FRAMEWORK_CLASSES = {
+        "junit.framework.TestCase",
+        "junit.framework.TestSuite",
+        "junit.framework.TestResult",
+        "org.junit.runner.JUnitCore",
+        "org.junit.runner.Request",
+        "org.junit.runner.Description",
+        "org.junit.runner.notification.RunNotifier",
+        "org.junit.runners.BlockJUnit4ClassRunner",
+        "org.junit.runners.Suite",
+        "org.junit.runners.Parameterized",
+        "org.junit.internal.builders.AllDefaultPossibilitiesBuilder",
+        "org.junit.internal.runners.statements.InvokeMethod",
+        "com.intellij.junit4.JUnit4TestListener",
+        "com.intellij.junit4.JUnit4TestRunnerUtil"
+    };
+
+    private final String myAgentName;
+    private final ClassLoader myClassLoader;
+    private volatile boolean myStopped;
+
+    private RuntimePrewarmer(String agentName) {
+        myAgentName = agentName;
+        myClassLoader = RuntimePrewarmer.class.getClassLoader();
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PREWARM_PROPERTY);
+    }
+
+    static RuntimePrewarmer start(String agentName) {
+        RuntimePrewarmer prewarmer = new RuntimePrewarmer(agentName);
+        Thread thread = new Thread(prewarmer, "Prewarm test runtime");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return prewarmer;
+    }
+
+    /**
+     * Stops loading of the output classes; classes of the framework are loaded to the end, the run would load them anyway.
+     */
+    void stop() {
+        myStopped = true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Class agentClass = Class.forName(myAgentName, true, myClassLoader);
+            if (JUnitStarter.JUNIT5_RUNNER_NAME.equals(myAgentName)) {
+                agentClass.getMethod("prewarm").invoke(null);
+            }
+            else {
+                for (int i = 0; i < FRAMEWORK_CLASSES.length; i++) {
+                    load(FRAMEWORK_CLASSES[i], true);
+                }
+            }
+        }
+        catch (Throwable ignored) {
+            // the run reports what's wrong with the classpath
+        }
+        List directories = getOutputDirectories();
+        for (int i = 0; i < directories.size() && !myStopped; i++) {
+            loadClasses((File)directories.get(i), "");
+        }
+    }
+
+    private List getOutputDirectories() {
+        List directories = new ArrayList();
+        if (myClassLoader instanceof URLClassLoader) {
+            URL[] urls = ((URLClassLoader)myClassLoader).getURLs();
+            for (int i = 0; i < urls.length; i++) {
+                if ("file".equals(urls[i].getProtocol())) {
+                    addDirectory(directories, new File(urls[i].getPath()));
+                }
+            }
+        }
+        else if (myClassLoader == ClassLoader.getSystemClassLoader()) {
+            String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+            for (int i = 0; i < entries.length; i++) {
+                addDirectory(directories, new File(entries[i]));
+            }
+        }
+        return directories;
+    }
+
+    private static void addDirectory(List directories, File file) {
+        if (file.isDirectory()) {
+            directories.add(file);
+        }
+    }
+
+    private void loadClasses(File directory, String packagePrefix) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (int i = 0; i < files.length && !myStopped; i++) {
+            String name = files[i].getName();
+            if (files[i].isDirectory()) {
+                loadClasses(files[i], packagePrefix + name + ".");
+            }
+            else if (name.endsWith(".class") && name.indexOf('-') < 0) {
+                load(packagePrefix + name.substring(0, name.length() - ".class".length()), false);
+            }
+        }
+    }
+
+    private void load(String className, boolean initialize) {
+        try {
+            Class.forName(className, initialize, myClassLoader);
+        }
+        catch (Throwable ignored) {
+            // classes which can't be loaded fail the same way when the tests use them
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Encodes <code>##teamcity[...]</code> messages into a reusable char buffer, escaping values in a single pass,
+ * and then into a reusable byte buffer, so the message is ready to be copied into the stream.
+ * <p>
+ * Not thread-safe: an instance is meant to be confined to a thread, see {@link #forCurrentThread()}.
+ */
+public class ServiceMessageEncoder {
+    private static final ThreadLocal<ServiceMessageEncoder> ourEncoders = new ThreadLocal<ServiceMessageEncoder>() {
+        @Override
+        protected ServiceMessageEncoder initialValue() {
+            return new ServiceMessageEncoder();
+        }
+    };
+
+    private static final int INITIAL_CAPACITY = 256;
+    /**
+     * Buffers grown by a huge message (e.g. a long comparison failure) are not kept for the following ones
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+    private char[] myBuffer = new char[INITIAL_CAPACITY];
+    private int myLength;
+    private ByteBuffer myBytes = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private CharsetEncoder myCharsetEncoder;
+
+    public static ServiceMessageEncoder forCurrentThread() {
+        return ourEncoders.get();
+    }
+
+    /**
+     * Starts a new message; the previous content of the buffer is discarded.
+     */
+    public ServiceMessageEncoder start(String messageName) {
+        myLength = 0;
+        append("##teamcity[");
+        append(messageName);
+        return this;
+    }
+
+    /**
+     * Appends <code> name='escaped value'</code>; <code>null</code> values are skipped.
+     */
+    public ServiceMessageEncoder attribute(String name, String value) {
+        if (value == null) {
+            return this;
+        }
+        ensureCapacity(name.length() + value.length() + 4);
+        myBuffer[myLength++] = ' ';
+        append(name);
+        myBuffer[myLength++] = '=';
+        myBuffer[myLength++] = '\'';
+        appendEscaped(value);
+        ensureCapacity(1);
+        myBuffer[myLength++] = '\'';
+        return this;
+    }
+
+    public ServiceMessageEncoder end() {
+        ensureCapacity(1);
+        myBuffer[myLength++] = ']';
+        return this;
+    }
+
+    /**
+     * @param attributes name/value pairs, pairs with <code>null</code> value are skipped
+     */
+    public ServiceMessageEncoder encode(String messageName, String... attributes) {
+        start(messageName);
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            attribute(attributes[i], attributes[i + 1]);
+        }
+        return end();
+    }
+
+    public ServiceMessageEncoder encode(String messageName, Map attributes) {
+        start(messageName);
+        for (Iterator iterator = attributes.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry entry = (Map.Entry)iterator.next();
+            attribute(String.valueOf(entry.getKey()), (String)entry.getValue());
+        }
+        return end();
+    }
+
+    /**
+     * Encodes the message into bytes and resets the char buffer.
+     *
+     * @param prefix text written before the message, may be <code>null</code>
+     * @param suffix text written after the message, may be <code>null</code>
+     * @return byte buffer of this encoder ready to be read, valid until the next call
+     */
+    public ByteBuffer toBytes(Charset charset, String prefix, String suffix) {
+        if (myCharsetEncoder == null || !myCharsetEncoder.charset().equals(charset)) {
+            myCharsetEncoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        if (myBytes.capacity() > MAX_RETAINED_CAPACITY) {
+            myBytes = ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+        myBytes.clear();
+        myCharsetEncoder.reset();
+        try {
+            if (prefix != null) {
+                encodeBytes(CharBuffer.wrap(prefix), false);
+            }
+            encodeBytes(CharBuffer.wrap(myBuffer, 0, myLength), suffix == null);
+            if (suffix != null) {
+                encodeBytes(CharBuffer.wrap(suffix), true);
+            }
+            while (myCharsetEncoder.flush(myBytes).isOverflow()) {
+                growBytes();
+            }
+        }
+        finally {
+            reset();
+        }
+        myBytes.flip();
+        return myBytes;
+    }
+
+    private void encodeBytes(CharBuffer chars, boolean endOfInput) {
+        while (true) {
+            CoderResult result = myCharsetEncoder.encode(chars, myBytes, endOfInput);
+            if (!result.isOverflow()) {
+                return;
+            }
+            growBytes();
+        }
+    }
+
+    private void growBytes() {
+        ByteBuffer bytes = ByteBuffer.allocate(myBytes.capacity() * 2);
+        myBytes.flip();
+        bytes.put(myBytes);
+        myBytes = bytes;
+    }
+
+    public int length() {
+        return myLength;
+    }
+
+    @Override
+    public String toString() {
+        return new String(myBuffer, 0, myLength);
+    }
+
+    public void reset() {
+        myLength = 0;
+        if (myBuffer.length > MAX_RETAINED_CAPACITY) {
+            myBuffer = new char[INITIAL_CAPACITY];
+        }
+    }
+
+    private void append(String str) {
+        int length = str.length();
+        ensureCapacity(length);
+        str.getChars(0, length, myBuffer, myLength);
+        myLength += length;
+    }
+
+    private void appendEscaped(String str) {
+        MapSerializerUtil.EscapeInfoProvider escaper = MapSerializerUtil.STD_ESCAPER;
+        char escapeCharacter = escaper.escapeCharacter();
+        int length = str.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            char escaped = escaper.escape(c);
+            if (escaped != 0) {
+                // the rest of the value is reserved already, two more chars are needed for the escape sequence
+                ensureCapacity(length - i + 1);
+                myBuffer[myLength++] = escapeCharacter;
+                myBuffer[myLength++] = escaped;
+            }
+            else {
+                myBuffer[myLength++] = c;
+            }
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = myLength + additional;
+        if (required > myBuffer.length) {
+            char[] newBuffer = new char[Math.max(required, myBuffer.length * 2)];
+            System.arraycopy(myBuffer, 0, newBuffer, 0, myLength);
+            myBuffer = newBuffer;
+        }
+    }
+}
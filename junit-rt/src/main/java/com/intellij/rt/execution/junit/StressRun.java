@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link RepeatCount#CONCURRENTLY} mode: the selected tests are run by several threads at once, every thread runs them
+ * a number of times or, if {@link #DURATION_PROPERTY} is set, until the time is over. Every invocation creates fresh test instances.
+ * <p>
+ * Every thread is reported as a test with the number of its invocations and their durations, failed with the first of its failures;
+ * throughput and durations of all threads are printed at the end.
+ */
+public class StressRun {
+    /**
+     * Number of threads, the number of processors by default
+     */
+    public static final String THREADS_PROPERTY = "idea.junit.stress.threads";
+    /**
+     * Seconds to run for instead of the number of runs per thread
+     */
+    public static final String DURATION_PROPERTY = "idea.junit.stress.duration";
+    /**
+     * Use virtual threads where the JVM has them
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "idea.junit.stress.virtual";
+
+    /**
+     * Runner which can run its tests concurrently
+     */
+    public interface Target {
+        /**
+         * Called on every thread of the run before its first invocation.
+         */
+        Invocation createInvocation(String[] args, String name) throws Exception;
+    }
+
+    public interface Invocation {
+        /**
+         * Runs the tests once, reporting every test to <code>listener</code>.
+         */
+        void invoke(Listener listener) throws Exception;
+    }
+
+    /**
+     * Statistics of one thread of the run
+     */
+    public static class Listener {
+        private final DurationHistogram myDurations = new DurationHistogram();
+        private long myStart;
+        private int myInvocations;
+        private int myFailures;
+        private Throwable myFirstFailure;
+        private boolean myFailed;
+
+        public void testStarted() {
+            myStart = System.nanoTime();
+            myFailed = false;
+        }
+
+        public void testFailed(Throwable failure) {
+            if (!myFailed) {
+                myFailed = true;
+                myFailures++;
+                if (myFirstFailure == null) {
+                    myFirstFailure = failure;
+                }
+            }
+        }
+
+        public void testFinished() {
+            myDurations.record(System.nanoTime() - myStart);
+            myInvocations++;
+            myFailed = false;
+        }
+    }
+
+    private final int myThreads;
+    private final int myCount;
+    private final long myDuration;
+    private final boolean myVirtual;
+    private boolean myVirtualStarted;
+
+    private StressRun(int threads, int count, long duration, boolean virtual) {
+        myThreads = threads;
+        myCount = count;
+        myDuration = duration;
+        myVirtual = virtual;
+    }
+
+    /**
+     * @param count number of runs per thread
+     */
+    public static StressRun create(int count) {
+        int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()).intValue();
+        long duration = Long.getLong(DURATION_PROPERTY, 0).longValue() * 1000000000L;
+        return new StressRun(Math.max(1, threads), count, duration, Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY));
+    }
+
+    /**
+     * @return exit code: <code>-1</code> if any invocation failed, <code>-2</code> if the runner can't run its tests concurrently
+     */
+    public int run(Object testRunner, final String[] args, final String name) {
+        TestEventsWriter writer = TestEventsWriter.create(System.out);
+        writer.message("enteredTheMatrix");
+        if (!(testRunner instanceof Target)) {
+            System.err.println("Concurrent runs are supported for JUnit 4 and JUnit 5 tests only");
+            return -2;
+        }
+        final Target target = (Target)testRunner;
+        final Listener[] listeners = new Listener[myThreads];
+        final Throwable[] errors = new Throwable[myThreads];
+        final CountDownLatch ready = new CountDownLatch(myThreads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+        Thread[] threads = new Thread[myThreads];
+        for (int i = 0; i < myThreads; i++) {
+            final int index = i;
+            listeners[i] = new Listener();
+            threads[i] = newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Invocation invocation;
+                        try {
+                            invocation = target.createInvocation(args, name);
+                        }
+                        finally {
+                            ready.countDown();
+                        }
+                        start.await();
+                        for (int j = 0; myDuration > 0 ? System.nanoTime() - deadline[0] < 0 : j < myCount; j++) {
+                            invocation.invoke(listeners[index]);
+                        }
+                    }
+                    catch (Throwable e) {
+                        errors[index] = e;
+                    }
+                }
+            }, "Concurrent test run " + (i + 1));
+            threads[i].start();
+        }
+
+        long started;
+        try {
+            // all threads start at once, after their tests are discovered
+            ready.await();
+            started = System.nanoTime();
+            deadline[0] = started + myDuration;
+            start.countDown();
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -2;
+        }
+        long elapsed = System.nanoTime() - started;
+        return report(writer, listeners, errors, elapsed);
+    }
+
+    private Thread newThread(Runnable runnable, String name) {
+        if (myVirtual) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+                Method unstarted = builderClass.getMethod("unstarted", Runnable.class);
+                Thread thread = (Thread)unstarted.invoke(builder, runnable);
+                myVirtualStarted = true;
+                return thread;
+            }
+            catch (Exception ignored) {
+                // no virtual threads before Java 21
+            }
+        }
+        return new Thread(runnable, name);
+    }
+
+    private int report(TestEventsWriter writer, Listener[] listeners, Throwable[] errors, long elapsed) {
+        TestNodeIds ids = new TestNodeIds();
+        String suiteId = ids.next();
+        String suiteName = "Concurrent run on " + myThreads + (myVirtualStarted ? " virtual" : "") + " threads";
+        writer.message("testSuiteStarted", "id", suiteId, "name", suiteName, "nodeId", suiteId, "parentNodeId", TestNodeIds.getRootId());
+        DurationHistogram durations = new DurationHistogram();
+        long invocations = 0;
+        long failures = 0;
+        for (int i = 0; i < listeners.length; i++) {
+            Listener listener = listeners[i];
+            String id = ids.next();
+            String threadName = "Thread " + (i + 1);
+            writer.message("testStarted", "id", id, "name", threadName, "nodeId", id, "parentNodeId", suiteId);
+            writer.message("testStdOut", "id", id, "name", threadName, "nodeId", id, "parentNodeId", suiteId,
+                           "out", "Invocations: " + listener.myInvocations + ", failed: " + listener.myFailures + "\n" +
+                                  format(listener.myDurations) + "\n");
+            Throwable failure = errors[i] != null ? errors[i] : listener.myFirstFailure;
+            if (failure != null || listener.myFailures > 0) {
+                String message = errors[i] != null ? "Thread failed" : "Failed in " + listener.myFailures + " of " + listener.myInvocations + " invocations";
+                writer.message(MapSerializerUtil.TEST_FAILED, "id", id, "name", threadName, "nodeId", id, "parentNodeId", suiteId,
+                               "message", failure != null && failure.getMessage() != null ? message + ": " + failure.getMessage() : message,
+                               "details", failure != null ? TraceEncoder.getTrace(failure) : null);
+            }
+            writer.message("testFinished", "id", id, "name", threadName, "nodeId", id, "parentNodeId", suiteId);
+            durations.add(listener.myDurations);
+            invocations += listener.myInvocations;
+            failures += listener.myFailures + (errors[i] != null ? 1 : 0);
+        }
+        writer.message("testSuiteFinished", "id", suiteId, "name", suiteName, "nodeId", suiteId, "parentNodeId", TestNodeIds.getRootId());
+
+        double seconds = elapsed / 1e9;
+        writer.text("Concurrent run: " + invocations + " invocations on " + myThreads + " threads in " + DurationHistogram.formatMillis(elapsed) +
+                    ", " + Math.round(invocations / Math.max(seconds, 1e-9)) + " ops/s, failed: " + failures);
+        writer.text(format(durations));
+        writer.flush();
+        return failures > 0 ? -1 : 0;
+    }
+
+    private static String format(DurationHistogram durations) {
+        return "Duration: p50 " + DurationHistogram.formatMillis(durations.getPercentile(50)) +
+               ", p90 " + DurationHistogram.formatMillis(durations.getPercentile(90)) +
+               ", p99 " + DurationHistogram.formatMillis(durations.getPercentile(99)) +
+               ", max " + DurationHistogram.formatMillis(durations.getMax());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Test classes sent by the IDE while it's still searching for them, so the first classes run before the search is over.
+ * <p>
+ * The IDE writes the package name, category and filters of the classes list as UTF strings, then <code>true</code> followed by
+ * the name of every found class, and <code>false</code> once the search is over and the classes list file is written.
+ *
+ * @see JUnitStarter#DISCOVERY_SOCKET
+ */
+public class TestClassesStream {
+    private final Socket mySocket;
+    private final String myPackageName;
+    private final String myCategory;
+    private final String myFilters;
+    private final LinkedList myClassNames = new LinkedList();
+    private final Set myReceived = new HashSet();
+    private boolean myFinished;
+
+    private TestClassesStream(Socket socket, String packageName, String category, String filters) {
+        mySocket = socket;
+        myPackageName = packageName;
+        myCategory = category;
+        myFilters = filters;
+    }
+
+    public static void writeHeader(DataOutputStream out, String packageName, String category, String filters) throws IOException {
+        out.writeUTF(packageName != null ? packageName : "");
+        out.writeUTF(category != null ? category : "");
+        out.writeUTF(filters != null ? filters : "");
+    }
+
+    public static void writeClass(DataOutputStream out, String className) throws IOException {
+        out.writeBoolean(true);
+        out.writeUTF(className);
+    }
+
+    public static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeBoolean(false);
+        out.flush();
+    }
+
+    /**
+     * Connects to the IDE and starts to receive the classes in background, so the IDE isn't blocked while the tests run.
+     */
+    public static TestClassesStream connect(int port) throws IOException {
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final TestClassesStream stream = new TestClassesStream(socket, in.readUTF(), in.readUTF(), in.readUTF());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stream.receive(in);
+            }
+        }, "Receive test classes");
+        thread.setDaemon(true);
+        thread.start();
+        return stream;
+    }
+
+    private void receive(DataInputStream in) {
+        try {
+            while (in.readBoolean()) {
+                String className = in.readUTF();
+                synchronized (this) {
+                    // a search which is restarted sends the classes it has found again
+                    if (myReceived.add(className)) {
+                        myClassNames.add(className);
+                        notifyAll();
+                    }
+                }
+            }
+        }
+        catch (IOException ignored) {
+            // the IDE has gone, run what was received
+        }
+        finally {
+            synchronized (this) {
+                myFinished = true;
+                notifyAll();
+            }
+            try {
+                mySocket.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Waits for classes which were not taken yet.
+     *
+     * @return all classes received since the previous batch, <code>null</code> when the search is over and all classes were taken
+     */
+    public synchronized List nextBatch() throws InterruptedException {
+        while (myClassNames.isEmpty() && !myFinished) {
+            wait();
+        }
+        if (myClassNames.isEmpty()) {
+            return null;
+        }
+        List batch = new ArrayList(myClassNames);
+        myClassNames.clear();
+        return batch;
+    }
+
+    /**
+     * Waits for the end of the search when the classes are taken from the classes list file instead.
+     */
+    public synchronized void waitForEnd() throws InterruptedException {
+        while (!myFinished) {
+            wait();
+        }
+    }
+
+    /**
+     * @return whether any class was received
+     */
+    public synchronized boolean isEmpty() {
+        return myReceived.isEmpty();
+    }
+
+    public String getPackageName() {
+        return myPackageName;
+    }
+
+    public String getCategory() {
+        return myCategory;
+    }
+
+    public String getFilters() {
+        return myFilters;
+    }
+}
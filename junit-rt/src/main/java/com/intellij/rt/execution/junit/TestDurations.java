@@ -0,0 +1,307 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * History of test class durations, used to balance forks and shards.
+ * <p>
+ * Durations of the tests are summed up per class during the run and merged into the history file given by
+ * {@link #DURATIONS_PROPERTY} at its end; the file is shared by all processes of the run and keeps the last duration of every class.
+ * The file counts the runs saved into it, and classes not run in the last {@link #MAX_UNSEEN_RUNS} runs are dropped.
+ * <pre>
+ * #runs TAB count
+ * duration TAB number of the run the class was last recorded in TAB class name
+ * </pre>
+ * Shards are split by a snapshot of the history which no shard writes, see {@link #partition(List, int, Map)}, since the shards
+ * of a run start at different times and the history file changes as they finish.
+ */
+public class TestDurations {
+    public static final String DURATIONS_PROPERTY = "idea.junit.durations";
+
+    static final int MAX_UNSEEN_RUNS = 50;
+    private static final String RUNS_HEADER = "#runs\t";
+
+    private static final Map ourRecorded = new ConcurrentHashMap();
+    private static volatile Map ourHistory;
+
+    public static boolean isEnabled() {
+        return System.getProperty(DURATIONS_PROPERTY) != null;
+    }
+
+    public static void record(String className, long duration) {
+        if (className == null || !isEnabled()) {
+            return;
+        }
+        AtomicLong total = (AtomicLong)ourRecorded.get(className);
+        if (total == null) {
+            AtomicLong newTotal = new AtomicLong();
+            total = (AtomicLong)ourRecorded.putIfAbsent(className, newTotal);
+            if (total == null) {
+                total = newTotal;
+            }
+        }
+        total.addAndGet(duration);
+    }
+
+    /**
+     * @return duration of the class in the last run it was recorded in, <code>-1</code> if unknown
+     */
+    public static long getDuration(String className) {
+        return getDuration(getHistory(), className);
+    }
+
+    private static long getDuration(Map history, String className) {
+        Long duration = (Long)history.get(className);
+        return duration != null ? duration.longValue() : -1;
+    }
+
+    /**
+     * Reads a history file without making it the history of this process.
+     *
+     * @return durations by class names
+     */
+    public static Map readSnapshot(String path) throws IOException {
+        RandomAccessFile historyFile = new RandomAccessFile(path, "r");
+        try {
+            Map durations = new HashMap();
+            read(historyFile, durations, null);
+            return durations;
+        }
+        finally {
+            historyFile.close();
+        }
+    }
+
+    /**
+     * Merges the durations recorded by this process into the history file.
+     *
+     * @param endOfRun whether this process started the run, i.e. isn't a fork, so the run is counted
+     */
+    public static void save(boolean endOfRun) {
+        String path = System.getProperty(DURATIONS_PROPERTY);
+        if (path == null || ourRecorded.isEmpty() && !(endOfRun && new File(path).isFile())) {
+            return;
+        }
+        try {
+            File file = new File(path);
+            File directory = file.getParentFile();
+            if (directory != null) {
+                directory.mkdirs();
+            }
+            RandomAccessFile historyFile = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = historyFile.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    Map durations = new HashMap();
+                    Map lastRuns = new HashMap();
+                    long runs = read(historyFile, durations, lastRuns);
+                    // forks save before the process which started them, so all classes of a run get the same number
+                    for (Iterator iterator = ourRecorded.entrySet().iterator(); iterator.hasNext(); ) {
+                        Map.Entry entry = (Map.Entry)iterator.next();
+                        durations.put(entry.getKey(), Long.valueOf(((AtomicLong)entry.getValue()).get()));
+                        lastRuns.put(entry.getKey(), Long.valueOf(runs));
+                    }
+                    if (endOfRun) {
+                        runs++;
+                    }
+                    StringBuilder builder = new StringBuilder();
+                    builder.append(RUNS_HEADER).append(runs).append('\n');
+                    for (Iterator iterator = durations.entrySet().iterator(); iterator.hasNext(); ) {
+                        Map.Entry entry = (Map.Entry)iterator.next();
+                        long lastRun = ((Long)lastRuns.get(entry.getKey())).longValue();
+                        if (runs - lastRun <= MAX_UNSEEN_RUNS) {
+                            builder.append(entry.getValue()).append('\t').append(lastRun).append('\t').append(entry.getKey()).append('\n');
+                        }
+                    }
+                    channel.truncate(0);
+                    channel.write(ByteBuffer.wrap(builder.toString().getBytes("UTF-8")), 0);
+                    ourRecorded.clear();
+                }
+                finally {
+                    lock.release();
+                }
+            }
+            finally {
+                historyFile.close();
+            }
+        }
+        catch (IOException ignored) {
+            // the history is only a hint for the scheduling
+        }
+    }
+
+    /**
+     * Sorts class names longest first; classes without history are estimated with the average duration.
+     * Taking them in this order by a pool of forks is the longest-processing-time-first schedule.
+     */
+    public static void sortLongestFirst(List classNames) {
+        sortLongestFirst(classNames, estimate(classNames));
+    }
+
+    private static void sortLongestFirst(List classNames, final Map estimates) {
+        Collections.sort(classNames, new Comparator() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                return ((Long)estimates.get(o2)).compareTo((Long)estimates.get(o1));
+            }
+        });
+    }
+
+    /**
+     * Splits the classes into shards. The split depends only on the class names and <code>snapshot</code>, which must be the same
+     * for all shards of a run, so every shard computes the same partition.
+     *
+     * @param snapshot durations to balance the shards by with longest-processing-time-first bin packing, see {@link #readSnapshot(String)};
+     *                 <code>null</code> to split by the hash of the class name
+     * @return lists of class names of the shards
+     */
+    public static List partition(List classNames, int shardCount, Map snapshot) {
+        List shards = new ArrayList(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList());
+        }
+        List sorted = new ArrayList(classNames);
+        Collections.sort(sorted);
+        if (snapshot == null) {
+            // String.hashCode() is specified, so it's the same in every JVM
+            for (int i = 0; i < sorted.size(); i++) {
+                String className = (String)sorted.get(i);
+                ((List)shards.get((className.hashCode() & Integer.MAX_VALUE) % shardCount)).add(className);
+            }
+            return shards;
+        }
+
+        Map estimates = estimate(sorted, snapshot);
+        sortLongestFirst(sorted, estimates);
+        long[] loads = new long[shardCount];
+        for (int i = 0; i < sorted.size(); i++) {
+            int lightest = 0;
+            for (int shard = 1; shard < shardCount; shard++) {
+                if (loads[shard] < loads[lightest]) {
+                    lightest = shard;
+                }
+            }
+            Object className = sorted.get(i);
+            ((List)shards.get(lightest)).add(className);
+            loads[lightest] += ((Long)estimates.get(className)).longValue();
+        }
+        return shards;
+    }
+
+    /**
+     * @return durations of the classes by their names; classes without history are estimated with the average duration
+     */
+    public static Map estimate(List classNames) {
+        return estimate(classNames, getHistory());
+    }
+
+    private static Map estimate(List classNames, Map history) {
+        Map estimates = new HashMap();
+        long known = 0;
+        int knownCount = 0;
+        for (int i = 0; i < classNames.size(); i++) {
+            long duration = getDuration(history, (String)classNames.get(i));
+            if (duration >= 0) {
+                known += duration;
+                knownCount++;
+            }
+        }
+        long average = knownCount > 0 ? Math.max(known / knownCount, 1) : 1;
+        for (int i = 0; i < classNames.size(); i++) {
+            long duration = getDuration(history, (String)classNames.get(i));
+            estimates.put(classNames.get(i), Long.valueOf(duration >= 0 ? duration : average));
+        }
+        return estimates;
+    }
+
+    private static Map getHistory() {
+        Map history = ourHistory;
+        if (history == null) {
+            history = new HashMap();
+            String path = System.getProperty(DURATIONS_PROPERTY);
+            if (path != null && new File(path).isFile()) {
+                try {
+                    history = readSnapshot(path);
+                }
+                catch (IOException ignored) {
+                }
+            }
+            ourHistory = history;
+        }
+        return history;
+    }
+
+    /**
+     * @param lastRuns receives the numbers of the runs the classes were last recorded in, <code>null</code> if not needed
+     * @return number of the runs saved into the file
+     */
+    private static long read(RandomAccessFile file, Map durations, Map lastRuns) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        file.seek(0);
+        int length;
+        while ((length = file.read(buffer)) > 0) {
+            bytes.write(buffer, 0, length);
+        }
+        String[] lines = bytes.toString("UTF-8").split("\n");
+        long runs = 0;
+        if (lines.length > 0 && lines[0].startsWith(RUNS_HEADER)) {
+            try {
+                runs = Long.parseLong(lines[0].substring(RUNS_HEADER.length()));
+            }
+            catch (NumberFormatException ignored) {
+            }
+        }
+        for (int i = 0; i < lines.length; i++) {
+            int tab = lines[i].indexOf('\t');
+            if (tab <= 0 || lines[i].startsWith(RUNS_HEADER)) {
+                continue;
+            }
+            int nameTab = lines[i].indexOf('\t', tab + 1);
+            try {
+                Long duration = Long.valueOf(lines[i].substring(0, tab));
+                // classes of histories written before the runs were counted are taken as seen in the last run
+                Long lastRun = nameTab != -1 ? Long.valueOf(lines[i].substring(tab + 1, nameTab)) : Long.valueOf(runs);
+                String className = lines[i].substring(nameTab != -1 ? nameTab + 1 : tab + 1);
+                durations.put(className, duration);
+                if (lastRuns != null) {
+                    lastRuns.put(className, lastRun);
+                }
+            }
+            catch (NumberFormatException ignored) {
+            }
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+
+/**
+ * Sink for the test events reported by the listeners.
+ * <p>
+ * Attributes are passed as name/value pairs, pairs with <code>null</code> value are skipped.
+ * Implementations must be safe to call from several threads.
+ */
+public abstract class TestEventsWriter {
+    private static Socket ourChannelSocket;
+    private static BinaryTestEventsWriter ourChannelWriter;
+    private static PrintStream ourSystemOut;
+    private static PrintStream ourSystemErr;
+    private static AsyncTestEventsWriter ourAsyncWriter;
+    private static RepeatStatisticsWriter ourStatisticsWriter;
+
+    public abstract void message(String messageName, String... attributes);
+
+    public abstract void message(String messageName, Map attributes);
+
+    /**
+     * Plain output line which is not a service message
+     */
+    public abstract void text(String text);
+
+    public void flush() {
+    }
+
+    /**
+     * Connects to the IDE events channel; on failure events continue to be printed as text.
+     * <code>System.out</code> and <code>System.err</code> are sent over the channel too until {@link #shutdown()},
+     * otherwise the IDE couldn't tell which test the output belongs to.
+     */
+    public static synchronized void connect(int port) {
+        try {
+            Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+            socket.setTcpNoDelay(true);
+            BinaryTestEventsWriter writer = new BinaryTestEventsWriter(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            TestListFiles.connect(socket.getInputStream());
+            String encoding = TextTestEventsWriter.getConsoleEncoding();
+            PrintStream out = new PrintStream(writer.getOutput(BinaryTestEventsProtocol.STDOUT, encoding), true, encoding);
+            PrintStream err = new PrintStream(writer.getOutput(BinaryTestEventsProtocol.STDERR, encoding), true, encoding);
+            ourChannelWriter = writer;
+            ourChannelSocket = socket;
+            ourSystemOut = System.out;
+            ourSystemErr = System.err;
+            System.setOut(out);
+            System.setErr(err);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts {@link AsyncTestEventsWriter} if it's requested by {@link AsyncTestEventsWriter#ASYNC_EVENTS_PROPERTY}
+     */
+    public static synchronized void startAsyncIfEnabled() {
+        if (ourAsyncWriter == null && AsyncTestEventsWriter.isEnabled()) {
+            ourAsyncWriter = AsyncTestEventsWriter.install(ourChannelWriter);
+        }
+    }
+
+    /**
+     * Starts {@link RepeatStatisticsWriter} for the listeners created from now on if the run is repeated
+     * and the statistics are requested by {@link RepeatStatisticsWriter#STATISTICS_PROPERTY}
+     */
+    public static synchronized void startRepeatStatisticsIfEnabled(int count) {
+        if (count != 1 && RepeatStatisticsWriter.isEnabled()) {
+            startRepeatStatistics(count == RepeatCount.getCount(RepeatCount.UNLIMITED));
+        }
+    }
+
+    /**
+     * @param reportOnExit whether the statistics are to be reported when the process is stopped, for the runs which never end
+     */
+    static synchronized RepeatStatisticsWriter startRepeatStatistics(boolean reportOnExit) {
+        if (ourStatisticsWriter == null) {
+            ourStatisticsWriter = RepeatStatisticsWriter.install(create(System.out), reportOnExit);
+        }
+        return ourStatisticsWriter;
+    }
+
+    /**
+     * Reports the statistics of the repeated run if they were collected.
+     */
+    public static synchronized void stopRepeatStatistics() {
+        if (ourStatisticsWriter != null) {
+            ourStatisticsWriter.report();
+            ourStatisticsWriter = null;
+        }
+    }
+
+    /**
+     * Writes out pending events and closes the events channel; to be called before the runtime exits.
+     */
+    public static synchronized void shutdown() {
+        if (ourAsyncWriter != null) {
+            ourAsyncWriter.stop();
+        }
+        TraceEncoder.closeFullTraces();
+        if (ourChannelSocket != null) {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(ourSystemOut);
+            System.setErr(ourSystemErr);
+            ourSystemOut = null;
+            ourSystemErr = null;
+            ourChannelWriter.flush();
+            try {
+                ourChannelSocket.close();
+            }
+            catch (IOException ignored) {
+            }
+            ourChannelSocket = null;
+            ourChannelWriter = null;
+        }
+    }
+
+    /**
+     * @return writer of the repeat statistics, shared asynchronous writer or writer for the events channel if any,
+     * text writer to <code>fallback</code> otherwise
+     */
+    public static synchronized TestEventsWriter create(PrintStream fallback) {
+        if (ourStatisticsWriter != null) {
+            return ourStatisticsWriter;
+        }
+        if (ourAsyncWriter != null) {
+            return ourAsyncWriter;
+        }
+        if (ourChannelWriter != null) {
+            return ourChannelWriter;
+        }
+        return new TextTestEventsWriter(fallback);
+    }
+}
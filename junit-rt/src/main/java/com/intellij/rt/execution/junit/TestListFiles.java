@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lists of classes and listeners passed by the IDE as <code>@file</code> arguments.
+ * <p>
+ * Lists known before the test process starts are sent by the IDE in the reverse direction of the events channel
+ * instead of being written to the files: every list as the UTF path of its argument, <code>int</code> length and UTF-8 content,
+ * the lists end with an empty path. Lists which were not sent, e.g. the ones found by a search while the process runs, are read from the files.
+ */
+public class TestListFiles {
+    private static final Map ourContents = new HashMap();
+    private static DataInputStream ourInput;
+
+    public static void writeFile(DataOutputStream out, String path, byte[] content) throws IOException {
+        out.writeUTF(path);
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    public static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeUTF("");
+        out.flush();
+    }
+
+    /**
+     * @param input stream of the events channel, the lists are read from it when the first of them is needed
+     */
+    static synchronized void connect(InputStream input) {
+        ourInput = new DataInputStream(new BufferedInputStream(input));
+    }
+
+    public static boolean exists(String path) {
+        receive();
+        synchronized (TestListFiles.class) {
+            return ourContents.containsKey(path) || new File(path).exists();
+        }
+    }
+
+    /**
+     * @param path path of the <code>@file</code> argument
+     * @return reader of the list sent over the events channel, of the file if it was not sent
+     */
+    public static BufferedReader openReader(String path) throws IOException {
+        receive();
+        InputStream stream;
+        synchronized (TestListFiles.class) {
+            byte[] content = (byte[])ourContents.get(path);
+            stream = content != null ? (InputStream)new ByteArrayInputStream(content) : new FileInputStream(path);
+        }
+        return new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+    }
+
+    private static synchronized void receive() {
+        if (ourInput == null) {
+            return;
+        }
+        try {
+            String path;
+            while ((path = ourInput.readUTF()).length() > 0) {
+                byte[] content = new byte[ourInput.readInt()];
+                ourInput.readFully(content);
+                ourContents.put(path, content);
+            }
+        }
+        catch (IOException ignored) {
+            // the IDE has not sent the lists, they are in the files
+        }
+        finally {
+            ourInput = null;
+        }
+    }
+}
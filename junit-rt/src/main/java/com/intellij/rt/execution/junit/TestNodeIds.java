@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates <code>nodeId</code>s of the JUnit 3/4 test trees.
+ * <p>
+ * Ids are unique within the process; forked processes report into the same tree, so their ids get a process specific prefix.
+ * Ids never start with <code>[</code> to be distinguishable from JUnit 5 unique ids.
+ */
+public class TestNodeIds {
+    public static final String ROOT_ID = "0";
+    /**
+     * Set by {@link JUnitForkedSplitter} for the forks it runs at once
+     */
+    public static final String FORK_ID_PROPERTY = "idea.junit.fork.id";
+    /**
+     * Set by {@link JUnitForkedSplitter} for the forks whose tests are grouped under a node reported by the splitting process
+     */
+    public static final String PARENT_ID_PROPERTY = "idea.junit.fork.parent";
+
+    private static volatile String ourPrefix = "";
+    private static volatile String ourRootId = ROOT_ID;
+
+    private final AtomicInteger myLastId = new AtomicInteger();
+
+    /**
+     * To be called once by the forked process before any test is started.
+     */
+    public static void initializeForked() {
+        ourPrefix = getForkId() + ".";
+        ourRootId = System.getProperty(PARENT_ID_PROPERTY, ROOT_ID);
+    }
+
+    /**
+     * @return id of the node the top level suites of this process are reported under
+     */
+    public static String getRootId() {
+        return ourRootId;
+    }
+
+    /**
+     * @return id of the current forked process, unique among the forks of the run
+     */
+    public static String getForkId() {
+        String forkId = System.getProperty(FORK_ID_PROPERTY);
+        return forkId != null ? forkId : Long.toString(System.nanoTime(), 36);
+    }
+
+    public String next() {
+        return toId(nextNumber());
+    }
+
+    /**
+     * @return number of the next node, a compact form of its id kept by the listeners of large runs
+     */
+    public int nextNumber() {
+        return myLastId.incrementAndGet();
+    }
+
+    public static String toId(int number) {
+        return ourPrefix + number;
+    }
+}
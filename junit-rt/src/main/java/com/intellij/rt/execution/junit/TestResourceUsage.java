@@ -0,0 +1,182 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CPU time and allocated bytes of a test, enabled by {@link #RESOURCES_PROPERTY} and reported as {@link #CPU_NANOS} and
+ * {@link #ALLOCATED_BYTES} attributes of the message finishing the test.
+ * <p>
+ * The usage of the thread running the test is measured between its start and finish. The threads started while the test runs,
+ * e.g. its worker threads, are added with all their usage if they are still alive when the test finishes; they are not added
+ * if other tests run at the same time, as there is no telling whose they are. Threads of pools created before the test are not counted.
+ */
+public class TestResourceUsage {
+    public static final String RESOURCES_PROPERTY = "idea.junit.resources";
+
+    public static final String CPU_NANOS = "cpuNanos";
+    public static final String ALLOCATED_BYTES = "allocatedBytes";
+
+    private static final AtomicInteger ourRunning = new AtomicInteger();
+    private static final AtomicLong ourStarted = new AtomicLong();
+    private static volatile ThreadMXBean ourBean;
+    private static volatile com.sun.management.ThreadMXBean ourAllocationBean;
+    private static volatile boolean ourInitialized;
+
+    private final long myThreadId;
+    private final long myCpuTime;
+    private final long myAllocated;
+    /**
+     * Sorted ids of the threads alive at the start
+     */
+    private final long[] myThreadIds;
+    private final long myStartNumber;
+    private final boolean myConcurrent;
+    private boolean myFinished;
+
+    private TestResourceUsage(long threadId, long cpuTime, long allocated, long[] threadIds, long startNumber, boolean concurrent) {
+        myThreadId = threadId;
+        myCpuTime = cpuTime;
+        myAllocated = allocated;
+        myThreadIds = threadIds;
+        myStartNumber = startNumber;
+        myConcurrent = concurrent;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(RESOURCES_PROPERTY);
+    }
+
+    /**
+     * Called on the thread running the test when it starts.
+     *
+     * @return <code>null</code> if disabled or the JVM can't measure threads
+     */
+    public static TestResourceUsage start() {
+        if (!isEnabled() || !initialize()) {
+            return null;
+        }
+        boolean concurrent = ourRunning.getAndIncrement() > 0;
+        long startNumber = ourStarted.incrementAndGet();
+        long threadId = Thread.currentThread().getId();
+        long[] threadIds = ourBean.getAllThreadIds();
+        Arrays.sort(threadIds);
+        return new TestResourceUsage(threadId, getCpuTime(threadId), getAllocatedBytes(threadId), threadIds, startNumber, concurrent);
+    }
+
+    /**
+     * @return <code>attributes</code> followed by the usage of the test since {@link #start()}, unchanged if <code>usage</code> is <code>null</code>
+     */
+    public static String[] finish(TestResourceUsage usage, String[] attributes) {
+        if (usage == null) {
+            return attributes;
+        }
+        String[] result = new String[attributes.length + 4];
+        System.arraycopy(attributes, 0, result, 0, attributes.length);
+        result[attributes.length] = CPU_NANOS;
+        result[attributes.length + 2] = ALLOCATED_BYTES;
+        usage.finish(result, attributes.length + 1, attributes.length + 3);
+        return result;
+    }
+
+    private synchronized void finish(String[] result, int cpuIndex, int allocatedIndex) {
+        if (myFinished) {
+            return;
+        }
+        myFinished = true;
+        boolean concurrent = myConcurrent || ourStarted.get() != myStartNumber;
+        ourRunning.decrementAndGet();
+
+        long cpuTime = getCpuTime(myThreadId);
+        long allocated = getAllocatedBytes(myThreadId);
+        cpuTime = cpuTime >= 0 && myCpuTime >= 0 ? cpuTime - myCpuTime : -1;
+        allocated = allocated >= 0 && myAllocated >= 0 ? allocated - myAllocated : -1;
+        if (!concurrent) {
+            long[] threadIds = ourBean.getAllThreadIds();
+            for (int i = 0; i < threadIds.length; i++) {
+                long threadId = threadIds[i];
+                if (threadId != myThreadId && Arrays.binarySearch(myThreadIds, threadId) < 0) {
+                    cpuTime = add(cpuTime, getCpuTime(threadId));
+                    allocated = add(allocated, getAllocatedBytes(threadId));
+                }
+            }
+        }
+        result[cpuIndex] = cpuTime >= 0 ? Long.toString(cpuTime) : null;
+        result[allocatedIndex] = allocated >= 0 ? Long.toString(allocated) : null;
+    }
+
+    private static long add(long total, long value) {
+        return total >= 0 && value >= 0 ? total + value : total;
+    }
+
+    private static boolean initialize() {
+        if (!ourInitialized) {
+            synchronized (TestResourceUsage.class) {
+                if (!ourInitialized) {
+                    try {
+                        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                        if (bean.isThreadCpuTimeSupported() && !bean.isThreadCpuTimeEnabled()) {
+                            bean.setThreadCpuTimeEnabled(true);
+                        }
+                        if (bean instanceof com.sun.management.ThreadMXBean) {
+                            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)bean;
+                            if (allocationBean.isThreadAllocatedMemorySupported()) {
+                                if (!allocationBean.isThreadAllocatedMemoryEnabled()) {
+                                    allocationBean.setThreadAllocatedMemoryEnabled(true);
+                                }
+                                ourAllocationBean = allocationBean;
+                            }
+                        }
+                        ourBean = bean;
+                    }
+                    catch (Throwable e) {
+                        // no management or no com.sun.management on this JVM
+                    }
+                    ourInitialized = true;
+                }
+            }
+        }
+        return ourBean != null;
+    }
+
+    /**
+     * @return <code>-1</code> if unknown, e.g. the thread is over
+     */
+    private static long getCpuTime(long threadId) {
+        ThreadMXBean bean = ourBean;
+        try {
+            return bean.isThreadCpuTimeEnabled() ? bean.getThreadCpuTime(threadId) : -1;
+        }
+        catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static long getAllocatedBytes(long threadId) {
+        com.sun.management.ThreadMXBean bean = ourAllocationBean;
+        try {
+            return bean != null ? bean.getThreadAllocatedBytes(threadId) : -1;
+        }
+        catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Prints events as <code>##teamcity[...]</code> lines into the stream shared with the tests output.
+ * Messages sent while tests are running start from a new line, so they are not glued to the unfinished output of a test.
+ * <p>
+ * Messages are encoded into bytes by the {@link ServiceMessageEncoder} of the calling thread, the stream is locked only
+ * to copy those bytes into it.
+ */
+public class TextTestEventsWriter extends TestEventsWriter {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    /**
+     * <code>PrintStream.charset()</code> of Java 18+
+     */
+    private static final Method ourCharsetMethod = getCharsetMethod();
+
+    private final PrintStream myPrintStream;
+    private final Charset myCharset;
+
+    /**
+     * @param printStream stream to write the messages with its own charset where it's known, otherwise with the console encoding
+     */
+    public TextTestEventsWriter(PrintStream printStream) {
+        this(printStream, getEncoding(printStream));
+    }
+
+    public TextTestEventsWriter(PrintStream printStream, String encoding) {
+        myPrintStream = printStream;
+        myCharset = Charset.isSupported(encoding) ? Charset.forName(encoding) : Charset.defaultCharset();
+    }
+
+    /**
+     * @return encoding of <code>System.out</code>
+     */
+    public static String getConsoleEncoding() {
+        return getEncoding(System.out);
+    }
+
+    /**
+     * @return charset of the stream on Java 18+, where <code>System.out</code> uses <code>stdout.encoding</code>,
+     * otherwise the encoding the JVM gives <code>System.out</code>
+     */
+    private static String getEncoding(PrintStream stream) {
+        if (ourCharsetMethod != null) {
+            try {
+                return ((Charset)ourCharsetMethod.invoke(stream)).name();
+            }
+            catch (Exception ignored) {
+            }
+        }
+        String encoding = System.getProperty("stdout.encoding");
+        if (encoding == null || !Charset.isSupported(encoding)) {
+            encoding = System.getProperty("sun.stdout.encoding");
+        }
+        if (encoding == null || !Charset.isSupported(encoding)) {
+            encoding = Charset.defaultCharset().name();
+        }
+        return encoding;
+    }
+
+    private static Method getCharsetMethod() {
+        try {
+            return PrintStream.class.getMethod("charset");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void message(String messageName, String... attributes) {
+        write(messageName, ServiceMessageEncoder.forCurrentThread().encode(messageName, attributes));
+    }
+
+    @Override
+    public void message(String messageName, Map attributes) {
+        write(messageName, ServiceMessageEncoder.forCurrentThread().encode(messageName, attributes));
+    }
+
+    private void write(String messageName, ServiceMessageEncoder encoder) {
+        ByteBuffer bytes = encoder.toBytes(myCharset, isTreeMessage(messageName) ? null : LINE_SEPARATOR, LINE_SEPARATOR);
+        // the print stream locks itself and flushes after the write if it's configured to
+        myPrintStream.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+    }
+
+    @Override
+    public void text(String text) {
+        myPrintStream.println(text);
+    }
+
+    @Override
+    public void flush() {
+        myPrintStream.flush();
+    }
+
+    static boolean isTreeMessage(String messageName) {
+        return messageName.startsWith("suiteTree") ||
+            messageName.equals("treeEnded") ||
+            messageName.equals("rootName") ||
+            messageName.equals("enteredTheMatrix") ||
+            messageName.equals("testCount");
+    }
+}
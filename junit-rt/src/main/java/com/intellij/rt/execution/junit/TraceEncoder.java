@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.rt.execution.junit;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded stack traces of the failures, enabled by {@link #COMPACT_PROPERTY}, for runs where thousands of tests fail with the same trace.
+ * <p>
+ * The trace is written as {@link Throwable#printStackTrace()} does, but without the {@link #FRAMEWORK_FRAMES}, with at most
+ * {@link #MAX_FRAMES} frames per exception and {@link #MAX_EXCEPTIONS} exceptions, and a cause with the same frames as an exception
+ * above it is written without them. Every trace gets a number: a trace sent already is replaced by its first line, the first frame
+ * of the test code and the number. If {@link #FULL_TRACES_PROPERTY} is set, the full traces are written to that file under their numbers
+ * and both lines end with {@link #FULL_TRACE_IN} and the file, which the IDE console links to the trace; forks write to the file with
+ * their fork id appended. The IDE deletes these files with the console of the run.
+ * <p>
+ * The numbers start over with every run, as the runs of a daemon report to different consoles.
+ */
+public class TraceEncoder {
+    public static final String COMPACT_PROPERTY = "idea.junit.compact.traces";
+    public static final String FULL_TRACES_PROPERTY = "idea.junit.full.traces";
+    public static final String FULL_TRACE_IN = ", full trace in ";
+
+    /**
+     * Frames of the test frameworks and of this runtime, the IDE folds them in the console
+     */
+    public static final String[] FRAMEWORK_FRAMES = {
+        "org.junit.internal.runners.",
+        "org.junit.runners.",
+        "org.junit.runner.JUnitCore.",
+        "org.junit.Assert.fail(",
+        "org.junit.Assert.failNotSame(",
+        "org.junit.Assert.failSame(",
+        "junit.framework.Assert.assert",
+        "junit.framework.Assert.fail(",
+        "junit.framework.Assert.failNotSame(",
+        "junit.framework.Assert.failSame(",
+        "org.junit.Assert.internalArrayEquals(",
+        "org.junit.internal.ComparisonCriteria.arrayEquals(",
+        "org.junit.Assert.assert",
+        "com.intellij.junit3.",
+        "com.intellij.junit4.",
+        "com.intellij.junit5.",
+        "junit.framework.TestSuite.run",
+        "junit.framework.TestCase.run",
+        "junit.framework.TestResult",
+        "org.junit.jupiter.api.AssertionUtils.fail(",
+        "org.junit.jupiter.api.AssertEquals.failNotEqual(",
+        "org.junit.jupiter.api.AssertEquals.assertEquals(",
+        "org.junit.jupiter.api.Assertions.assertEquals(",
+        "org.junit.platform.",
+        "org.junit.jupiter.",
+        "org.junit.vintage.",
+    };
+
+    static final int MAX_FRAMES = 64;
+    static final int MAX_EXCEPTIONS = 16;
+    /**
+     * Traces beyond this number are still numbered, but not remembered
+     */
+    private static final int MAX_REMEMBERED = 10000;
+
+    private static final Map<String, Integer> ourNumbers = new HashMap<>();
+    private static int ourLastNumber;
+    private static String ourFullTracesFile;
+    private static PrintStream ourFullTraces;
+    private static boolean ourFullTracesOpened;
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(COMPACT_PROPERTY);
+    }
+
+    /**
+     * @return full trace of <code>throwable</code> if disabled, the bounded one otherwise
+     */
+    public static String getTrace(Throwable throwable) {
+        return isEnabled() ? encode(throwable) : getFullTrace(throwable);
+    }
+
+    public static String encode(Throwable throwable) {
+        StringBuilder frames = new StringBuilder();
+        appendFrames(frames, throwable, null, "", Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()),
+                     new ArrayList<String>());
+        String header = throwable + "\n";
+        String key = frames.toString();
+
+        int number;
+        boolean sent;
+        synchronized (ourNumbers) {
+            Integer sentNumber = ourNumbers.get(key);
+            sent = sentNumber != null;
+            number = sent ? sentNumber.intValue() : ++ourLastNumber;
+            if (!sent && ourNumbers.size() < MAX_REMEMBERED) {
+                ourNumbers.put(key, Integer.valueOf(number));
+            }
+        }
+        if (sent) {
+            StackTraceElement frame = getFirstTestFrame(throwable.getStackTrace());
+            return header + (frame != null ? "\tat " + frame + "\n" : "") + "\t... same trace as #" + number + getFullTraceReference(getFullTracesFile()) + "\n";
+        }
+        String fullTracesFile = writeFullTrace(number, throwable);
+        return header + key + "\t... trace #" + number + getFullTraceReference(fullTracesFile) + "\n";
+    }
+
+    private static String getFullTraceReference(String fullTracesFile) {
+        return fullTracesFile != null ? FULL_TRACE_IN + fullTracesFile : "";
+    }
+
+    /**
+     * Appends the frames of <code>throwable</code> followed by its suppressed exceptions and its cause, the header of
+     * <code>throwable</code> itself is appended by the caller.
+     *
+     * @param signatures class names and frames of the exceptions appended already, to collapse the repeated causes
+     */
+    private static void appendFrames(
+        StringBuilder builder,
+        Throwable throwable,
+        StackTraceElement[] enclosingTrace,
+        String prefix,
+        Set<Throwable> visited,
+        List<String> signatures
+    ) {
+        visited.add(throwable);
+        StackTraceElement[] trace = throwable.getStackTrace();
+        int end = trace.length;
+        if (enclosingTrace != null) {
+            for (int i = enclosingTrace.length - 1; end > 0 && i >= 0 && trace[end - 1].equals(enclosingTrace[i]); i--) {
+                end--;
+            }
+        }
+        int common = trace.length - end;
+
+        StringBuilder frames = new StringBuilder();
+        int written = 0;
+        int trimmed = 0;
+        for (int i = 0; i < end; i++) {
+            String frame = trace[i].toString();
+            if (written >= MAX_FRAMES || isFrameworkFrame(frame)) {
+                trimmed++;
+            }
+            else {
+                frames.append(prefix).append("\tat ").append(frame).append('\n');
+                written++;
+            }
+        }
+        String signature = throwable.getClass().getName() + "\n" + frames;
+        if (signatures.contains(signature)) {
+            builder.append(prefix).append("\t... same frames as above\n");
+        }
+        else {
+            signatures.add(signature);
+            builder.append(frames);
+            if (trimmed > 0) {
+                builder.append(prefix).append("\t... ").append(trimmed).append(" frames trimmed\n");
+            }
+        }
+        if (common > 0) {
+            builder.append(prefix).append("\t... ").append(common).append(" more\n");
+        }
+
+        Throwable[] suppressed = throwable.getSuppressed();
+        for (int i = 0; i < suppressed.length; i++) {
+            appendException(builder, suppressed[i], "Suppressed: ", trace, prefix + "\t", visited, signatures);
+        }
+        Throwable cause = throwable.getCause();
+        if (cause != null) {
+            appendException(builder, cause, "Caused by: ", trace, prefix, visited, signatures);
+        }
+    }
+
+    private static void appendException(
+        StringBuilder builder,
+        Throwable throwable,
+        String caption,
+        StackTraceElement[] enclosingTrace,
+        String prefix,
+        Set<Throwable> visited,
+        List<String> signatures
+    ) {
+        if (visited.contains(throwable)) {
+            builder.append(prefix).append("\t[CIRCULAR REFERENCE: ").append(throwable).append("]\n");
+        }
+        else if (visited.size() >= MAX_EXCEPTIONS) {
+            builder.append(prefix).append(caption).append("... more exceptions trimmed\n");
+        }
+        else {
+            builder.append(prefix).append(caption).append(throwable).append('\n');
+            appendFrames(builder, throwable, enclosingTrace, prefix, visited, signatures);
+        }
+    }
+
+    private static boolean isFrameworkFrame(String frame) {
+        for (int i = 0; i < FRAMEWORK_FRAMES.length; i++) {
+            if (frame.startsWith(FRAMEWORK_FRAMES[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static StackTraceElement getFirstTestFrame(StackTraceElement[] trace) {
+        for (int i = 0; i < trace.length; i++) {
+            if (!isFrameworkFrame(trace[i].toString())) {
+                return trace[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the file the trace was written to, <code>null</code> if it's not kept
+     */
+    private static synchronized String writeFullTrace(int number, Throwable throwable) {
+        if (!ourFullTracesOpened) {
+            ourFullTracesOpened = true;
+            String fullTracesFile = System.getProperty(FULL_TRACES_PROPERTY);
+            if (fullTracesFile != null) {
+                String forkId = System.getProperty(TestNodeIds.FORK_ID_PROPERTY);
+                if (forkId != null) {
+                    fullTracesFile += "." + forkId;
+                }
+                try {
+                    // forks run one after another append to the same file
+                    ourFullTraces = new PrintStream(new BufferedOutputStream(new FileOutputStream(fullTracesFile, true), 1 << 16), false, "UTF-8");
+                    ourFullTracesFile = fullTracesFile;
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (ourFullTraces == null) {
+            return null;
+        }
+        ourFullTraces.println("#" + number);
+        throwable.printStackTrace(ourFullTraces);
+        ourFullTraces.flush();
+        return ourFullTracesFile;
+    }
+
+    private static synchronized String getFullTracesFile() {
+        return ourFullTracesFile;
+    }
+
+    /**
+     * Closes the file of the full traces at the end of the run, so a daemon running many of them doesn't keep it open,
+     * and forgets the traces sent, which the console of the next run doesn't show.
+     */
+    public static synchronized void closeFullTraces() {
+        if (ourFullTraces != null) {
+            ourFullTraces.close();
+            ourFullTraces = null;
+            ourFullTracesFile = null;
+        }
+        ourFullTracesOpened = false;
+        synchronized (ourNumbers) {
+            ourNumbers.clear();
+            ourLastNumber = 0;
+        }
+    }
+
+    private static String getFullTrace(Throwable throwable) {
+        StringWriter stringWriter = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(stringWriter));
+        return stringWriter.toString();
+    }
+}
@@ -15,9 +15,12 @@
  */
 package com.intellij.junit5;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.FutureTask;
 
 import org.junit.platform.engine.TestExecutionResult;
 import org.junit.platform.launcher.Launcher;
@@ -29,12 +32,19 @@ import org.junit.platform.launcher.core.LauncherFactory;
 import com.intellij.rt.execution.junit.IDEAJUnitListener;
 import com.intellij.rt.execution.junit.IDEAJUnitListenerEx;
 import com.intellij.rt.execution.junit.IdeaTestRunner;
+import com.intellij.rt.execution.junit.StressRun;
+
+public class JUnit5IdeaTestRunner implements IdeaTestRunner, StressRun.Target {
+    private static volatile FutureTask<Launcher> ourPrewarmedLauncher;
+    private static Method ourExecutePlanMethod;
+    private static boolean ourPlanExecutedOnce;
 
-public class JUnit5IdeaTestRunner implements IdeaTestRunner {
     private TestPlan myTestPlan;
     private List<JUnit5TestExecutionListener> myExecutionListeners = new ArrayList<>();
     private ArrayList myListeners;
     private Launcher myLauncher;
+    private LauncherDiscoveryRequest myDiscoveryRequest;
+    private String myPackageName;
 
     @Override
     public void createListeners(ArrayList listeners, int count) {
@@ -43,17 +53,48 @@ public class JUnit5IdeaTestRunner implements IdeaTestRunner {
             myExecutionListeners.add(new JUnit5TestExecutionListener());
         }
         while (--count > 0);
-        myLauncher = LauncherFactory.create();
+        myLauncher = createLauncher();
+    }
+
+    /**
+     * Creates the launcher, which loads the test engines, while the runtime waits for the test search of the IDE.
+     * The first runner takes it over, waiting for the creation to complete if it's still going on.
+     */
+    public static void prewarm() {
+        FutureTask<Launcher> launcher = new FutureTask<>(LauncherFactory::create);
+        ourPrewarmedLauncher = launcher;
+        launcher.run();
+    }
+
+    private static Launcher createLauncher() {
+        FutureTask<Launcher> launcher = ourPrewarmedLauncher;
+        ourPrewarmedLauncher = null;
+        if (launcher != null) {
+            try {
+                return launcher.get();
+            }
+            catch (Exception ignored) {
+                // the run creates its own launcher, which reports the failure
+            }
+        }
+        return LauncherFactory.create();
     }
 
     @Override
-    public int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree) {
+    public int startRunnerWithArgs(String[] args, String name, int count, boolean sendTree, boolean repeated) {
         try {
             JUnit5TestExecutionListener listener = myExecutionListeners.get(0);
             listener.initializeIdSuffix(!sendTree);
-            String[] packageNameRef = new String[1];
-            LauncherDiscoveryRequest discoveryRequest = JUnit5TestRunnerUtil.buildRequest(args, packageNameRef);
-            myTestPlan = myLauncher.discover(discoveryRequest);
+            // repeated runs of the same tests reuse the discovery request and, if the platform allows it, the test plan
+            if (!repeated || myDiscoveryRequest == null) {
+                String[] packageNameRef = new String[1];
+                myDiscoveryRequest = JUnit5TestRunnerUtil.buildRequest(args, packageNameRef);
+                myPackageName = packageNameRef[0];
+                myTestPlan = null;
+            }
+            if (myTestPlan == null) {
+                myTestPlan = myLauncher.discover(myDiscoveryRequest);
+            }
             List<TestExecutionListener> listeners = new ArrayList<>();
             listeners.add(listener);
             for (Object listenerClassName : myListeners) {
@@ -67,7 +108,7 @@ public class JUnit5IdeaTestRunner implements IdeaTestRunner {
                     if (i > 0) {
                         currentListener.initializeIdSuffix(i);
                     }
-                    currentListener.sendTree(myTestPlan, packageNameRef[0]);
+                    currentListener.sendTree(myTestPlan, myPackageName);
                 }
                 while (++i < myExecutionListeners.size());
             }
@@ -75,7 +116,7 @@ public class JUnit5IdeaTestRunner implements IdeaTestRunner {
                 listener.setTestPlan(myTestPlan);
             }
 
-            myLauncher.execute(discoveryRequest, listeners.toArray(new TestExecutionListener[0]));
+            execute(listener, listeners.toArray(new TestExecutionListener[0]));
 
             return listener.wasSuccessful() ? 0 : -1;
         }
@@ -91,11 +132,88 @@ public class JUnit5IdeaTestRunner implements IdeaTestRunner {
         }
     }
 
+    /**
+     * Executes the discovered test plan instead of the discovery request, which would discover the tests once more.
+     * Platforms before 1.4 can't execute a test plan, platforms since 1.8 execute it only once,
+     * so every run after the first one discovers the plan again.
+     */
+    private void execute(JUnit5TestExecutionListener listener, TestExecutionListener[] listeners) throws Exception {
+        Method method = getExecutePlanMethod();
+        if (method == null) {
+            myLauncher.execute(myDiscoveryRequest, listeners);
+            return;
+        }
+        try {
+            method.invoke(myLauncher, myTestPlan, listeners);
+        }
+        catch (InvocationTargetException e) {
+            if (!isPreconditionViolation(e.getCause())) {
+                throw e;
+            }
+            ourPlanExecutedOnce = true;
+            myTestPlan = myLauncher.discover(myDiscoveryRequest);
+            listener.setTestPlan(myTestPlan);
+            method.invoke(myLauncher, myTestPlan, listeners);
+        }
+        if (ourPlanExecutedOnce) {
+            myTestPlan = null;
+        }
+    }
+
+    /**
+     * The exception moved from <code>org.junit.platform.commons.util</code> to <code>org.junit.platform.commons</code> in platform 1.5,
+     * the runtime compiles against 1.0
+     */
+    private static boolean isPreconditionViolation(Throwable e) {
+        return e != null && (e.getClass().getName().equals("org.junit.platform.commons.PreconditionViolationException") ||
+                             e.getClass().getName().equals("org.junit.platform.commons.util.PreconditionViolationException"));
+    }
+
+    private static Method getExecutePlanMethod() {
+        if (ourExecutePlanMethod == null) {
+            try {
+                ourExecutePlanMethod = Launcher.class.getMethod("execute", TestPlan.class, TestExecutionListener[].class);
+            }
+            catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+        return ourExecutePlanMethod;
+    }
+
+    /**
+     * Every thread executes the discovery request with its own launcher, the engines create new test instances for every execution
+     */
     @Override
-    public Object getTestToStart(String[] args, String name) {
+    public StressRun.Invocation createInvocation(String[] args, String name) {
         LauncherDiscoveryRequest discoveryRequest = JUnit5TestRunnerUtil.buildRequest(args, new String[1]);
         Launcher launcher = LauncherFactory.create();
+        return listener -> launcher.execute(discoveryRequest, new TestExecutionListener() {
+            @Override
+            public void executionStarted(TestIdentifier testIdentifier) {
+                if (testIdentifier.isTest()) {
+                    listener.testStarted();
+                }
+            }
+
+            @Override
+            public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+                if (testExecutionResult.getStatus() == TestExecutionResult.Status.FAILED) {
+                    listener.testFailed(testExecutionResult.getThrowable().orElse(null));
+                }
+                if (testIdentifier.isTest()) {
+                    listener.testFinished();
+                }
+            }
+        });
+    }
+
+    @Override
+    public Object getTestToStart(String[] args, String name) {
+        LauncherDiscoveryRequest discoveryRequest = JUnit5TestRunnerUtil.buildRequest(args, new String[1]);
+        Launcher launcher = createLauncher();
         myTestPlan = launcher.discover(discoveryRequest);
+        myDiscoveryRequest = null;
         Set<TestIdentifier> roots = myTestPlan.getRoots();
         if (roots.isEmpty()) {
             return null;
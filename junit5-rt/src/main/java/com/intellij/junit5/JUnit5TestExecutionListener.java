@@ -17,14 +17,15 @@ package com.intellij.junit5;
 
 import java.io.File;
 import java.io.PrintStream;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.platform.engine.TestExecutionResult;
 import org.junit.platform.engine.TestSource;
@@ -42,27 +43,52 @@ import org.opentest4j.ValueWrapper;
 import com.intellij.junit4.ExpectedPatterns;
 import com.intellij.junit4.JUnit4TestListener;
 import com.intellij.rt.execution.junit.ComparisonFailureData;
+import com.intellij.rt.execution.junit.ComparisonPayloads;
+import com.intellij.rt.execution.junit.IdeaTestRunner;
 import com.intellij.rt.execution.junit.MapSerializerUtil;
-
+import com.intellij.rt.execution.junit.PhaseTimings;
+import com.intellij.rt.execution.junit.TestDurations;
+import com.intellij.rt.execution.junit.TestEventsWriter;
+import com.intellij.rt.execution.junit.TestNodeIds;
+import com.intellij.rt.execution.junit.TestResourceUsage;
+import com.intellij.rt.execution.junit.TextTestEventsWriter;
+import com.intellij.rt.execution.junit.TraceEncoder;
+
+/**
+ * Callbacks may come concurrently from the threads of a parallel execution (<code>junit.jupiter.execution.parallel</code>):
+ * the state is kept per node, keyed by the unique id, and every message carries <code>nodeId</code>/<code>parentNodeId</code>,
+ * so messages of different nodes may interleave while the messages of one node are sent in order by the thread executing it.
+ * <p>
+ * Node ids and parent ids are built once per node, until the id suffix changes.
+ */
 public class JUnit5TestExecutionListener implements TestExecutionListener {
-    private static final String NO_LOCATION_HINT = "";
     private static final String NO_LOCATION_HINT_VALUE = "";
-    private final PrintStream myPrintStream;
-    private TestPlan myTestPlan;
-    private long myCurrentTestStart;
-    private int myFinishCount = 0;
+    private final TestEventsWriter myWriter;
+    private volatile TestPlan myTestPlan;
+    private final Map<String, Long> myTestStarts = new ConcurrentHashMap<>();
+    private final Map<String, TestResourceUsage> myTestUsages = new ConcurrentHashMap<>();
+    /**
+     * Number of tests finished under each started container
+     */
+    private final Map<String, AtomicInteger> myFinishCounts = new ConcurrentHashMap<>();
     private String myRootName;
-    private boolean mySuccessful = true;
+    private volatile boolean mySuccessful = true;
     private String myIdSuffix = "";
-    private final Set<TestIdentifier> myActiveRoots = new HashSet<>();
+    private final Map<String, String> myIds = new ConcurrentHashMap<>();
+    private final Map<String, String> myParentIds = new ConcurrentHashMap<>();
+    private final Set<TestIdentifier> myActiveRoots = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     public JUnit5TestExecutionListener() {
-        this(System.out);
+        this(TestEventsWriter.create(System.out));
     }
 
     public JUnit5TestExecutionListener(PrintStream printStream) {
-        myPrintStream = printStream;
-        myPrintStream.println("##teamcity[enteredTheMatrix]");
+        this(new TextTestEventsWriter(printStream));
+    }
+
+    public JUnit5TestExecutionListener(TestEventsWriter writer) {
+        myWriter = writer;
+        myWriter.message("enteredTheMatrix");
     }
 
     public boolean wasSuccessful() {
@@ -71,12 +97,18 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
 
     public void initializeIdSuffix(boolean forked) {
         if (forked && myIdSuffix.length() == 0) {
-            myIdSuffix = String.valueOf(System.currentTimeMillis());
+            setIdSuffix(TestNodeIds.getForkId());
         }
     }
 
     public void initializeIdSuffix(int i) {
-        myIdSuffix = i + "th";
+        setIdSuffix(i + "th");
+    }
+
+    private void setIdSuffix(String idSuffix) {
+        myIdSuffix = idSuffix;
+        myIds.clear();
+        myParentIds.clear();
     }
 
 
@@ -85,7 +117,7 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
         StringBuilder builder = new StringBuilder();
         builder.append("timestamp = ").append(entry.getTimestamp());
         entry.getKeyValuePairs().forEach((key, value) -> builder.append(", ").append(key).append(" = ").append(value));
-        myPrintStream.println(builder.toString());
+        myWriter.text(builder.toString());
     }
 
     @Override
@@ -99,15 +131,13 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
                 comment = myRootName.substring(0, lastPointIdx);
             }
 
-            myPrintStream.println("##teamcity[rootName name = \'" + escapeName(name) +
-                (comment != null ? ("\' comment = \'" + escapeName(comment)) : "") + "\'" +
-                " location = \'java:suite://" + escapeName(myRootName) +
-                "\']");
+            myWriter.message("rootName", "name", name, "comment", comment, "location", "java:suite://" + myRootName);
         }
     }
 
     @Override
     public void testPlanExecutionFinished(TestPlan testPlan) {
+        myWriter.flush();
     }
 
     @Override
@@ -120,17 +150,24 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
     public void executionStarted(TestIdentifier testIdentifier) {
         if (testIdentifier.isTest()) {
             testStarted(testIdentifier);
-            myCurrentTestStart = System.currentTimeMillis();
+            myTestStarts.put(testIdentifier.getUniqueId(), System.nanoTime());
+            TestResourceUsage usage = TestResourceUsage.start();
+            if (usage != null) {
+                myTestUsages.put(testIdentifier.getUniqueId(), usage);
+            }
         }
         else if (hasNonTrivialParent(testIdentifier)) {
-            myFinishCount = 0;
-            myPrintStream.println("##teamcity[testSuiteStarted" + idAndName(testIdentifier) + getLocationHint(testIdentifier) + "]");
+            myFinishCounts.put(testIdentifier.getUniqueId(), new AtomicInteger());
+            myWriter.message("testSuiteStarted", withLocationHint(idAndName(testIdentifier), testIdentifier));
         }
     }
 
     @Override
     public void dynamicTestRegistered(TestIdentifier testIdentifier) {
-        myTestPlan.add(testIdentifier);
+        TestPlan testPlan = myTestPlan;
+        synchronized (testPlan) {
+            testPlan.add(testIdentifier);
+        }
     }
 
     @Override
@@ -138,7 +175,9 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
         TestExecutionResult.Status status = testExecutionResult.getStatus();
         Throwable throwableOptional = testExecutionResult.getThrowable().orElse(null);
         executionFinished(testIdentifier, status, throwableOptional, null);
-        mySuccessful &= TestExecutionResult.Status.SUCCESSFUL == testExecutionResult.getStatus();
+        if (status != TestExecutionResult.Status.SUCCESSFUL) {
+            mySuccessful = false;
+        }
     }
 
     private void executionFinished(
@@ -149,7 +188,7 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
     ) {
         String displayName = testIdentifier.getDisplayName();
         if (testIdentifier.isTest()) {
-            long duration = getDuration();
+            long duration = getDuration(testIdentifier);
             if (status == TestExecutionResult.Status.FAILED) {
                 testFailure(testIdentifier, MapSerializerUtil.TEST_FAILED, throwableOptional, duration, reason, true);
             }
@@ -157,9 +196,11 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
                 testFailure(testIdentifier, MapSerializerUtil.TEST_IGNORED, throwableOptional, duration, reason, true);
             }
             testFinished(testIdentifier, duration);
-            myFinishCount++;
+            TestDurations.record(getClassName(testIdentifier), duration / 1000000);
+            countFinished(testIdentifier);
         }
         else if (hasNonTrivialParent(testIdentifier)) {
+            AtomicInteger finishCount = myFinishCounts.remove(testIdentifier.getUniqueId());
             String messageName = null;
             if (status == TestExecutionResult.Status.FAILED) {
                 messageName = MapSerializerUtil.TEST_FAILED;
@@ -170,9 +211,6 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
             if (messageName != null) {
                 if (status == TestExecutionResult.Status.FAILED) {
                     String parentId = getParentId(testIdentifier);
-                    String nameAndId = " name=\'" + JUnit4TestListener.CLASS_CONFIGURATION +
-                        "\' nodeId=\'" + escapeName(getId(testIdentifier)) +
-                        "\' parentNodeId=\'" + parentId + "\' ";
                     testFailure(
                         JUnit4TestListener.CLASS_CONFIGURATION,
                         getId(testIdentifier),
@@ -183,12 +221,16 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
                         reason,
                         true
                     );
-                    myPrintStream.println("\n##teamcity[testFinished" + nameAndId + "]");
+                    myWriter.message(
+                        "testFinished",
+                        "name", JUnit4TestListener.CLASS_CONFIGURATION,
+                        "nodeId", getId(testIdentifier),
+                        "parentNodeId", parentId
+                    );
                 }
 
-                Set<TestIdentifier> descendants =
-                    myTestPlan != null ? myTestPlan.getDescendants(testIdentifier) : Collections.emptySet();
-                if (!descendants.isEmpty() && myFinishCount == 0) {
+                Set<TestIdentifier> descendants = getDescendants(testIdentifier);
+                if (!descendants.isEmpty() && (finishCount == null || finishCount.get() == 0)) {
                     for (TestIdentifier childIdentifier : descendants) {
                         testStarted(childIdentifier);
                         testFailure(
@@ -201,10 +243,10 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
                         );
                         testFinished(childIdentifier, 0);
                     }
-                    myFinishCount = 0;
                 }
             }
-            myPrintStream.println("##teamcity[testSuiteFinished " + idAndName(testIdentifier, displayName) + "]");
+            String[] phases = PhaseTimings.takeAttributes(testIdentifier.getUniqueId(), -1);
+            myWriter.message("testSuiteFinished", withAttributes(idAndName(testIdentifier, displayName), phases));
         }
     }
 
@@ -212,19 +254,51 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
         return testIdentifier.getParentId().isPresent() || (myActiveRoots.size() > 1 && myActiveRoots.contains(testIdentifier));
     }
 
-    protected long getDuration() {
-        return System.currentTimeMillis() - myCurrentTestStart;
+    /**
+     * @return duration of the test in nanoseconds, <code>0</code> if it wasn't started
+     */
+    protected long getDuration(TestIdentifier testIdentifier) {
+        Long start = myTestStarts.remove(testIdentifier.getUniqueId());
+        return start != null ? System.nanoTime() - start : 0;
+    }
+
+    /**
+     * Counts the finished test for all its started containers
+     */
+    private void countFinished(TestIdentifier testIdentifier) {
+        for (Optional<TestIdentifier> parent = getParent(testIdentifier); parent.isPresent(); parent = getParent(parent.get())) {
+            AtomicInteger finishCount = myFinishCounts.get(parent.get().getUniqueId());
+            if (finishCount != null) {
+                finishCount.incrementAndGet();
+            }
+        }
+    }
+
+    private Optional<TestIdentifier> getParent(TestIdentifier testIdentifier) {
+        TestPlan testPlan = myTestPlan;
+        synchronized (testPlan) {
+            return testPlan.getParent(testIdentifier);
+        }
+    }
+
+    private Set<TestIdentifier> getDescendants(TestIdentifier testIdentifier) {
+        TestPlan testPlan = myTestPlan;
+        if (testPlan == null) {
+            return Collections.emptySet();
+        }
+        synchronized (testPlan) {
+            return new LinkedHashSet<>(testPlan.getDescendants(testIdentifier));
+        }
     }
 
     private void testStarted(TestIdentifier testIdentifier) {
-        myPrintStream.println("\n##teamcity[testStarted" + idAndName(testIdentifier) + " " + getLocationHint(testIdentifier) + "]");
+        myWriter.message("testStarted", withLocationHint(idAndName(testIdentifier), testIdentifier));
     }
 
     private void testFinished(TestIdentifier testIdentifier, long duration) {
-        myPrintStream.println(
-            "\n##teamcity[testFinished" + idAndName(testIdentifier) + (duration > 0 ? " duration=\'" +
-                Long.toString(duration) + "\'" : "") + "]"
-        );
+        String[] attributes = PhaseTimings.takeAttributes(testIdentifier.getUniqueId(), duration > 0 ? duration : -1);
+        attributes = TestResourceUsage.finish(myTestUsages.remove(testIdentifier.getUniqueId()), attributes);
+        myWriter.message("testFinished", withAttributes(idAndName(testIdentifier), attributes));
     }
 
     private void testFailure(
@@ -263,7 +337,7 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
         attrs.put("nodeId", id);
         attrs.put("parentNodeId", parentId);
         if (duration > 0) {
-            attrs.put("duration", Long.toString(duration));
+            PhaseTimings.putDuration(attrs, duration);
         }
         if (reason != null) {
             attrs.put("message", reason);
@@ -290,6 +364,7 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
                     catch (Throwable ignore) {
                     }
                 }
+                failureData = ComparisonPayloads.spillIfLarge(failureData);
 
                 if (includeThrowable || failureData == null) {
                     ComparisonFailureData.registerSMAttributes(
@@ -308,27 +383,32 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
             }
         }
         finally {
-            myPrintStream.println("\n" + MapSerializerUtil.asString(messageName, attrs));
+            myWriter.message(messageName, attrs);
         }
     }
 
     protected String getTrace(Throwable ex) {
-        StringWriter stringWriter = new StringWriter();
-        PrintWriter writer = new PrintWriter(stringWriter);
-        ex.printStackTrace(writer);
-        return stringWriter.toString();
+        return TraceEncoder.getTrace(ex);
     }
 
     public void setTestPlan(TestPlan testPlan) {
         myTestPlan = testPlan;
     }
 
+    /**
+     * Sends the tree of the plan or, if {@link IdeaTestRunner#LAZY_TREE_PROPERTY} is set, only the number of its tests:
+     * containers are announced by <code>testSuiteStarted</code> when they start then.
+     */
     public void sendTree(TestPlan testPlan, String rootName) {
         myTestPlan = testPlan;
         myRootName = rootName;
         if (Boolean.parseBoolean(System.getProperty("idea.junit.show.engines", "true"))) {
             testPlan.getRoots().stream().filter(root1 -> !testPlan.getChildren(root1).isEmpty()).forEach(myActiveRoots::add);
         }
+        if (Boolean.getBoolean(IdeaTestRunner.LAZY_TREE_PROPERTY)) {
+            myWriter.message("testCount", "count", Long.toString(testPlan.countTestIdentifiers(TestIdentifier::isTest)));
+            return;
+        }
         if (myActiveRoots.size() > 1) {
             for (TestIdentifier root : myActiveRoots) {
                 sendTreeUnderRoot(testPlan, root, new HashSet<>());
@@ -342,17 +422,26 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
                 }
             }
         }
-        myPrintStream.println("##teamcity[treeEnded]");
+        myWriter.message("treeEnded");
     }
 
     private String getId(TestIdentifier identifier) {
-        return identifier.getUniqueId() + myIdSuffix;
+        String uniqueId = identifier.getUniqueId();
+        String id = myIds.get(uniqueId);
+        if (id == null) {
+            String newId = uniqueId + myIdSuffix;
+            id = myIds.putIfAbsent(uniqueId, newId);
+            if (id == null) {
+                id = newId;
+            }
+        }
+        return id;
     }
 
     private void sendTreeUnderRoot(TestPlan testPlan, TestIdentifier root, HashSet<TestIdentifier> visited) {
-        String idAndName = idAndName(root);
+        String[] idAndName = idAndName(root);
         if (root.isContainer()) {
-            myPrintStream.println("##teamcity[suiteTreeStarted" + idAndName + " " + getLocationHint(root) + "]");
+            myWriter.message("suiteTreeStarted", withLocationHint(idAndName, root));
             for (TestIdentifier childIdentifier : testPlan.getChildren(root)) {
                 if (visited.add(childIdentifier)) {
                     sendTreeUnderRoot(testPlan, childIdentifier, visited);
@@ -361,48 +450,77 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
                     System.err.println("Identifier \'" + getId(childIdentifier) + "\' is reused");
                 }
             }
-            myPrintStream.println("##teamcity[suiteTreeEnded" + idAndName + "]");
+            myWriter.message("suiteTreeEnded", idAndName);
         }
         else if (root.isTest()) {
-            myPrintStream.println("##teamcity[suiteTreeNode " + idAndName + " " + getLocationHint(root) + "]");
+            myWriter.message("suiteTreeNode", withLocationHint(idAndName, root));
         }
     }
 
-    private String idAndName(TestIdentifier testIdentifier) {
+    private String[] idAndName(TestIdentifier testIdentifier) {
         return idAndName(testIdentifier, testIdentifier.getDisplayName());
     }
 
-    private String idAndName(TestIdentifier testIdentifier, String displayName) {
-        return " id=\'" + escapeName(getId(testIdentifier)) +
-            "\' name=\'" + escapeName(displayName) +
-            "\' nodeId=\'" + escapeName(getId(testIdentifier)) +
-            "\' parentNodeId=\'" + escapeName(getParentId(testIdentifier)) + "\'";
+    private String[] idAndName(TestIdentifier testIdentifier, String displayName) {
+        String id = getId(testIdentifier);
+        return new String[]{"id", id, "name", displayName, "nodeId", id, "parentNodeId", getParentId(testIdentifier)};
+    }
+
+    private static String[] withLocationHint(String[] attributes, TestIdentifier root) {
+        String locationHint = getLocationHint(root);
+        if (locationHint == null) {
+            return attributes;
+        }
+        return withAttribute(withAttribute(attributes, "locationHint", locationHint), "metainfo", getMetainfo(root));
+    }
+
+    private static String[] withAttribute(String[] attributes, String name, String value) {
+        String[] result = new String[attributes.length + 2];
+        System.arraycopy(attributes, 0, result, 0, attributes.length);
+        result[attributes.length] = name;
+        result[attributes.length + 1] = value;
+        return result;
+    }
+
+    private static String[] withAttributes(String[] attributes, String[] added) {
+        String[] result = new String[attributes.length + added.length];
+        System.arraycopy(attributes, 0, result, 0, attributes.length);
+        System.arraycopy(added, 0, result, attributes.length, added.length);
+        return result;
     }
 
     private String getParentId(TestIdentifier testIdentifier) {
-        Optional<TestIdentifier> parent = myTestPlan.getParent(testIdentifier);
+        String parentId = myParentIds.get(testIdentifier.getUniqueId());
+        if (parentId == null) {
+            parentId = findParentId(testIdentifier);
+            myParentIds.put(testIdentifier.getUniqueId(), parentId);
+        }
+        return parentId;
+    }
+
+    private String findParentId(TestIdentifier testIdentifier) {
+        Optional<TestIdentifier> parent = getParent(testIdentifier);
         if (myActiveRoots.size() <= 1 && !parent.map(identifier -> identifier.getParentId().orElse(null)).isPresent()) {
-            return "0";
+            return TestNodeIds.getRootId();
         }
 
         return parent
-            .map(identifier -> identifier.getUniqueId() + myIdSuffix)
-            .orElse("0");
+            .map(this::getId)
+            .orElse(TestNodeIds.getRootId());
     }
 
     static String getLocationHint(TestIdentifier root) {
         return root.getSource()
             .map(testSource -> getLocationHintValue(testSource))
             .filter(maybeLocationHintValue -> !NO_LOCATION_HINT_VALUE.equals(maybeLocationHintValue))
-            .map(locationHintValue -> "locationHint=\'" + locationHintValue + "\'" + getMetainfo(root))
-            .orElse(NO_LOCATION_HINT);
+            .orElse(null);
     }
 
     private static String getMetainfo(TestIdentifier root) {
         return root.getSource()
             .filter(testSource -> testSource instanceof MethodSource)
-            .map(testSource -> " metainfo=\'" + ((MethodSource)testSource).getMethodParameterTypes() + "\'")
-            .orElse(NO_LOCATION_HINT);
+            .map(testSource -> ((MethodSource)testSource).getMethodParameterTypes())
+            .orElse(null);
     }
 
     static String getLocationHintValue(TestSource testSource) {
@@ -441,12 +559,7 @@ public class JUnit5TestExecutionListener implements TestExecutionListener {
     private static String javaLocation(String className, String maybeMethodName, boolean isTest) {
         String type = isTest ? "test" : "suite";
         String methodName = maybeMethodName == null ? "" : "." + maybeMethodName;
-        String location = escapeName(className + methodName);
-        return "java:" + type + "://" + location;
-    }
-
-    private static String escapeName(String str) {
-        return MapSerializerUtil.escapeStr(str, MapSerializerUtil.STD_ESCAPER);
+        return "java:" + type + "://" + className + methodName;
     }
 
     static String getClassName(TestIdentifier description) {
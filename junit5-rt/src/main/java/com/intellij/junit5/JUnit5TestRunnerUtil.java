@@ -16,11 +16,12 @@
 package com.intellij.junit5;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
 import org.junit.platform.commons.util.AnnotationUtils;
 import org.junit.platform.engine.DiscoverySelector;
@@ -29,22 +30,41 @@ import org.junit.platform.engine.discovery.DiscoverySelectors;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
 import org.junit.platform.launcher.TagFilter;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import com.intellij.rt.execution.junit.PhaseTimings;
+import com.intellij.rt.execution.junit.TestListFiles;
 
 public class JUnit5TestRunnerUtil {
 
     public static final String DISABLED_ANNO = "org.junit.jupiter.api.Disabled";
 
+    private static final String AUTODETECTION_ENABLED = "junit.jupiter.extensions.autodetection.enabled";
+    /**
+     * Supported since Jupiter 5.11, older versions ignore it
+     */
+    private static final String AUTODETECTION_INCLUDE = "junit.jupiter.extensions.autodetection.include";
+    private static final String JUPITER_ENGINE = "org.junit.jupiter.engine.JupiterTestEngine";
+    /**
+     * Added in Jupiter 5.11, tells its version when the jars have no manifest
+     */
+    private static final String AUTO_CLOSE = "org.junit.jupiter.api.AutoClose";
+
     public static LauncherDiscoveryRequest buildRequest(String[] suiteClassNames, String[] packageNameRef) {
         if (suiteClassNames.length == 0) {
             return null;
         }
 
         LauncherDiscoveryRequestBuilder builder = LauncherDiscoveryRequestBuilder.request();
+        if (PhaseTimings.isEnabled() && !isAutodetectionConfigured() && isAutodetectionIncludeSupported()) {
+            // registers PhaseTimingExtension only; older Jupiter would register every other extension found on the classpath too
+            builder = builder
+                .configurationParameter(AUTODETECTION_ENABLED, "true")
+                .configurationParameter(AUTODETECTION_INCLUDE, PhaseTimingExtension.class.getName());
+        }
 
         if (suiteClassNames.length == 1 && suiteClassNames[0].charAt(0) == '@') {
             // all tests in the package specified
             try {
-                BufferedReader reader = new BufferedReader(new FileReader(suiteClassNames[0].substring(1)));
+                BufferedReader reader = TestListFiles.openReader(suiteClassNames[0].substring(1));
                 try {
                     String packageName = reader.readLine();
                     if (packageName == null) {
@@ -130,4 +150,63 @@ public class JUnit5TestRunnerUtil {
             return DiscoverySelectors.selectClass(line);
         }
     }
+
+    /**
+     * @return whether Jupiter on the test classpath is 5.11 or newer, so the auto-detection can be limited to one extension
+     */
+    private static boolean isAutodetectionIncludeSupported() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            Package enginePackage = Class.forName(JUPITER_ENGINE, false, loader).getPackage();
+            String version = enginePackage != null ? enginePackage.getImplementationVersion() : null;
+            if (version != null) {
+                String[] numbers = version.split("[.-]");
+                int major = Integer.parseInt(numbers[0]);
+                int minor = numbers.length > 1 ? Integer.parseInt(numbers[1]) : 0;
+                return major > 5 || major == 5 && minor >= 11;
+            }
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+        catch (NumberFormatException ignored) {
+        }
+        try {
+            Class.forName(AUTO_CLOSE, false, loader);
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the auto-detection is enabled by the tests themselves, then it finds <code>PhaseTimingExtension</code>
+     * and the tests keep their own extensions
+     */
+    private static boolean isAutodetectionConfigured() {
+        if (Boolean.parseBoolean(System.getProperty(AUTODETECTION_ENABLED))) {
+            return true;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        InputStream stream = loader != null ? loader.getResourceAsStream("junit-platform.properties") : null;
+        if (stream == null) {
+            return false;
+        }
+        try {
+            Properties properties = new Properties();
+            properties.load(stream);
+            return Boolean.parseBoolean(properties.getProperty(AUTODETECTION_ENABLED));
+        }
+        catch (IOException e) {
+            return false;
+        }
+        finally {
+            try {
+                stream.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
 }
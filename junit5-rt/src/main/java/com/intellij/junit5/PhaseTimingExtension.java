@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.junit5;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import com.intellij.rt.execution.junit.PhaseTimings;
+
+/**
+ * Marks {@link PhaseTimings} of the tests and of their classes, keyed by the unique id of the node.
+ * <p>
+ * Registered from <code>META-INF/services</code> when the extensions auto-detection is enabled, which
+ * {@link JUnit5TestRunnerUtil#buildRequest} does, limited to this extension, if {@link PhaseTimings#PHASES_PROPERTY} is set
+ * and Jupiter is 5.11 or newer.
+ * The <code>before</code> callbacks of extensions run before <code>@BeforeAll</code>/<code>@BeforeEach</code> methods
+ * and the <code>after</code> callbacks run after <code>@AfterEach</code>/<code>@AfterAll</code> ones, so the phases include them.
+ */
+public class PhaseTimingExtension implements BeforeAllCallback, BeforeEachCallback, BeforeTestExecutionCallback,
+                                             AfterTestExecutionCallback, AfterEachCallback, AfterAllCallback {
+    @Override
+    public void beforeAll(ExtensionContext context) {
+        if (PhaseTimings.isEnabled()) {
+            PhaseTimings.setupStarted(context.getUniqueId());
+        }
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        if (PhaseTimings.isEnabled()) {
+            forEachClass(context, PhaseTimings::bodyStarted);
+            PhaseTimings.setupStarted(context.getUniqueId());
+        }
+    }
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        if (PhaseTimings.isEnabled()) {
+            PhaseTimings.bodyStarted(context.getUniqueId());
+        }
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        if (PhaseTimings.isEnabled()) {
+            PhaseTimings.bodyFinished(context.getUniqueId());
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        if (PhaseTimings.isEnabled()) {
+            PhaseTimings.teardownFinished(context.getUniqueId());
+            forEachClass(context, PhaseTimings::bodyFinished);
+        }
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) {
+        if (PhaseTimings.isEnabled()) {
+            PhaseTimings.teardownFinished(context.getUniqueId());
+        }
+    }
+
+    /**
+     * Passes the unique ids of the classes enclosing the test, there are several of them for <code>@Nested</code> classes
+     */
+    private static void forEachClass(ExtensionContext context, Consumer<String> consumer) {
+        for (Optional<ExtensionContext> parent = context.getParent(); parent.isPresent(); parent = parent.get().getParent()) {
+            if (parent.get().getElement().filter(element -> element instanceof Class).isPresent()) {
+                consumer.accept(parent.get().getUniqueId());
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.junit;
+
+import com.intellij.rt.execution.junit.CdsArchive;
+import consulo.container.boot.ContainerPathManager;
+import consulo.content.bundle.Sdk;
+import consulo.java.execution.configurations.OwnJavaParameters;
+import consulo.process.ProcessHandler;
+import consulo.process.event.ProcessEvent;
+import consulo.process.event.ProcessListener;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * IDE side of {@link CdsArchive}: the test JVM maps the archive of its classpath, or dumps it when there is none yet.
+ * The archive is applied only to classpaths of jars, see {@link CdsArchive} for the restriction of the JVM.
+ * Archives are kept in the system directory of the IDE, in a directory accessible by the current user only.
+ */
+public class JUnitCdsArchive
+{
+	private final File myDirectory;
+	private final String myFingerprint;
+	private File myDumpFile;
+
+	private JUnitCdsArchive(File directory, String fingerprint)
+	{
+		myDirectory = directory;
+		myFingerprint = fingerprint;
+	}
+
+	/**
+	 * @return directory of the archives, created if needed; <code>null</code> if it can't be created
+	 */
+	@Nullable
+	public static File getDirectory()
+	{
+		Path directory = Path.of(ContainerPathManager.get().getSystemPath(), "junit_cds");
+		try
+		{
+			if(!Files.isDirectory(directory))
+			{
+				if(directory.getFileSystem().supportedFileAttributeViews().contains("posix"))
+				{
+					Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+				}
+				else
+				{
+					Files.createDirectories(directory);
+				}
+			}
+			return directory.toFile();
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return <code>null</code> if the JDK or the classpath of the parameters can't have an archive
+	 */
+	@Nullable
+	public static JUnitCdsArchive create(@Nonnull OwnJavaParameters parameters)
+	{
+		Sdk jdk = parameters.getJdk();
+		if(jdk == null || !CdsArchive.isSupported(jdk.getVersionString()))
+		{
+			return null;
+		}
+		File directory = getDirectory();
+		if(directory == null)
+		{
+			return null;
+		}
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			update(digest, jdk.getHomePath());
+			update(digest, jdk.getVersionString());
+			for(String parameter : parameters.getVMParametersList().getList())
+			{
+				update(digest, parameter);
+			}
+			for(String path : parameters.getClassPath().getPathList())
+			{
+				File file = new File(path);
+				if(!file.isFile())
+				{
+					return null;
+				}
+				update(digest, path);
+				update(digest, file.length() + ":" + file.lastModified());
+			}
+			StringBuilder fingerprint = new StringBuilder();
+			for(byte b : digest.digest())
+			{
+				fingerprint.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return new JUnitCdsArchive(directory, fingerprint.toString());
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest digest, @Nullable String value)
+	{
+		if(value != null)
+		{
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+		}
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Options to map an existing archive; to be added before the fork info is written, so forked JVMs use the archive too.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> getSharedArchiveOptions()
+	{
+		return CdsArchive.getVMOptions(myDirectory, myFingerprint, null);
+	}
+
+	/**
+	 * Options to dump the archive if there is none; to be added after the fork info is written, so only one JVM dumps.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> getDumpOptions()
+	{
+		if(CdsArchive.getArchive(myDirectory, myFingerprint).isFile())
+		{
+			return List.of();
+		}
+		myDumpFile = CdsArchive.createDumpFile(myDirectory, myFingerprint);
+		return CdsArchive.getVMOptions(myDirectory, myFingerprint, myDumpFile);
+	}
+
+	public void attach(ProcessHandler processHandler)
+	{
+		if(myDumpFile == null)
+		{
+			return;
+		}
+		processHandler.addProcessListener(new ProcessListener()
+		{
+			@Override
+			public void processTerminated(ProcessEvent event)
+			{
+				CdsArchive.publish(myDirectory, myDumpFile, myFingerprint);
+			}
+		});
+	}
+}
@@ -262,6 +262,12 @@ public class JUnitConfiguration extends JavaTestConfigurationBase
 			case RepeatCount.N:
 				repeat = " [" + getRepeatCount() + "]";
 				break;
+			case RepeatCount.CONCURRENTLY:
+				repeat = " [" + getRepeatCount() + " concurrently]";
+				break;
+			case RepeatCount.BENCHMARK:
+				repeat = " [benchmark]";
+				break;
 			default:
 				repeat = "";
 		}
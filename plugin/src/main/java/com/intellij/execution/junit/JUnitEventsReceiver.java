@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.junit;
+
+import com.intellij.rt.execution.junit.BinaryTestEventsProtocol;
+import com.intellij.rt.execution.junit.BinaryTestEventsReader;
+import com.intellij.rt.execution.junit.TestListFiles;
+import consulo.logging.Logger;
+import consulo.process.ProcessHandler;
+import consulo.process.ProcessOutputTypes;
+import consulo.process.event.ProcessEvent;
+import consulo.process.event.ProcessListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * IDE side of the binary events channel: decodes events sent by the test runtime and passes them to the {@link JUnitTestEventsConverter}
+ * of the console. The output of the tests comes over the channel as well, so it's passed to the converter in order with the events.
+ * Lists of the <code>@file</code> arguments known before the start are sent back over the channel, see {@link TestListFiles}.
+ *
+ * @see com.intellij.rt.execution.junit.BinaryTestEventsProtocol
+ */
+public class JUnitEventsReceiver
+{
+	private static final Logger LOG = Logger.getInstance(JUnitEventsReceiver.class);
+	private static final int CONNECT_TIMEOUT = 60 * 1000;
+
+	private final ServerSocket myServerSocket;
+	private final Map<String, byte[]> myFiles = new LinkedHashMap<>();
+	private boolean myFilesSent;
+	private Thread myThread;
+
+	public JUnitEventsReceiver() throws IOException
+	{
+		myServerSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+		myServerSocket.setSoTimeout(CONNECT_TIMEOUT);
+	}
+
+	public int getPort()
+	{
+		return myServerSocket.getLocalPort();
+	}
+
+	/**
+	 * Sends the content of a list argument instead of writing it to the file.
+	 *
+	 * @return <code>false</code> if the runtime has connected already and the content is to be written to the file
+	 */
+	public synchronized boolean addFile(File file, byte[] content)
+	{
+		if(myFilesSent)
+		{
+			return false;
+		}
+		myFiles.put(file.getPath(), content);
+		return true;
+	}
+
+	private synchronized void sendFiles(Socket socket) throws IOException
+	{
+		myFilesSent = true;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		for(Map.Entry<String, byte[]> entry : myFiles.entrySet())
+		{
+			TestListFiles.writeFile(out, entry.getKey(), entry.getValue());
+		}
+		TestListFiles.writeEnd(out);
+		myFiles.clear();
+	}
+
+	/**
+	 * Receives the events of the process once it's started. The converter finishes testing when the events are received,
+	 * which may be after the process has terminated.
+	 */
+	public void attach(ProcessHandler processHandler, JUnitTestEventsConverter converter)
+	{
+		Thread thread = new Thread(() -> receive(converter), "JUnit events receiver");
+		thread.setDaemon(true);
+		myThread = thread;
+		converter.startReceiving();
+		processHandler.addProcessListener(new ProcessListener()
+		{
+			@Override
+			public void startNotified(ProcessEvent event)
+			{
+				thread.start();
+			}
+
+			@Override
+			public void processTerminated(ProcessEvent event)
+			{
+				// the runtime closes the channel on exit, stop waiting only if it never connected
+				closeServerSocket();
+			}
+		});
+	}
+
+	/**
+	 * Closes the channel if the process was never started
+	 */
+	public void close()
+	{
+		if(myThread != null)
+		{
+			return;
+		}
+		closeServerSocket();
+	}
+
+	private void closeServerSocket()
+	{
+		try
+		{
+			myServerSocket.close();
+		}
+		catch(IOException e)
+		{
+			LOG.info(e);
+		}
+	}
+
+	private void receive(JUnitTestEventsConverter converter)
+	{
+		try (ServerSocket serverSocket = myServerSocket; Socket socket = serverSocket.accept())
+		{
+			sendFiles(socket);
+			new BinaryTestEventsReader(new BufferedInputStream(socket.getInputStream(), 1 << 16)).readAll(new BinaryTestEventsReader.Listener()
+			{
+				@Override
+				public void message(String messageName, Map<String, String> attributes)
+				{
+					converter.message(messageName, attributes);
+				}
+
+				@Override
+				public void text(String text)
+				{
+					converter.output(text + "\n", ProcessOutputTypes.STDOUT);
+				}
+
+				@Override
+				public void output(int stream, String text)
+				{
+					converter.output(text, stream == BinaryTestEventsProtocol.STDERR ? ProcessOutputTypes.STDERR : ProcessOutputTypes.STDOUT);
+				}
+			});
+		}
+		catch(SocketTimeoutException e)
+		{
+			LOG.info("Test runtime did not connect to the events channel");
+		}
+		catch(IOException e)
+		{
+			LOG.info(e);
+		}
+		finally
+		{
+			converter.stopReceiving();
+		}
+	}
+}
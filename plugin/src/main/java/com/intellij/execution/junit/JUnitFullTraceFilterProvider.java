@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.junit;
+
+import com.intellij.rt.execution.junit.TraceEncoder;
+import consulo.annotation.component.ExtensionImpl;
+import consulo.execution.ui.console.ConsoleFilterProvider;
+import consulo.execution.ui.console.Filter;
+import consulo.execution.ui.console.HyperlinkInfo;
+import consulo.execution.ui.console.OpenFileHyperlinkInfo;
+import consulo.logging.Logger;
+import consulo.project.Project;
+import consulo.virtualFileSystem.LocalFileSystem;
+import consulo.virtualFileSystem.VirtualFile;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Links the numbers of the bounded stack traces, <code>... trace #N</code> and <code>... same trace as #N</code>,
+ * to the full trace in the file written by the test runtime, see {@link TraceEncoder}
+ */
+@ExtensionImpl
+public class JUnitFullTraceFilterProvider implements ConsoleFilterProvider
+{
+	private static final Logger LOG = Logger.getInstance(JUnitFullTraceFilterProvider.class);
+	private static final Pattern TRACE_REFERENCE = Pattern.compile("#(\\d+)" + Pattern.quote(TraceEncoder.FULL_TRACE_IN) + "(.+?)\\s*$");
+
+	@Nonnull
+	@Override
+	public Filter[] getDefaultFilters(@Nonnull Project project)
+	{
+		return new Filter[]{new FullTraceFilter()};
+	}
+
+	private static class FullTraceFilter implements Filter
+	{
+		@Nullable
+		@Override
+		public Result applyFilter(String line, int entireLength)
+		{
+			if(!line.contains(TraceEncoder.FULL_TRACE_IN))
+			{
+				return null;
+			}
+			Matcher matcher = TRACE_REFERENCE.matcher(line);
+			if(!matcher.find())
+			{
+				return null;
+			}
+			int lineStart = entireLength - line.length();
+			return new Result(lineStart + matcher.start(), lineStart + matcher.end(2), new FullTraceHyperlinkInfo(new File(matcher.group(2)), matcher.group(1)));
+		}
+	}
+
+	private static class FullTraceHyperlinkInfo implements HyperlinkInfo
+	{
+		private final File myFile;
+		private final String myNumber;
+
+		private FullTraceHyperlinkInfo(File file, String number)
+		{
+			myFile = file;
+			myNumber = number;
+		}
+
+		@Override
+		public void navigate(Project project)
+		{
+			VirtualFile file = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(myFile);
+			if(file == null)
+			{
+				return;
+			}
+			file.refresh(false, false);
+			new OpenFileHyperlinkInfo(project, file, Math.max(findTraceLine(), 0)).navigate(project);
+		}
+
+		/**
+		 * @return line of the header of the trace in the file, -1 if it's not there
+		 */
+		private int findTraceLine()
+		{
+			String header = "#" + myNumber;
+			try (BufferedReader reader = Files.newBufferedReader(myFile.toPath(), StandardCharsets.UTF_8))
+			{
+				int index = 0;
+				for(String line = reader.readLine(); line != null; line = reader.readLine(), index++)
+				{
+					if(line.equals(header))
+					{
+						return index;
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				LOG.info(e);
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.intellij.execution.junit;
+
+import com.intellij.rt.execution.junit.TestClassesStream;
+import consulo.logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * IDE side of {@link TestClassesStream}: sends the test classes to the test runtime as they are found.
+ * Failures are only logged, the runtime falls back to the classes list file written at the end of the search.
+ */
+public class JUnitTestClassesSender
+{
+	private static final Logger LOG = Logger.getInstance(JUnitTestClassesSender.class);
+	private static final int CONNECT_TIMEOUT = 60 * 1000;
+	private static final int FINISH_CONNECT_TIMEOUT = 1000;
+
+	private final ServerSocket myServerSocket;
+	private Socket mySocket;
+	private DataOutputStream myOutput;
+	private boolean myFinished;
+
+	public JUnitTestClassesSender() throws IOException
+	{
+		myServerSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+		myServerSocket.setSoTimeout(CONNECT_TIMEOUT);
+	}
+
+	public int getPort()
+	{
+		return myServerSocket.getLocalPort();
+	}
+
+	/**
+	 * Waits for the runtime which connects right after the search is started; to be called before the first class is found.
+	 */
+	public synchronized void start(String packageName, String category, String filters)
+	{
+		if(mySocket != null || myFinished)
+		{
+			return;
+		}
+		try
+		{
+			mySocket = myServerSocket.accept();
+			myOutput = new DataOutputStream(new BufferedOutputStream(mySocket.getOutputStream()));
+			TestClassesStream.writeHeader(myOutput, packageName, category, filters);
+			myOutput.flush();
+		}
+		catch(IOException e)
+		{
+			LOG.info(e);
+			finish();
+		}
+	}
+
+	public synchronized void send(String className)
+	{
+		if(myOutput == null)
+		{
+			return;
+		}
+		try
+		{
+			TestClassesStream.writeClass(myOutput, className);
+			// classes are sent one by one, the first of them should start to run while the search goes on
+			myOutput.flush();
+		}
+		catch(IOException e)
+		{
+			LOG.info(e);
+			finish();
+		}
+	}
+
+	/**
+	 * Ends the stream; to be called once the classes list file is written or the search is cancelled.
+	 */
+	public synchronized void finish()
+	{
+		if(myFinished)
+		{
+			return;
+		}
+		myFinished = true;
+		try
+		{
+			if(mySocket == null)
+			{
+				// the search has ended before any class was found, the runtime is already waiting for the stream
+				myServerSocket.setSoTimeout(FINISH_CONNECT_TIMEOUT);
+				mySocket = myServerSocket.accept();
+				myOutput = new DataOutputStream(new BufferedOutputStream(mySocket.getOutputStream()));
+				TestClassesStream.writeHeader(myOutput, "", "", "");
+			}
+			if(myOutput != null)
+			{
+				TestClassesStream.writeEnd(myOutput);
+			}
+		}
+		catch(IOException e)
+		{
+			LOG.info(e);
+		}
+		finally
+		{
+			myOutput = null;
+			try
+			{
+				if(mySocket != null)
+				{
+					mySocket.close();
+				}
+				myServerSocket.close();
+			}
+			catch(IOException ignored)
+			{
+			}
+		}
+	}
+}
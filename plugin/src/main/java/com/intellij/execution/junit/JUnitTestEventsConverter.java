@@ -0,0 +1,232 @@
+/*
+ * Copyright 2013-2026 consulo.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.junit;
+
+import com.intellij.rt.execution.junit.MapSerializerUtil;
+import consulo.execution.test.TestConsoleProperties;
+import consulo.execution.test.sm.runner.GeneralTestEventsProcessor;
+import consulo.execution.test.sm.runner.OutputToGeneralTestEventsConverter;
+import consulo.execution.test.sm.runner.event.TestFailedEvent;
+import consulo.execution.test.sm.runner.event.TestFinishedEvent;
+import consulo.execution.test.sm.runner.event.TestIgnoredEvent;
+import consulo.execution.test.sm.runner.event.TestOutputEvent;
+import consulo.execution.test.sm.runner.event.TestStartedEvent;
+import consulo.execution.test.sm.runner.event.TestSuiteFinishedEvent;
+import consulo.execution.test.sm.runner.event.TestSuiteStartedEvent;
+import consulo.process.ProcessOutputTypes;
+import consulo.util.dataholder.Key;
+import consulo.util.lang.StringUtil;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * Converter of the JUnit consoles: besides the process output, takes the events decoded by {@link JUnitEventsReceiver}
+ * and passes them to the events processor as they are, without formatting and parsing service messages.
+ * <p>
+ * The events channel is drained after the process terminates, so while it's received the end of testing
+ * and the disposal of the converter are postponed till {@link #stopReceiving()}.
+ */
+public class JUnitTestEventsConverter extends OutputToGeneralTestEventsConverter
+{
+	private GeneralTestEventsProcessor myEventsProcessor;
+	private boolean myReceiving;
+	private boolean myFinishPending;
+	private boolean myDisposePending;
+
+	public JUnitTestEventsConverter(@Nonnull String testFrameworkName, @Nonnull TestConsoleProperties consoleProperties)
+	{
+		super(testFrameworkName, consoleProperties);
+	}
+
+	@Override
+	public synchronized void setProcessor(@Nullable GeneralTestEventsProcessor processor)
+	{
+		super.setProcessor(processor);
+		myEventsProcessor = processor;
+	}
+
+	public synchronized void startReceiving()
+	{
+		myReceiving = true;
+	}
+
+	/**
+	 * Finishes testing and disposes the converter if it was requested while the events were received
+	 */
+	public void stopReceiving()
+	{
+		boolean finish;
+		boolean dispose;
+		synchronized(this)
+		{
+			myReceiving = false;
+			finish = myFinishPending;
+			dispose = myDisposePending;
+		}
+		if(finish)
+		{
+			super.finishTesting();
+		}
+		if(dispose)
+		{
+			super.dispose();
+		}
+	}
+
+	@Override
+	public void finishTesting()
+	{
+		synchronized(this)
+		{
+			if(myReceiving)
+			{
+				myFinishPending = true;
+				return;
+			}
+		}
+		super.finishTesting();
+	}
+
+	@Override
+	public void dispose()
+	{
+		synchronized(this)
+		{
+			if(myReceiving)
+			{
+				myDisposePending = true;
+				return;
+			}
+		}
+		super.dispose();
+	}
+
+	/**
+	 * Output of the tests received over the events channel
+	 */
+	public synchronized void output(String text, Key outputType)
+	{
+		if(myEventsProcessor != null)
+		{
+			myEventsProcessor.onUncapturedOutput(text, outputType);
+		}
+	}
+
+	/**
+	 * Event received over the events channel, named and attributed as the service message the runtime prints without the channel
+	 */
+	public synchronized void message(String messageName, Map<String, String> attributes)
+	{
+		GeneralTestEventsProcessor processor = myEventsProcessor;
+		if(processor == null)
+		{
+			return;
+		}
+		String name = attributes.get("name");
+		String id = attributes.get("nodeId");
+		String parentId = attributes.get("parentNodeId");
+		String locationHint = attributes.get("locationHint");
+		String metainfo = attributes.get("metainfo");
+		switch(messageName)
+		{
+			case "enteredTheMatrix":
+				processor.onTestsReporterAttached();
+				break;
+			case "rootName":
+				processor.onRootPresentationAdded(name, attributes.get("comment"), attributes.get("location"));
+				break;
+			case "testCount":
+				processor.onTestsCountInSuite(StringUtil.parseInt(attributes.get("count"), 0));
+				break;
+			case "suiteTreeStarted":
+				processor.onSuiteTreeStarted(name, locationHint, metainfo, id, parentId);
+				break;
+			case "suiteTreeNode":
+				processor.onSuiteTreeNodeAdded(name, locationHint, metainfo, id, parentId);
+				break;
+			case "suiteTreeEnded":
+				processor.onSuiteTreeEnded(name);
+				break;
+			case "treeEnded":
+				processor.onBuildTreeEnded();
+				break;
+			case "testSuiteStarted":
+				processor.onSuiteStarted(new TestSuiteStartedEvent(name, id, parentId, locationHint, metainfo, null, null, true));
+				break;
+			case "testSuiteFinished":
+				processor.onSuiteFinished(new TestSuiteFinishedEvent(name, id, null, null));
+				break;
+			case "testStarted":
+				processor.onTestStarted(new TestStartedEvent(name, id, parentId, locationHint, metainfo, null, null, true));
+				break;
+			case "testFinished":
+				processor.onTestFinished(new TestFinishedEvent(name, id, getDuration(attributes)));
+				break;
+			case MapSerializerUtil.TEST_FAILED:
+				processor.onTestFailure(createFailedEvent(name, id, attributes));
+				break;
+			case MapSerializerUtil.TEST_IGNORED:
+				processor.onTestIgnored(new TestIgnoredEvent(name, id, StringUtil.notNullize(attributes.get("message")), attributes.get("details")));
+				break;
+			case "testStdOut":
+				processor.onTestOutput(new TestOutputEvent(name, id, StringUtil.notNullize(attributes.get("out")), true));
+				break;
+			case "testStdErr":
+				processor.onTestOutput(new TestOutputEvent(name, id, StringUtil.notNullize(attributes.get("out")), false));
+				break;
+			default:
+				// not sent by the runtime itself, left to the service messages parser
+				process("\n" + MapSerializerUtil.asString(messageName, attributes) + "\n", ProcessOutputTypes.STDOUT);
+		}
+	}
+
+	private static TestFailedEvent createFailedEvent(String name, String id, Map<String, String> attributes)
+	{
+		Long duration = getDuration(attributes);
+		return new TestFailedEvent(name,
+				id,
+				StringUtil.notNullize(attributes.get("message")),
+				attributes.get("details"),
+				attributes.containsKey("error"),
+				attributes.get("actual"),
+				attributes.get("expected"),
+				attributes.get("expectedFile"),
+				attributes.get("actualFile"),
+				Boolean.parseBoolean(attributes.get("expectedIsTempFile")),
+				Boolean.parseBoolean(attributes.get("actualIsTempFile")),
+				duration != null ? duration : -1);
+	}
+
+	@Nullable
+	private static Long getDuration(Map<String, String> attributes)
+	{
+		String duration = attributes.get("duration");
+		if(duration == null)
+		{
+			return null;
+		}
+		try
+		{
+			return Long.parseLong(duration);
+		}
+		catch(NumberFormatException e)
+		{
+			return null;
+		}
+	}
+}
@@ -18,6 +18,7 @@ package com.intellij.execution.junit;
 
 import com.intellij.execution.junit.testDiscovery.TestBySource;
 import com.intellij.execution.junit.testDiscovery.TestsByChanges;
+import com.intellij.execution.junit2.ui.properties.JUnitConsoleProperties;
 import com.intellij.java.execution.JavaExecutionUtil;
 import com.intellij.java.execution.impl.JavaTestFrameworkRunnableState;
 import com.intellij.java.execution.impl.TestClassCollector;
@@ -27,22 +28,42 @@ import com.intellij.java.language.psi.JavaPsiFacade;
 import com.intellij.java.language.psi.PsiClass;
 import com.intellij.java.language.psi.PsiMethod;
 import com.intellij.junit5.JUnit5IdeaTestRunner;
+import com.intellij.rt.execution.junit.AsyncTestEventsWriter;
+import com.intellij.rt.execution.junit.BenchmarkRun;
+import com.intellij.rt.execution.junit.CdsArchive;
+import com.intellij.rt.execution.junit.ComparisonPayloads;
+import com.intellij.rt.execution.junit.IdeaTestRunner;
+import com.intellij.rt.execution.junit.JUnitDaemon;
+import com.intellij.rt.execution.junit.JUnitForkWorker;
+import com.intellij.rt.execution.junit.JUnitForkedSplitter;
 import com.intellij.rt.execution.junit.JUnitStarter;
+import com.intellij.rt.execution.junit.PhaseTimings;
 import com.intellij.rt.execution.junit.RepeatCount;
+import com.intellij.rt.execution.junit.RepeatStatisticsWriter;
+import com.intellij.rt.execution.junit.RuntimePrewarmer;
+import com.intellij.rt.execution.junit.StressRun;
+import com.intellij.rt.execution.junit.TestDurations;
+import com.intellij.rt.execution.junit.TestResourceUsage;
+import com.intellij.rt.execution.junit.TraceEncoder;
 import com.siyeh.ig.junit.JUnitCommonClassNames;
 import consulo.application.ReadAction;
+import consulo.disposer.Disposer;
 import consulo.execution.CantRunException;
 import consulo.execution.ExecutionBundle;
+import consulo.execution.ExecutionResult;
 import consulo.execution.RuntimeConfigurationException;
 import consulo.execution.executor.Executor;
 import consulo.execution.process.ProcessTerminatedListener;
 import consulo.execution.runner.ExecutionEnvironment;
+import consulo.execution.runner.ProgramRunner;
 import consulo.execution.test.SourceScope;
 import consulo.execution.test.TestSearchScope;
+import consulo.execution.test.ui.BaseTestsOutputConsoleView;
 import consulo.execution.util.ProgramParametersUtil;
 import consulo.java.execution.configurations.OwnJavaParameters;
 import consulo.junit.JUnitListener;
 import consulo.junit.external.JUnit5RuntimeAppender;
+import consulo.junit.impl.JUnitProperties;
 import consulo.language.editor.refactoring.event.RefactoringElementListener;
 import consulo.language.psi.PsiDirectory;
 import consulo.language.psi.PsiElement;
@@ -56,6 +77,8 @@ import consulo.process.ExecutionException;
 import consulo.process.ProcessHandler;
 import consulo.process.ProcessHandlerBuilder;
 import consulo.process.cmd.ParametersList;
+import consulo.process.event.ProcessEvent;
+import consulo.process.event.ProcessListener;
 import consulo.project.DumbService;
 import consulo.project.Project;
 import consulo.util.io.ClassPathUtil;
@@ -65,6 +88,7 @@ import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import org.jetbrains.annotations.NonNls;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -80,6 +104,9 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
 
     private final JUnitConfiguration myConfiguration;
     protected File myListenersFile;
+    private JUnitEventsReceiver myEventsReceiver;
+    private File myFullTracesFile;
+    private File myComparisonDirectory;
 
     public static TestObject fromString(String id, JUnitConfiguration configuration, @Nonnull ExecutionEnvironment environment) {
         if (JUnitConfiguration.TEST_METHOD.equals(id)) {
@@ -170,13 +197,86 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
         javaParameters.setMainClass(JUnitConfiguration.JUNIT_START_CLASS);
         javaParameters.getProgramParametersList().add(JUnitStarter.IDE_VERSION + JUnitStarter.VERSION);
 
+        if (JUnitProperties.JUNIT_BINARY_EVENTS) {
+            if (myEventsReceiver != null) {
+                myEventsReceiver.close();
+                myEventsReceiver = null;
+            }
+            try {
+                myEventsReceiver = new JUnitEventsReceiver();
+                javaParameters.getProgramParametersList().add(JUnitStarter.EVENTS_SOCKET + myEventsReceiver.getPort());
+            }
+            catch (IOException e) {
+                LOG.info(e);
+            }
+        }
+        if (JUnitProperties.JUNIT_ASYNC_EVENTS) {
+            javaParameters.getVMParametersList().addProperty(AsyncTestEventsWriter.ASYNC_EVENTS_PROPERTY, "true");
+        }
+        if (JUnitProperties.JUNIT_CDS) {
+            File cdsDirectory = JUnitCdsArchive.getDirectory();
+            if (cdsDirectory != null) {
+                javaParameters.getVMParametersList().addProperty(CdsArchive.CDS_PROPERTY, "true");
+                javaParameters.getVMParametersList().addProperty(CdsArchive.DIRECTORY_PROPERTY, cdsDirectory.getPath());
+            }
+        }
+        if (JUnitProperties.JUNIT_DAEMON) {
+            javaParameters.getVMParametersList().addProperty(JUnitDaemon.DAEMON_PROPERTY, "true");
+        }
+        if (JUnitProperties.JUNIT_DURATIONS) {
+            File durationsFile = new File(FileUtil.getTempDirectory(), "idea_junit_durations/" + getConfiguration().getProject().getLocationHash() + ".txt");
+            javaParameters.getVMParametersList().addProperty(TestDurations.DURATIONS_PROPERTY, durationsFile.getPath());
+        }
+        if (JUnitProperties.JUNIT_PHASES) {
+            javaParameters.getVMParametersList().addProperty(PhaseTimings.PHASES_PROPERTY, "true");
+        }
+        if (JUnitProperties.JUNIT_RESOURCES) {
+            javaParameters.getVMParametersList().addProperty(TestResourceUsage.RESOURCES_PROPERTY, "true");
+        }
+        if (JUnitProperties.JUNIT_PREWARM) {
+            javaParameters.getVMParametersList().addProperty(RuntimePrewarmer.PREWARM_PROPERTY, "true");
+        }
+        if (JUnitProperties.JUNIT_LAZY_TREE) {
+            javaParameters.getVMParametersList().addProperty(IdeaTestRunner.LAZY_TREE_PROPERTY, "true");
+        }
+        if (JUnitProperties.JUNIT_COMPACT_TRACES) {
+            javaParameters.getVMParametersList().addProperty(TraceEncoder.COMPACT_PROPERTY, "true");
+            deleteRunFile(myFullTracesFile);
+            myFullTracesFile = null;
+            try {
+                myFullTracesFile = FileUtil.createTempFile("junit_full_traces_", ".txt", false);
+                javaParameters.getVMParametersList().addProperty(TraceEncoder.FULL_TRACES_PROPERTY, myFullTracesFile.getPath());
+            }
+            catch (IOException e) {
+                LOG.info(e);
+            }
+        }
+        if (JUnitProperties.JUNIT_COMPARISON_THRESHOLD != null) {
+            deleteRunFile(myComparisonDirectory);
+            myComparisonDirectory = null;
+            try {
+                myComparisonDirectory = FileUtil.createTempDirectory("junit_comparison_", null, false);
+                javaParameters.getVMParametersList().addProperty(ComparisonPayloads.THRESHOLD_PROPERTY, JUnitProperties.JUNIT_COMPARISON_THRESHOLD);
+                javaParameters.getVMParametersList().addProperty(ComparisonPayloads.DIRECTORY_PROPERTY, myComparisonDirectory.getPath());
+            }
+            catch (IOException e) {
+                LOG.info(e);
+            }
+        }
+        if (JUnitProperties.JUNIT5_PARALLEL &&
+            JUnitStarter.JUNIT5_PARAMETER.equals(getRunner()) &&
+            !javaParameters.getVMParametersList().hasProperty("junit.jupiter.execution.parallel.enabled")) {
+            javaParameters.getVMParametersList().addProperty("junit.jupiter.execution.parallel.enabled", "true");
+            javaParameters.getVMParametersList().addProperty("junit.jupiter.execution.parallel.mode.default", "concurrent");
+        }
+
         StringBuilder buf = new StringBuilder();
         collectListeners(javaParameters, buf, JUnitListener.class, "\n");
         if (buf.length() > 0) {
             try {
                 myListenersFile = FileUtil.createTempFile("junit_listeners_", "", true);
                 javaParameters.getProgramParametersList().add("@@" + myListenersFile.getPath());
-                FileUtil.writeToFile(myListenersFile, buf.toString().getBytes(StandardCharsets.UTF_8));
+                writeListFile(myListenersFile, buf.toString().getBytes(StandardCharsets.UTF_8));
             }
             catch (IOException e) {
                 LOG.error(e);
@@ -191,6 +291,90 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
         return javaParameters;
     }
 
+    private static void addStressRunProperties(OwnJavaParameters javaParameters) {
+        ParametersList vmParameters = javaParameters.getVMParametersList();
+        if (JUnitProperties.JUNIT_STRESS_THREADS != null && !vmParameters.hasProperty(StressRun.THREADS_PROPERTY)) {
+            vmParameters.addProperty(StressRun.THREADS_PROPERTY, JUnitProperties.JUNIT_STRESS_THREADS);
+        }
+        if (JUnitProperties.JUNIT_STRESS_DURATION != null && !vmParameters.hasProperty(StressRun.DURATION_PROPERTY)) {
+            vmParameters.addProperty(StressRun.DURATION_PROPERTY, JUnitProperties.JUNIT_STRESS_DURATION);
+        }
+        if (JUnitProperties.JUNIT_STRESS_VIRTUAL_THREADS && !vmParameters.hasProperty(StressRun.VIRTUAL_THREADS_PROPERTY)) {
+            vmParameters.addProperty(StressRun.VIRTUAL_THREADS_PROPERTY, "true");
+        }
+    }
+
+    private static void addBenchmarkProperties(OwnJavaParameters javaParameters) {
+        ParametersList vmParameters = javaParameters.getVMParametersList();
+        if (JUnitProperties.JUNIT_BENCHMARK_WARMUP != null && !vmParameters.hasProperty(BenchmarkRun.WARMUP_PROPERTY)) {
+            vmParameters.addProperty(BenchmarkRun.WARMUP_PROPERTY, JUnitProperties.JUNIT_BENCHMARK_WARMUP);
+        }
+        if (JUnitProperties.JUNIT_BENCHMARK_VARIATION != null && !vmParameters.hasProperty(BenchmarkRun.VARIATION_PROPERTY)) {
+            vmParameters.addProperty(BenchmarkRun.VARIATION_PROPERTY, JUnitProperties.JUNIT_BENCHMARK_VARIATION);
+        }
+    }
+
+    private static void addRepeatStatisticsProperties(OwnJavaParameters javaParameters) {
+        javaParameters.getVMParametersList().addProperty(RepeatStatisticsWriter.STATISTICS_PROPERTY, "true");
+        if (JUnitProperties.JUNIT_REPEAT_EVENTS) {
+            try {
+                File eventsFile = FileUtil.createTempFile("junit_repeat_events_", ".txt", false);
+                javaParameters.getVMParametersList().addProperty(RepeatStatisticsWriter.EVENTS_FILE_PROPERTY, eventsFile.getPath());
+            }
+            catch (IOException e) {
+                LOG.info(e);
+            }
+        }
+    }
+
+    /**
+     * Deletes a file or a directory of the run when its process terminates, see {@link #deleteRunFile(File)}
+     */
+    private static void deleteOnTermination(ProcessHandler processHandler, @Nullable File file) {
+        if (file == null) {
+            return;
+        }
+        processHandler.addProcessListener(new ProcessListener() {
+            @Override
+            public void processTerminated(ProcessEvent event) {
+                deleteRunFile(file);
+            }
+        });
+    }
+
+    /**
+     * Deletes a file or a directory of the run with the console of the run, as the console reads it after the process terminates,
+     * see {@link #deleteRunFile(File)}
+     */
+    private static void deleteOnDisposal(ExecutionResult result, @Nullable File file) {
+        if (file == null) {
+            return;
+        }
+        if (result.getExecutionConsole() != null) {
+            Disposer.register(result.getExecutionConsole(), () -> deleteRunFile(file));
+        }
+        else {
+            deleteOnTermination(result.getProcessHandler(), file);
+        }
+    }
+
+    /**
+     * Deletes a file or a directory passed to the test process along with the <code>name.forkId</code> siblings written by its forks
+     */
+    private static void deleteRunFile(@Nullable File file) {
+        if (file == null) {
+            return;
+        }
+        FileUtil.delete(file);
+        String siblingPrefix = file.getName() + ".";
+        File[] siblings = file.getParentFile().listFiles((directory, name) -> name.startsWith(siblingPrefix));
+        if (siblings != null) {
+            for (File sibling : siblings) {
+                FileUtil.delete(sibling);
+            }
+        }
+    }
+
     private static GlobalSearchScope getScopeForJUnit(@Nullable Module module, Project project) {
         return module != null ? GlobalSearchScope.moduleRuntimeScope(module, true) : GlobalSearchScope.allScope(project);
     }
@@ -199,19 +383,103 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
         return getScopeForJUnit(configuration.getConfigurationModule().getModule(), configuration.getProject());
     }
 
+    /**
+     * The events channel is connected to the converter of the console, the full traces and the comparison files of the run
+     * are passed to the console, which owns them from now on
+     */
+    @Override
+    @Nonnull
+    public ExecutionResult execute(@Nonnull Executor executor, @Nonnull ProgramRunner runner) throws ExecutionException {
+        ExecutionResult result;
+        try {
+            result = super.execute(executor, runner);
+        }
+        catch (ExecutionException | RuntimeException e) {
+            if (myEventsReceiver != null) {
+                myEventsReceiver.close();
+            }
+            deleteRunFile(myFullTracesFile);
+            myFullTracesFile = null;
+            deleteRunFile(myComparisonDirectory);
+            myComparisonDirectory = null;
+            throw e;
+        }
+        if (myEventsReceiver != null) {
+            JUnitTestEventsConverter converter = getEventsConverter(result);
+            if (converter != null) {
+                myEventsReceiver.attach(result.getProcessHandler(), converter);
+            }
+            else {
+                LOG.warn("Console of the run takes no events from the events channel");
+                myEventsReceiver.close();
+            }
+        }
+        deleteOnDisposal(result, myFullTracesFile);
+        myFullTracesFile = null;
+        deleteOnDisposal(result, myComparisonDirectory);
+        myComparisonDirectory = null;
+        return result;
+    }
+
+    @Nullable
+    private static JUnitTestEventsConverter getEventsConverter(ExecutionResult result) {
+        if (result.getExecutionConsole() instanceof BaseTestsOutputConsoleView console && console.getProperties() instanceof JUnitConsoleProperties properties) {
+            return properties.getEventsConverter();
+        }
+        return null;
+    }
+
     @Override
     @Nonnull
     protected ProcessHandler createHandler(Executor executor) throws ExecutionException {
+        try {
+            return doCreateHandler(executor);
+        }
+        catch (ExecutionException | RuntimeException e) {
+            if (myEventsReceiver != null) {
+                myEventsReceiver.close();
+            }
+            deleteRunFile(myFullTracesFile);
+            deleteRunFile(myComparisonDirectory);
+            throw e;
+        }
+    }
+
+    @Nonnull
+    private ProcessHandler doCreateHandler(Executor executor) throws ExecutionException {
+        JUnitCdsArchive cdsArchive = JUnitProperties.JUNIT_CDS ? JUnitCdsArchive.create(getJavaParameters()) : null;
+        if (cdsArchive != null) {
+            getJavaParameters().getVMParametersList().addAll(cdsArchive.getSharedArchiveOptions());
+        }
         appendForkInfo(executor);
+        if (cdsArchive != null) {
+            getJavaParameters().getVMParametersList().addAll(cdsArchive.getDumpOptions());
+        }
         String repeatMode = getConfiguration().getRepeatMode();
         if (!RepeatCount.ONCE.equals(repeatMode)) {
             int repeatCount = getConfiguration().getRepeatCount();
-            String countString = RepeatCount.N.equals(repeatMode) && repeatCount > 0 ? RepeatCount.getCountString(repeatCount) : repeatMode;
-            getJavaParameters().getProgramParametersList().add(countString);
+            if (RepeatCount.CONCURRENTLY.equals(repeatMode)) {
+                getJavaParameters().getProgramParametersList().add(RepeatCount.getConcurrentCountString(Math.max(repeatCount, 1)));
+                addStressRunProperties(getJavaParameters());
+            }
+            else if (RepeatCount.BENCHMARK.equals(repeatMode)) {
+                getJavaParameters().getProgramParametersList().add(RepeatCount.getBenchmarkCountString(Math.max(repeatCount, 1)));
+                addBenchmarkProperties(getJavaParameters());
+            }
+            else {
+                String countString = RepeatCount.N.equals(repeatMode) && repeatCount > 0 ? RepeatCount.getCountString(repeatCount) : repeatMode;
+                getJavaParameters().getProgramParametersList().add(countString);
+                if (JUnitProperties.JUNIT_REPEAT_STATISTICS) {
+                    addRepeatStatisticsProperties(getJavaParameters());
+                }
+            }
         }
 
         ProcessHandler processHandler = ProcessHandlerBuilder.create(createCommandLine()).killable().build();
         ProcessTerminatedListener.attach(processHandler);
+        if (cdsArchive != null) {
+            cdsArchive.attach(processHandler);
+        }
         SearchForTestsTask searchForTestsTask = createSearchingForTestsTask();
         if (searchForTestsTask != null) {
             searchForTestsTask.attachTaskToProcess(processHandler);
@@ -219,9 +487,12 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
         return processHandler;
     }
 
+    /**
+     * All runners report node ids, see <code>TestNodeIds</code> for JUnit 3/4
+     */
     @Override
     protected boolean isIdBasedTestTree() {
-        return JUnitStarter.JUNIT5_PARAMETER.equals(getRunner());
+        return true;
     }
 
     @Nonnull
@@ -298,9 +569,9 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
                 Collections.sort(testNames); //sort tests in FQN order
             }
 
-            String category = JUnitConfiguration.TEST_CATEGORY.equals(data.TEST_OBJECT) ? data.getCategory() : "";
-            String filters = JUnitConfiguration.TEST_PATTERN.equals(data.TEST_OBJECT) ? data.getPatternPresentation() : "";
-            JUnitStarter.printClassesList(testNames, packageName, category, filters, myTempFile);
+            ByteArrayOutputStream classesList = new ByteArrayOutputStream();
+            JUnitStarter.printClassesList(testNames, packageName, getClassesListCategory(), getClassesListFilters(), classesList);
+            writeListFile(myTempFile, classesList.toByteArray());
 
             writeClassesPerModule(packageName, javaParameters, perModule);
         }
@@ -309,6 +580,25 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
         }
     }
 
+    /**
+     * Passes the list over the events channel if the test process isn't started yet, writes it to the file otherwise
+     */
+    private void writeListFile(File file, byte[] content) throws IOException {
+        if (myEventsReceiver == null || !myEventsReceiver.addFile(file, content)) {
+            FileUtil.writeToFile(file, content);
+        }
+    }
+
+    protected String getClassesListCategory() {
+        JUnitConfiguration.Data data = getConfiguration().getPersistentData();
+        return JUnitConfiguration.TEST_CATEGORY.equals(data.TEST_OBJECT) ? data.getCategory() : "";
+    }
+
+    protected String getClassesListFilters() {
+        JUnitConfiguration.Data data = getConfiguration().getPersistentData();
+        return JUnitConfiguration.TEST_PATTERN.equals(data.TEST_OBJECT) ? data.getPatternPresentation() : "";
+    }
+
     protected PsiElement retrievePsiElement(Object element) {
         return element instanceof PsiElement ? (PsiElement) element : null;
     }
@@ -352,6 +642,12 @@ public abstract class TestObject extends JavaTestFrameworkRunnableState<JUnitCon
     @Override
     protected void passForkMode(String forkMode, File tempFile, OwnJavaParameters parameters) throws ExecutionException {
         parameters.getProgramParametersList().add("@@@" + forkMode + ',' + tempFile.getAbsolutePath());
+        if (JUnitProperties.JUNIT_FORK_CONCURRENCY != null) {
+            parameters.getVMParametersList().addProperty(JUnitForkedSplitter.FORK_CONCURRENCY_PROPERTY, JUnitProperties.JUNIT_FORK_CONCURRENCY);
+        }
+        if (JUnitProperties.JUNIT_FORK_REUSE) {
+            parameters.getVMParametersList().addProperty(JUnitForkWorker.REUSE_PROPERTY, "true");
+        }
         if (getForkSocket() != null) {
             // see ForkedDebuggerHelper
             parameters.getProgramParametersList().add("-debugSocket" + getForkSocket().getLocalPort());
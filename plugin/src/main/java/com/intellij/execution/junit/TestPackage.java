@@ -50,6 +50,7 @@ import org.jetbrains.annotations.TestOnly;
 
 import jakarta.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
@@ -63,6 +64,7 @@ import java.util.function.Predicate;
 
 public class TestPackage extends TestObject
 {
+	private JUnitTestClassesSender myClassesSender;
 
 	public TestPackage(JUnitConfiguration configuration, ExecutionEnvironment environment)
 	{
@@ -84,7 +86,26 @@ public class TestPackage extends TestObject
 
 		return new SearchForTestsTask(getConfiguration().getProject(), myServerSocket)
 		{
-			private final Set<PsiClass> myClasses = new HashSet<>();
+			private final Set<PsiClass> myClasses = new HashSet<>()
+			{
+				@Override
+				public boolean add(PsiClass psiClass)
+				{
+					if(!super.add(psiClass))
+					{
+						return false;
+					}
+					if(myClassesSender != null)
+					{
+						String name = ReadAction.compute(() -> JavaExecutionUtil.getRuntimeQualifiedName(psiClass));
+						if(name != null)
+						{
+							myClassesSender.send(name);
+						}
+					}
+					return true;
+				}
+			};
 
 			@Override
 			protected void search()
@@ -100,6 +121,10 @@ public class TestPackage extends TestObject
 						instance.setAlternativeResolveEnabled(true);
 						TestClassFilter classFilter = getClassFilter(data);
 						LOG.assertTrue(classFilter.getBase() != null);
+						if(myClassesSender != null)
+						{
+							myClassesSender.start(getPackageName(data), getClassesListCategory(), getClassesListFilters());
+						}
 						long start = System.currentTimeMillis();
 						if(JUnitProperties.JUNIT4_SEARCH_4_TESTS_IN_CLASSPATH)
 						{
@@ -139,6 +164,17 @@ public class TestPackage extends TestObject
 				{
 				}
 			}
+
+			@Override
+			public void finish()
+			{
+				// the classes list file is written by now, the runtime takes it if the stream was broken
+				if(myClassesSender != null)
+				{
+					myClassesSender.finish();
+				}
+				super.finish();
+			}
 		};
 	}
 
@@ -172,10 +208,30 @@ public class TestPackage extends TestObject
 
 		createTempFiles(javaParameters);
 
+		if(JUnitProperties.JUNIT_STREAM_DISCOVERY && canStreamClasses())
+		{
+			try
+			{
+				myClassesSender = new JUnitTestClassesSender();
+				javaParameters.getProgramParametersList().add(JUnitStarter.DISCOVERY_SOCKET + myClassesSender.getPort());
+			}
+			catch(IOException e)
+			{
+				LOG.info(e);
+			}
+		}
 		createServerSocket(javaParameters);
 		return javaParameters;
 	}
 
+	/**
+	 * Classes can be run as they are found only in the test process itself, JUnit 5 classes are found by the runtime
+	 */
+	protected boolean canStreamClasses()
+	{
+		return "none".equals(getForkMode()) && !forkPerModule() && !JUnitStarter.JUNIT5_PARAMETER.equals(getRunner());
+	}
+
 	@Override
 	protected boolean configureByModule(Module module)
 	{
@@ -53,7 +53,7 @@ public class TestUniqueId extends TestObject
 	public static String getEffectiveNodeId(AbstractTestProxy testInfo, Project project, GlobalSearchScope searchScope)
 	{
 		String nodeId = testInfo.getUserData(SMTestProxy.NODE_ID);
-		if(nodeId != null)
+		if(nodeId != null && isUniqueId(nodeId))
 		{
 			Location location = testInfo.getLocation(project, searchScope);
 			if(location == null)
@@ -93,6 +93,14 @@ public class TestUniqueId extends TestObject
 		return null;
 	}
 
+	/**
+	 * JUnit 5 node ids are unique ids of the tests, node ids of JUnit 3/4 trees are just numbers which can't be used to rerun tests
+	 */
+	private static boolean isUniqueId(String nodeId)
+	{
+		return nodeId.startsWith("[");
+	}
+
 	@Nonnull
 	@Override
 	protected String getForkMode()
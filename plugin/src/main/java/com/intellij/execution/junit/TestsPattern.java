@@ -105,6 +105,13 @@ public class TestsPattern extends TestPackage
 		return super.createSearchingForTestsTask();
 	}
 
+	@Override
+	protected boolean canStreamClasses()
+	{
+		// classes given by name are not searched for
+		return false;
+	}
+
 	@Override
 	protected boolean acceptClassName(String className)
 	{
@@ -240,7 +240,10 @@ public class JUnitConfigurable<T extends JUnitConfiguration> extends SettingsEdi
         myRepeatCb.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                myRepeatCountField.setEnabled(RepeatCount.N.equals(myRepeatCb.getSelectedItem()));
+                Object repeatMode = myRepeatCb.getSelectedItem();
+                myRepeatCountField.setEnabled(RepeatCount.N.equals(repeatMode) ||
+                                              RepeatCount.CONCURRENTLY.equals(repeatMode) ||
+                                              RepeatCount.BENCHMARK.equals(repeatMode));
             }
         });
 
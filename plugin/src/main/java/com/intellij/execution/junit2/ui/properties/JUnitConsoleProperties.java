@@ -16,6 +16,7 @@
 package com.intellij.execution.junit2.ui.properties;
 
 import com.intellij.execution.junit.JUnitConfiguration;
+import com.intellij.execution.junit.JUnitTestEventsConverter;
 import com.intellij.execution.junit2.ui.actions.RerunFailedTestsAction;
 import com.intellij.java.execution.impl.testframework.JavaAwareTestConsoleProperties;
 import com.intellij.java.execution.impl.testframework.JavaTestLocator;
@@ -24,6 +25,7 @@ import consulo.execution.executor.Executor;
 import consulo.execution.test.SourceScope;
 import consulo.execution.test.TestConsoleProperties;
 import consulo.execution.test.action.AbstractRerunFailedTestsAction;
+import consulo.execution.test.sm.runner.OutputToGeneralTestEventsConverter;
 import consulo.execution.test.sm.runner.SMTestLocator;
 import consulo.execution.ui.console.ConsoleView;
 import consulo.language.psi.scope.GlobalSearchScope;
@@ -35,6 +37,8 @@ import javax.swing.*;
 
 public class JUnitConsoleProperties extends JavaAwareTestConsoleProperties<JUnitConfiguration>
 {
+	private JUnitTestEventsConverter myEventsConverter;
+
 	public JUnitConsoleProperties(@Nonnull JUnitConfiguration configuration, Executor executor)
 	{
 		super("JUnit", configuration, executor);
@@ -78,6 +82,22 @@ public class JUnitConsoleProperties extends JavaAwareTestConsoleProperties<JUnit
 		return new RerunFailedTestsAction(consoleView, this);
 	}
 
+	@Override
+	public OutputToGeneralTestEventsConverter createTestEventsConverter(@Nonnull String testFrameworkName, @Nonnull TestConsoleProperties consoleProperties)
+	{
+		myEventsConverter = new JUnitTestEventsConverter(testFrameworkName, consoleProperties);
+		return myEventsConverter;
+	}
+
+	/**
+	 * @return converter of the console attached to the process, which also takes the events received over the events channel
+	 */
+	@Nullable
+	public JUnitTestEventsConverter getEventsConverter()
+	{
+		return myEventsConverter;
+	}
+
 	@Override
 	public boolean isUndefined()
 	{
@@ -9,4 +9,115 @@ import consulo.platform.Platform;
 public interface JUnitProperties
 {
 	boolean JUNIT4_SEARCH_4_TESTS_IN_CLASSPATH = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit4.search.4.tests.in.classpath"));
+
+	/**
+	 * Receive test events in binary form over a local socket instead of parsing them from the process output
+	 */
+	boolean JUNIT_BINARY_EVENTS = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.binary.events"));
+
+	/**
+	 * Write test events and test output from a background thread of the test runtime in batches
+	 */
+	boolean JUNIT_ASYNC_EVENTS = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.async.events"));
+
+	/**
+	 * Enable parallel execution of JUnit 5 tests unless it's configured in the run configuration
+	 */
+	boolean JUNIT5_PARALLEL = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit5.parallel"));
+
+	/**
+	 * Number of forked test processes (per class, method or module) run at once, <code>auto</code> for the number of processors
+	 */
+	String JUNIT_FORK_CONCURRENCY = Platform.current().jvm().getRuntimeProperty("junit.fork.concurrency");
+
+	/**
+	 * Run forked tests on reusable worker JVMs instead of a new JVM per class or method
+	 */
+	boolean JUNIT_FORK_REUSE = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.fork.reuse"));
+
+	/**
+	 * Run tests in a daemon JVM which keeps the test libraries loaded between runs
+	 */
+	boolean JUNIT_DAEMON = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.daemon"));
+
+	/**
+	 * Map test JVMs to AppCDS archives of their classpath, dumped by the first run
+	 */
+	boolean JUNIT_CDS = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.cds"));
+
+	/**
+	 * Keep durations of test classes between runs to balance forked test processes and shards
+	 */
+	boolean JUNIT_DURATIONS = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.durations"));
+
+	/**
+	 * Report the setup, body and teardown time of every test and the class setup as attributes of the finishing messages.
+	 * JUnit Jupiter tests get them since 5.11, or with the extensions auto-detection enabled by the tests
+	 */
+	boolean JUNIT_PHASES = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.phases"));
+
+	/**
+	 * Report the CPU time and the allocated bytes of every test, including the threads it starts, as attributes of its finishing message
+	 */
+	boolean JUNIT_RESOURCES = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.resources"));
+
+	/**
+	 * Send the stack traces of the failures without the framework frames, bounded, and each distinct trace once, linked to the full traces in the console
+	 */
+	boolean JUNIT_COMPACT_TRACES = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.compact.traces"));
+
+	/**
+	 * Length of the expected or actual value of a comparison failure above which both are passed in temporary files
+	 */
+	String JUNIT_COMPARISON_THRESHOLD = Platform.current().jvm().getRuntimeProperty("junit.comparison.threshold");
+
+	/**
+	 * Send only the number of the tests before the run and build the tree as the suites start, for runs of huge numbers of tests
+	 */
+	boolean JUNIT_LAZY_TREE = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.lazy.tree"));
+
+	/**
+	 * Load the classes of the test framework and of the output directories while the IDE searches for the tests of package runs
+	 */
+	boolean JUNIT_PREWARM = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.prewarm"));
+
+	/**
+	 * Send test classes of package runs to the test runtime as they are found, so the first of them run while the search goes on
+	 */
+	boolean JUNIT_STREAM_DISCOVERY = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.stream.discovery"));
+
+	/**
+	 * Report repeated runs as one node per test with its pass/fail counts and duration percentiles instead of a node per iteration
+	 */
+	boolean JUNIT_REPEAT_STATISTICS = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.repeat.statistics"));
+
+	/**
+	 * Keep the events of every iteration of the repeated runs reported by {@link #JUNIT_REPEAT_STATISTICS} in a temporary file
+	 */
+	boolean JUNIT_REPEAT_EVENTS = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.repeat.events"));
+
+	/**
+	 * Number of threads of the concurrent repeat mode, the number of processors by default
+	 */
+	String JUNIT_STRESS_THREADS = Platform.current().jvm().getRuntimeProperty("junit.stress.threads");
+
+	/**
+	 * Seconds the concurrent repeat mode runs for instead of the repeat count per thread
+	 */
+	String JUNIT_STRESS_DURATION = Platform.current().jvm().getRuntimeProperty("junit.stress.duration");
+
+	/**
+	 * Run the threads of the concurrent repeat mode as virtual threads where the test JVM has them
+	 */
+	boolean JUNIT_STRESS_VIRTUAL_THREADS = Boolean.valueOf(Platform.current().jvm().getRuntimeProperty("junit.stress.virtual"));
+
+	/**
+	 * Number of unmeasured warm-up iterations of the benchmark repeat mode
+	 */
+	String JUNIT_BENCHMARK_WARMUP = Platform.current().jvm().getRuntimeProperty("junit.benchmark.warmup");
+
+	/**
+	 * Coefficient of variation in percent the benchmark repeat mode stops measuring at
+	 */
+	String JUNIT_BENCHMARK_VARIATION = Platform.current().jvm().getRuntimeProperty("junit.benchmark.variation");
 }